@@ -0,0 +1,94 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.BookListingWriter;
+import com.example.bookstore.service.CatalogCache;
+import com.example.bookstore.service.InventoryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+// Whole listing as one JSON array against streamed NDJSON and a single page, for catalogs of different sizes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx512m"})
+public class BooksListingBenchmark {
+
+    @Param({"1000", "100000"})
+    private int books;
+
+    private InventoryService inventoryService;
+    private CatalogCache catalogCache;
+    private BookListingWriter listingWriter;
+    private final CountingOutputStream out = new CountingOutputStream();
+
+    @Setup
+    public void setup() {
+        Catalog.Builder builder = new Catalog.Builder();
+        for (int i = 0; i < books; i++) {
+            builder.add("BOOK_" + i, "Title of book " + i, 10 + i % 90, 20, true);
+        }
+        inventoryService = new InventoryService(builder.build());
+        ObjectMapper objectMapper = new ObjectMapper();
+        catalogCache = new CatalogCache(inventoryService, objectMapper);
+        listingWriter = new BookListingWriter(inventoryService, objectMapper);
+    }
+
+    // Every request sees a new version, so the array is encoded in full each time
+    @Benchmark
+    public byte[] jsonArray() {
+        inventoryService.setStock(0, 20);
+        return catalogCache.get().body();
+    }
+
+    @Benchmark
+    public long ndjsonStream() throws IOException {
+        out.count = 0;
+        listingWriter.writeNdjson(out, 0, Integer.MAX_VALUE);
+        return out.count;
+    }
+
+    // Time until the first row reaches the client
+    @Benchmark
+    public long ndjsonFirstRow() throws IOException {
+        out.count = 0;
+        listingWriter.writeNdjson(out, 0, 1);
+        return out.count;
+    }
+
+    @Benchmark
+    public Object page() {
+        return listingWriter.page(0, 100);
+    }
+
+    // Throws the bytes away, like a client reading as fast as the server writes
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
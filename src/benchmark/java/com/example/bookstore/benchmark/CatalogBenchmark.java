@@ -0,0 +1,49 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.CatalogCache;
+import com.example.bookstore.service.InventoryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of serving the books listing: from the cache, and rebuilt because every request sees a new version
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogBenchmark {
+
+    private InventoryService inventoryService;
+    private CatalogCache catalogCache;
+
+    @Setup
+    public void setup() {
+        inventoryService = new InventoryService(Catalog.defaultCatalog());
+        catalogCache = new CatalogCache(inventoryService, new ObjectMapper());
+    }
+
+    @Benchmark
+    public byte[] cached() {
+        return catalogCache.get().body();
+    }
+
+    @Benchmark
+    public byte[] rebuiltAfterChange() {
+        inventoryService.setStock(Book.BOOK_A.id(), 20);
+        return catalogCache.get().body();
+    }
+}
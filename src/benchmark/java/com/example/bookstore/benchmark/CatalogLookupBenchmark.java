@@ -0,0 +1,61 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.model.Catalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// SKU lookup latency and heap per book for catalogs of 1M and 10M books
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CatalogLookupBenchmark {
+
+    @Param({"1000000", "10000000"})
+    int books;
+
+    private Catalog catalog;
+    private String[] skus;
+
+    @Setup
+    public void setup() {
+        Catalog.Builder builder = new Catalog.Builder();
+        for (int i = 0; i < books; i++) {
+            builder.add("SKU-" + i, "Some book title number " + i, 10 + i % 90, 20, true);
+        }
+        catalog = builder.build();
+        System.out.printf("%n%d books: %.1f bytes per book%n", books, (double) catalog.footprintBytes() / books);
+
+        // Random SKUs to look up, made up front so the benchmark doesn't measure building strings
+        skus = new String[4096];
+        for (int i = 0; i < skus.length; i++) {
+            skus[i] = "SKU-" + ThreadLocalRandom.current().nextInt(books);
+        }
+    }
+
+    private int next;
+
+    @Benchmark
+    public int idOf() {
+        return catalog.idOf(skus[next++ & (skus.length - 1)]);
+    }
+
+    @Benchmark
+    public int price() {
+        return catalog.price(ThreadLocalRandom.current().nextInt(books));
+    }
+}
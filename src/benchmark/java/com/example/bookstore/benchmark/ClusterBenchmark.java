@@ -0,0 +1,98 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.LocalCluster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orders per second over HTTP as the inventory is split over 1 to 8 nodes, all running in this JVM on loopback.
+ * Every order goes to a random node, orders of one book are reserved by a single shard and orders of several books
+ * mostly span shards and go through two-phase commit. The nodes share this machine's cores, so this shows the cost
+ * of routing and two-phase commit more than the scaling separate machines would give.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(64)
+public class ClusterBenchmark {
+
+    private static final int BOOKS = 512;
+
+    @Param({"1", "2", "4", "8"})
+    int shards;
+
+    @Param({"1", "3"})
+    int booksPerOrder;
+
+    Path catalogFile;
+    LocalCluster cluster;
+    URI[] orderUris;
+    HttpClient client;
+
+    @Setup(Level.Trial)
+    public void startCluster() throws IOException {
+        StringBuilder catalog = new StringBuilder();
+        for (int i = 0; i < BOOKS; i++) {
+            catalog.append("BOOK_").append(i).append(",1,").append(Integer.MAX_VALUE / 2).append(",true,Book ").append(i).append('\n');
+        }
+        catalogFile = Files.createTempFile("cluster-bench", ".csv");
+        Files.writeString(catalogFile, catalog);
+
+        cluster = LocalCluster.start(shards, "bookstore.catalog.file=" + catalogFile, "logging.level.root=WARN");
+        orderUris = new URI[shards];
+        for (int node = 0; node < shards; node++) {
+            orderUris[node] = URI.create(cluster.url(node) + "/api/order");
+        }
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopCluster() throws IOException {
+        cluster.close();
+        Files.delete(catalogFile);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 5)
+    @Measurement(iterations = 5, time = 5)
+    public int order() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder order = new StringBuilder("[");
+        for (int i = 0; i < booksPerOrder; i++) {
+            if (i > 0) {
+                order.append(',');
+            }
+            order.append("{\"book\":\"BOOK_").append(random.nextInt(BOOKS)).append("\",\"quantity\":1}");
+        }
+        order.append(']');
+
+        HttpRequest request = HttpRequest.newBuilder(orderUris[random.nextInt(shards)])
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(order.toString()))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.InventoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// A promotion: 64 threads ordering the same book, as one count (stripeThreshold 0) and striped once it gets hot
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotBookBenchmark {
+
+    private final List<BookRequestDto> order = List.of(new BookRequestDto(Book.BOOK_A, 1));
+
+    @Param({"0", "1000"})
+    private int stripeThreshold;
+
+    private InventoryService inventoryService;
+
+    // Plenty of stock so orders never run it out during an iteration
+    @Setup(Level.Iteration)
+    public void setup() {
+        inventoryService = new InventoryService(Catalog.defaultCatalog(), stripeThreshold);
+        inventoryService.setStock(Book.BOOK_A.id(), Integer.MAX_VALUE / 2);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] tryReserve_1thread() {
+        return inventoryService.tryReserve(order);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public int[] tryReserve_64threads() {
+        return inventoryService.tryReserve(order);
+    }
+}
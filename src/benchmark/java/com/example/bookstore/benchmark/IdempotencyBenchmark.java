@@ -0,0 +1,82 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.service.IdempotencyCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * What an Idempotency-Key costs on the order path: a new key, a replayed key and no key at all.
+ * fill1M adds a million keys in one shot, its gc.alloc.rate.norm from -prof gc divided by a million is an upper
+ * bound of the bytes a key keeps alive (UUID key, entry, future, queue node and a small response).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class IdempotencyBenchmark {
+
+    private static final int KEYS = 1_000_000;
+
+    private final ResponseEntity<?> response = ResponseEntity.ok("Order placed successfully!");
+    private final Supplier<ResponseEntity<?>> order = () -> response;
+
+    private IdempotencyCache cache;
+    private String[] keys;
+    private int next;
+
+    @Setup
+    public void setup() {
+        cache = new IdempotencyCache(86_400, KEYS);
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = UUID.randomUUID().toString();
+        }
+        cache.execute("replayed", 1, order);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> noKey() {
+        return order.get();
+    }
+
+    // Keys are reused once the array wraps around, by then the cache evicted them as the oldest
+    @Benchmark
+    public ResponseEntity<?> newKey() {
+        String key = keys[next];
+        next = next + 1 == KEYS ? 0 : next + 1;
+        return cache.execute(key, 1, order);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> replayedKey() {
+        return cache.execute("replayed", 1, order);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public IdempotencyCache fill1M() {
+        IdempotencyCache full = new IdempotencyCache(86_400, KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            full.execute(keys[i], i, order);
+        }
+        return full;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.InventoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of reserving a multi-book order, the thread counts show how tryReserve scales with cores
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryBenchmark {
+
+    private final List<BookRequestDto> order = List.of(
+            new BookRequestDto(Book.BOOK_A, 1),
+            new BookRequestDto(Book.BOOK_B, 2),
+            new BookRequestDto(Book.BOOK_D, 1));
+
+    private InventoryService inventoryService;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        inventoryService = new InventoryService(Catalog.defaultCatalog());
+        for (Book book : Book.values()) {
+            inventoryService.setStock(book.id(), Integer.MAX_VALUE / 2);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] tryReserve_1thread() {
+        return inventoryService.tryReserve(order);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int[] tryReserve_4threads() {
+        return inventoryService.tryReserve(order);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int[] tryReserve_allCores() {
+        return inventoryService.tryReserve(order);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.InventoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// The single-book operations of InventoryService, alone and with every thread hitting the same book
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryOpsBenchmark {
+
+    private final int book = Book.BOOK_A.id();
+
+    private InventoryService inventoryService;
+
+    // Plenty of stock so orders never run it out during an iteration
+    @Setup(Level.Iteration)
+    public void setup() {
+        inventoryService = new InventoryService(Catalog.defaultCatalog());
+        inventoryService.setStock(book, Integer.MAX_VALUE / 2);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean hasBookInStock_1thread() {
+        return inventoryService.hasBookInStock(book, 1);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean hasBookInStock_allCores() {
+        return inventoryService.hasBookInStock(book, 1);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void orderBook_1thread() {
+        inventoryService.orderBook(book, 1);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void orderBook_allCores() {
+        inventoryService.orderBook(book, 1);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void restockBook_1thread() {
+        inventoryService.restockBook(book, 1);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void restockBook_allCores() {
+        inventoryService.restockBook(book, 1);
+    }
+}
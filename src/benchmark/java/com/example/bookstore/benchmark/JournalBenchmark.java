@@ -0,0 +1,128 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.InventoryJournal;
+import com.example.bookstore.service.InventoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Append throughput per fsync policy, and how long startup takes to replay a log of 10M records
+@Fork(1)
+public class JournalBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Appending {
+        @Param({"per-op", "interval", "none"})
+        String fsync;
+
+        Path directory;
+        InventoryService inventoryService;
+        InventoryJournal journal;
+
+        @Setup(Level.Iteration)
+        public void open() throws IOException {
+            directory = Files.createTempDirectory("journal-bench");
+            inventoryService = new InventoryService(Catalog.defaultCatalog());
+            journal = new InventoryJournal(inventoryService, directory.toString(), fsync, 10, 64, Long.MAX_VALUE);
+            journal.open();
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() throws Exception {
+            journal.close();
+            deleteDirectory(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Recovering {
+        @Param({"10000000"})
+        int records;
+
+        Path directory;
+        Path copy;
+
+        // Write the log once, without a snapshot at the end, so every run has to replay all of it
+        @Setup(Level.Trial)
+        public void writeLog() throws Exception {
+            directory = Files.createTempDirectory("journal-bench");
+            InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+            InventoryJournal journal = new InventoryJournal(inventoryService, directory.toString(), "none", 10, 64, Long.MAX_VALUE);
+            journal.open();
+            for (int i = 0; i < records; i++) {
+                inventoryService.restockBook(i & 3, 1);
+            }
+            journal.close();
+        }
+
+        // Recovering rolls a new generation, so every run recovers from a fresh copy of the log
+        @Setup(Level.Invocation)
+        public void copyLog() throws IOException {
+            copy = Files.createTempDirectory("journal-bench");
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.copy(file, copy.resolve(file.getFileName()));
+                }
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void deleteCopy() throws IOException {
+            deleteDirectory(copy);
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void append(Appending state) {
+        state.inventoryService.restockBook(Book.BOOK_A.id(), 10);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 5)
+    public InventoryService recover(Recovering state) throws Exception {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        InventoryJournal journal = new InventoryJournal(inventoryService, state.copy.toString(), "none", 10, 64, Long.MAX_VALUE);
+        journal.open();
+        journal.close();
+        return inventoryService;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
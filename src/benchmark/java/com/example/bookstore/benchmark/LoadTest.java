@@ -0,0 +1,129 @@
+package com.example.bookstore.benchmark;
+
+import org.HdrHistogram.ConcurrentHistogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test of a running app with many concurrent connections, each one sending a request and waiting for
+ * its answer before sending the next. Most requests get the books listing, the rest order one BOOK_A.
+ * Run it once against the app with platform threads and once with spring.threads.virtual.enabled=true and compare.
+ * <p>
+ * Options as key=value: url, connections (10000), warmup-seconds (10), seconds (30), order-percent (10)
+ */
+public final class LoadTest {
+
+    private static final String ORDER = "[{\"book\": \"BOOK_A\", \"quantity\": 1}]";
+
+    private final ConcurrentHistogram booksLatency = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+    private final ConcurrentHistogram orderLatency = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    private final LongAdder failures = new LongAdder();
+
+    private final HttpRequest books;
+    private final HttpRequest order;
+    private final int orderPercent;
+
+    private volatile boolean measuring;
+    private volatile boolean running = true;
+
+    private LoadTest(String url, int orderPercent) {
+        this.books = HttpRequest.newBuilder(URI.create(url + "/api/books")).GET().build();
+        this.order = HttpRequest.newBuilder(URI.create(url + "/api/order"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(ORDER))
+                .build();
+        this.orderPercent = orderPercent;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "");
+        }
+        String url = options.getOrDefault("url", "http://localhost:8080");
+        int connections = Integer.parseInt(options.getOrDefault("connections", "10000"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup-seconds", "10"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        int orderPercent = Integer.parseInt(options.getOrDefault("order-percent", "10"));
+
+        LoadTest test = new LoadTest(url, orderPercent);
+        System.out.printf("%d connections to %s, %d%% orders, %ds warm-up, %ds measured%n",
+                connections, url, orderPercent, warmupSeconds, seconds);
+        test.run(connections, warmupSeconds, seconds);
+    }
+
+    private void run(int connections, int warmupSeconds, int seconds) throws InterruptedException {
+        // HTTP/1.1 so every client thread keeps its own connection instead of sharing one HTTP/2 connection
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < connections; i++) {
+                clients.submit(() -> sendUntilStopped(client));
+            }
+            TimeUnit.SECONDS.sleep(warmupSeconds);
+            measuring = true;
+            long start = System.nanoTime();
+            TimeUnit.SECONDS.sleep(seconds);
+            measuring = false;
+            long elapsed = System.nanoTime() - start;
+            running = false;
+
+            report(elapsed);
+        }
+    }
+
+    private void sendUntilStopped(HttpClient client) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running) {
+            boolean isOrder = random.nextInt(100) < orderPercent;
+            long start = System.nanoTime();
+            try {
+                HttpResponse<Void> response = client.send(isOrder ? order : books, HttpResponse.BodyHandlers.discarding());
+                if (measuring) {
+                    long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+                    (isOrder ? orderLatency : booksLatency).recordValue(Math.min(micros, TimeUnit.MINUTES.toMicros(1)));
+                    statuses.computeIfAbsent(response.statusCode(), status -> new LongAdder()).increment();
+                }
+            } catch (Exception e) {
+                if (measuring) {
+                    failures.increment();
+                }
+            }
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        long requests = booksLatency.getTotalCount() + orderLatency.getTotalCount();
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%nThroughput: %.0f requests/s (%d requests, %d failed)%n", requests / seconds, requests, failures.sum());
+        System.out.println("Status codes: " + statuses);
+        printLatency("GET /api/books", booksLatency);
+        printLatency("POST /api/order", orderLatency);
+    }
+
+    private static void printLatency(String name, ConcurrentHistogram histogram) {
+        System.out.printf("%-16s p50 %6.1f ms  p99 %6.1f ms  p99.9 %6.1f ms  max %6.1f ms%n", name,
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.controller.BookstoreController;
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.AdmissionControl;
+import com.example.bookstore.service.BookstoreMetrics;
+import com.example.bookstore.service.InventoryService;
+import com.example.bookstore.service.OrderLedger;
+import com.example.bookstore.service.OrderValidator;
+import com.example.bookstore.service.SalesAnalytics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole order pipeline of BookstoreController.orderBooks (validation, reservation and the response)
+ * for orders of 1, 10 and 100 lines, without HTTP and JSON in the way.
+ * Books cost $1 so even 100 lines stay under the maximum order value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int lineItems;
+
+    // The overhead of the metrics on the order path is prometheus against none
+    @Param({"none", "prometheus"})
+    private String metrics;
+
+    private InventoryService inventoryService;
+    private BookstoreController controller;
+    private OrderLedger orderLedger;
+    private List<BookRequestDto> order;
+    private List<BookRequestDto> soldOutOrder;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        Catalog.Builder builder = new Catalog.Builder();
+        for (int i = 0; i < lineItems; i++) {
+            builder.add("BOOK_" + i, "Title of book " + i, 1, Integer.MAX_VALUE / 2, true);
+        }
+        // Never in stock, for the rejected orders
+        int soldOut = lineItems;
+        builder.add("SOLD_OUT", "Sold out book", 1, 0, true);
+        Catalog catalog = builder.build();
+        inventoryService = new InventoryService(catalog);
+
+        controller = new BookstoreController();
+        ReflectionTestUtils.setField(controller, "inventoryService", inventoryService);
+        ReflectionTestUtils.setField(controller, "catalog", catalog);
+        ReflectionTestUtils.setField(controller, "orderValidator", new OrderValidator(catalog));
+        ReflectionTestUtils.setField(controller, "admissionControl", new AdmissionControl(catalog, "", 1, 0, 0));
+        ReflectionTestUtils.setField(controller, "salesAnalytics", new SalesAnalytics(catalog));
+        orderLedger = new OrderLedger(catalog, 1_000_000);
+        orderLedger.start();
+        ReflectionTestUtils.setField(controller, "orderLedger", orderLedger);
+        // A composite registry without registries hands out no-op meters
+        MeterRegistry registry = metrics.equals("prometheus")
+                ? new PrometheusMeterRegistry(PrometheusConfig.DEFAULT)
+                : new CompositeMeterRegistry();
+        ReflectionTestUtils.setField(controller, "bookstoreMetrics",
+                new BookstoreMetrics(registry, inventoryService, orderLedger, Optional.empty(), Optional.empty(), 5));
+
+        order = new ArrayList<>(lineItems);
+        for (int i = 0; i < lineItems; i++) {
+            order.add(new BookRequestDto(i, 1));
+        }
+        soldOutOrder = new ArrayList<>(order.subList(0, lineItems - 1));
+        soldOutOrder.add(new BookRequestDto(soldOut, 1));
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException {
+        orderLedger.stop();
+    }
+
+    @Benchmark
+    public Object accepted() {
+        return controller.orderBooks(null, order);
+    }
+
+    // The last line is sold out, so everything taken before it is put back and an error is built
+    @Benchmark
+    public Object soldOut() {
+        return controller.orderBooks(null, soldOutOrder);
+    }
+}
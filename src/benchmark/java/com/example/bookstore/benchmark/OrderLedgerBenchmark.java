@@ -0,0 +1,138 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.dto.LedgerQueryDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.OrderLedger;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The cost an order pays to be handed to the ledger's writer, and looking orders up in a full one
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-XX:MaxDirectMemorySize=8g"})
+public class OrderLedgerBenchmark {
+
+    private static final List<BookRequestDto> ONE_BOOK = List.of(new BookRequestDto(Book.BOOK_A, 1));
+    private static final List<BookRequestDto> THREE_BOOKS = List.of(
+            new BookRequestDto(Book.BOOK_A, 1),
+            new BookRequestDto(Book.BOOK_B, 2),
+            new BookRequestDto(Book.BOOK_D, 1));
+
+    private OrderLedger appendLedger;
+
+    // Full after a few iterations, so appends include dropping the oldest orders
+    @Setup(Level.Iteration)
+    public void setup() {
+        appendLedger = new OrderLedger(Catalog.defaultCatalog(), 10_000_000);
+        appendLedger.start();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException {
+        appendLedger.stop();
+    }
+
+    // A ledger of 100M orders, one in 20 of them with BOOK_D. They are appended as fast as possible, so the last
+    // hour is taken to be the last 1/24 of the time filling took
+    @State(Scope.Benchmark)
+    public static class FullLedger {
+        @Param({"100000000"})
+        long orders;
+
+        OrderLedger ledger;
+        Instant from;
+        Instant to;
+        long kept;
+        long megabytes;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            List<List<BookRequestDto>> mix = List.of(
+                    List.of(new BookRequestDto(Book.BOOK_A, 1)),
+                    List.of(new BookRequestDto(Book.BOOK_B, 2)),
+                    List.of(new BookRequestDto(Book.BOOK_C, 1), new BookRequestDto(Book.BOOK_A, 1)),
+                    List.of(new BookRequestDto(Book.BOOK_A, 1), new BookRequestDto(Book.BOOK_D, 1)));
+            ledger = new OrderLedger(Catalog.defaultCatalog(), orders);
+            ledger.start();
+            Instant start = Instant.now();
+            for (long i = 0; i < orders; i++) {
+                ledger.record(mix.get(i % 20 == 0 ? 3 : (int) (i % 3)), 100);
+            }
+            to = Instant.now().plusMillis(1);
+            from = to.minus(Duration.between(start, to).dividedBy(24));
+            kept = ledger.getOrderCount();
+            megabytes = ledger.getBytes() / (1024 * 1024);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws InterruptedException {
+            ledger.stop();
+        }
+    }
+
+    // The size of the full ledger, reported by JMH as extra results of the queries instead of printed while it runs
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class LedgerSize {
+        public long ledgerOrders;
+        public long ledgerMegabytes;
+
+        void of(FullLedger full) {
+            ledgerOrders = full.kept;
+            ledgerMegabytes = full.megabytes;
+        }
+    }
+
+    @Benchmark
+    public long append_1book() {
+        return appendLedger.record(ONE_BOOK, 50);
+    }
+
+    @Benchmark
+    public long append_3books() {
+        return appendLedger.record(THREE_BOOKS, 200);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long append_1book_allCores() {
+        return appendLedger.record(ONE_BOOK, 50);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public LedgerQueryDto find_bookD_lastHour_newest100(FullLedger full, LedgerSize size) {
+        size.of(full);
+        return full.ledger.find(Book.BOOK_D.id(), full.from, full.to, 100);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public LedgerQueryDto find_any_lastHour_newest100(FullLedger full, LedgerSize size) {
+        size.of(full);
+        return full.ledger.find(-1, full.from, full.to, 100);
+    }
+}
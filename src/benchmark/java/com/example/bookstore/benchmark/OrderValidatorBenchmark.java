@@ -0,0 +1,69 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.OrderValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Validating an order, run with -prof gc: gc.alloc.rate.norm of valid() should be about 0 B/op
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderValidatorBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int lineItems;
+
+    private OrderValidator orderValidator;
+    private List<BookRequestDto> order;
+    private List<BookRequestDto> tooExpensiveOrder;
+    private final int[] missingBooks = {0};
+
+    @Setup
+    public void setup() {
+        Catalog.Builder builder = new Catalog.Builder();
+        for (int i = 0; i < lineItems; i++) {
+            builder.add("BOOK_" + i, "Title of book " + i, 1, 20, true);
+        }
+        orderValidator = new OrderValidator(builder.build());
+
+        order = new ArrayList<>(lineItems);
+        tooExpensiveOrder = new ArrayList<>(lineItems);
+        for (int i = 0; i < lineItems; i++) {
+            order.add(new BookRequestDto(i, 1));
+            tooExpensiveOrder.add(new BookRequestDto(i, 1000));
+        }
+    }
+
+    @Benchmark
+    public long valid() {
+        return orderValidator.validate(order);
+    }
+
+    @Benchmark
+    public String overMaxValue() {
+        return orderValidator.rejectionMessage(orderValidator.validate(tooExpensiveOrder), tooExpensiveOrder);
+    }
+
+    @Benchmark
+    public List<String> soldOut() {
+        return orderValidator.stockErrors(missingBooks);
+    }
+}
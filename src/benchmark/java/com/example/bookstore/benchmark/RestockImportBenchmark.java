@@ -0,0 +1,77 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.dto.RestockImportResponseDto;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.BookstoreMetrics;
+import com.example.bookstore.service.InventoryService;
+import com.example.bookstore.service.OrderLedger;
+import com.example.bookstore.service.RestockImporter;
+import com.example.bookstore.service.RestockValidator;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// How long a restock manifest of 10M lines takes to import, read from a file
+@State(Scope.Benchmark)
+@Fork(1)
+public class RestockImportBenchmark {
+
+    private static final String[] SKUS = {"BOOK_A", "BOOK_B", "BOOK_C"};
+
+    @Param({"10000000"})
+    int lines;
+
+    Path manifest;
+
+    @Setup(Level.Trial)
+    public void writeManifest() throws IOException {
+        manifest = Files.createTempFile("restock-bench", ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(manifest, StandardCharsets.US_ASCII)) {
+            writer.write("sku,quantity\n");
+            for (int i = 0; i < lines; i++) {
+                writer.write(SKUS[i % SKUS.length]);
+                writer.write(',');
+                writer.write(Integer.toString(10 * (1 + i % 10)));
+                writer.write('\n');
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteManifest() throws IOException {
+        Files.delete(manifest);
+    }
+
+    // A fresh inventory every run, 10M lines would overflow the stock after a few imports
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public RestockImportResponseDto importManifest() throws IOException {
+        Catalog catalog = Catalog.defaultCatalog();
+        InventoryService inventoryService = new InventoryService(catalog);
+        RestockImporter importer = new RestockImporter(inventoryService, Optional.empty(), Optional.empty(), new RestockValidator(catalog),
+                new BookstoreMetrics(new CompositeMeterRegistry(), inventoryService, new OrderLedger(catalog, 1), Optional.empty(), Optional.empty(), 5));
+        return importer.importCsv(manifest);
+    }
+}
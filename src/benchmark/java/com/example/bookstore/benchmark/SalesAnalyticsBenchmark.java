@@ -0,0 +1,79 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.SalesAnalytics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// What recording a sale adds to the order path, and what a report over each window costs
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SalesAnalyticsBenchmark {
+
+    private final List<BookRequestDto> oneBook = List.of(new BookRequestDto(Book.BOOK_A, 1));
+    private final List<BookRequestDto> threeBooks = List.of(
+            new BookRequestDto(Book.BOOK_A, 1),
+            new BookRequestDto(Book.BOOK_B, 2),
+            new BookRequestDto(Book.BOOK_D, 1));
+
+    private SalesAnalytics analytics;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        analytics = new SalesAnalytics(Catalog.defaultCatalog());
+        analytics.start();
+        analytics.record(threeBooks);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException {
+        analytics.stop();
+    }
+
+    @Benchmark
+    public void record_1book() {
+        analytics.record(oneBook);
+    }
+
+    @Benchmark
+    public void record_3books() {
+        analytics.record(threeBooks);
+    }
+
+    // Every thread adds to the same counters, like a flash sale of one book
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void record_1book_allCores() {
+        analytics.record(oneBook);
+    }
+
+    @Benchmark
+    public Object report_5m() {
+        return analytics.report(SalesAnalytics.Window.FIVE_MINUTES, 10);
+    }
+
+    @Benchmark
+    public Object report_24h() {
+        return analytics.report(SalesAnalytics.Window.DAY, 10);
+    }
+}
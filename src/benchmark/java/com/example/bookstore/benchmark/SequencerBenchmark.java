@@ -0,0 +1,92 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.InventorySequencer;
+import com.example.bookstore.service.InventoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Direct lock-free updates vs. the single-writer sequencer at 1, 8 and 64 client threads.
+// SampleTime reports the p99 next to the ops/sec of the Throughput mode.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequencerBenchmark {
+
+    private final List<BookRequestDto> order = List.of(
+            new BookRequestDto(Book.BOOK_A, 1),
+            new BookRequestDto(Book.BOOK_D, 1));
+
+    private InventoryService inventoryService;
+    private InventorySequencer inventorySequencer;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        inventoryService = new InventoryService(Catalog.defaultCatalog());
+        for (Book book : Book.values()) {
+            inventoryService.setStock(book.id(), Integer.MAX_VALUE / 2);
+        }
+        inventorySequencer = new InventorySequencer(inventoryService, 1024, 256);
+        inventorySequencer.start();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException {
+        inventorySequencer.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] direct_1thread() {
+        return inventoryService.tryReserve(order);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int[] direct_8threads() {
+        return inventoryService.tryReserve(order);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public int[] direct_64threads() {
+        return inventoryService.tryReserve(order);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] sequenced_1thread() {
+        return inventorySequencer.reserve(order).join();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int[] sequenced_8threads() {
+        return inventorySequencer.reserve(order).join();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public int[] sequenced_64threads() {
+        return inventorySequencer.reserve(order).join();
+    }
+}
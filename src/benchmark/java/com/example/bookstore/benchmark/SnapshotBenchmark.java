@@ -0,0 +1,62 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.InventoryService;
+import com.example.bookstore.service.StockSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Reads of the whole stock next to orders in a 95/5 mix, run with -t set to a multiple of 20 to use every core
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    private final List<BookRequestDto> order = List.of(
+            new BookRequestDto(Book.BOOK_A, 1),
+            new BookRequestDto(Book.BOOK_D, 1));
+
+    private InventoryService inventoryService;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        inventoryService = new InventoryService(Catalog.defaultCatalog());
+        for (Book book : Book.values()) {
+            inventoryService.setStock(book.id(), Integer.MAX_VALUE / 2);
+        }
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(19)
+    public int read() {
+        StockSnapshot snapshot = inventoryService.snapshot();
+        return snapshot.getStock(Book.BOOK_A.id()) + snapshot.getStock(Book.BOOK_D.id());
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(1)
+    public int[] write() {
+        return inventoryService.tryReserve(order);
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.bookstore.benchmark;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the app again and again, once as the plain jar and once as the fast-startup build (AOT + CDS archive +
+ * warm-up), and measures what a new instance behind an autoscaler costs: the time until it reports ready, the
+ * latency of its first order and first listing, and its resident memory once it served them.
+ * Build both first with ./mvnw -Pfast-startup package -DskipTests.
+ * <p>
+ * Options as key=value: jar (target/bookstore-0.0.1-SNAPSHOT.jar), fast-dir (target/fast-startup), runs (5),
+ * warmup-iterations (20000)
+ */
+public final class StartupTest {
+
+    private static final String ORDER = "[{\"book\": \"BOOK_A\", \"quantity\": 1}]";
+
+    private record Run(long readyMillis, long firstOrderMicros, long firstListingMicros, long rssKb) {
+    }
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "");
+        }
+        String jar = options.getOrDefault("jar", "target/bookstore-0.0.1-SNAPSHOT.jar");
+        Path fastDir = Path.of(options.getOrDefault("fast-dir", "target/fast-startup"));
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        int warmupIterations = Integer.parseInt(options.getOrDefault("warmup-iterations", "20000"));
+
+        List<String> plain = List.of("-jar", jar);
+        List<String> fast = List.of("-XX:SharedArchiveFile=" + fastDir.resolve("application.jsa"), "-Dspring.aot.enabled=true",
+                "-jar", fastDir.resolve("bookstore.jar").toString(), "--bookstore.warmup.iterations=" + warmupIterations);
+        if (!Files.exists(Path.of(jar)) || !Files.exists(fastDir.resolve("application.jsa"))) {
+            System.out.println("Build the app first: ./mvnw -Pfast-startup package -DskipTests");
+            return;
+        }
+
+        StartupTest test = new StartupTest();
+        test.measure("default", plain, runs);
+        test.measure("fast-startup", fast, runs);
+    }
+
+    private void measure(String name, List<String> appArgs, int runs) throws Exception {
+        List<Run> results = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            results.add(start(appArgs));
+        }
+        System.out.printf("%n%s (median of %d runs)%n", name, runs);
+        System.out.printf("  ready:         %6d ms%n", median(results.stream().mapToLong(Run::readyMillis).toArray()));
+        System.out.printf("  first order:   %6d us%n", median(results.stream().mapToLong(Run::firstOrderMicros).toArray()));
+        System.out.printf("  first listing: %6d us%n", median(results.stream().mapToLong(Run::firstListingMicros).toArray()));
+        System.out.printf("  RSS:           %6d MB%n", median(results.stream().mapToLong(Run::rssKb).toArray()) / 1024);
+    }
+
+    private Run start(List<String> appArgs) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(appArgs);
+        command.add("--server.port=" + port);
+        command.add("--logging.level.root=WARN");
+
+        String url = "http://127.0.0.1:" + port;
+        HttpRequest readiness = HttpRequest.newBuilder(URI.create(url + "/actuator/health/readiness")).GET().build();
+        HttpRequest order = HttpRequest.newBuilder(URI.create(url + "/api/order"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(ORDER))
+                .build();
+        HttpRequest books = HttpRequest.newBuilder(URI.create(url + "/api/books")).GET().build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try {
+            // Traffic is only sent once the instance says it is ready, like a load balancer would
+            while (!isOk(readiness)) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("The app exited with " + process.exitValue());
+                }
+                if (System.nanoTime() - start > TimeUnit.MINUTES.toNanos(2)) {
+                    throw new IllegalStateException("The app wasn't ready after 2 minutes");
+                }
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+            long ready = System.nanoTime();
+
+            long orderStart = System.nanoTime();
+            if (!isOk(order)) {
+                throw new IllegalStateException("The first order failed");
+            }
+            long orderEnd = System.nanoTime();
+            if (!isOk(books)) {
+                throw new IllegalStateException("The first listing failed");
+            }
+            long booksEnd = System.nanoTime();
+
+            return new Run(TimeUnit.NANOSECONDS.toMillis(ready - start), TimeUnit.NANOSECONDS.toMicros(orderEnd - orderStart),
+                    TimeUnit.NANOSECONDS.toMicros(booksEnd - orderEnd), rssKb(process.pid()));
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private boolean isOk(HttpRequest request) throws InterruptedException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            // Not listening yet
+            return false;
+        }
+    }
+
+    // Resident memory from /proc on Linux, ps elsewhere
+    private static long rssKb(long pid) throws IOException, InterruptedException {
+        Path status = Path.of("/proc", Long.toString(pid), "status");
+        if (Files.exists(status)) {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", ""));
+                }
+            }
+        }
+        Process ps = new ProcessBuilder("ps", "-o", "rss=", "-p", Long.toString(pid))
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        String rss = new String(ps.getInputStream().readAllBytes()).trim();
+        ps.waitFor();
+        return rss.isEmpty() ? 0 : Long.parseLong(rss);
+    }
+
+    private static long median(long[] values) {
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.service.TimingWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Scheduling and cancelling a hold's timeout, and one tick of the wheel, with many holds outstanding
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class TimingWheelBenchmark {
+
+    @Param({"1000", "1000000"})
+    private int outstanding;
+
+    private TimingWheel<Object> wheel;
+    private long now;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        now = 0;
+        wheel = new TimingWheel<>(100, 1024, 0, value -> {
+        });
+        // Spread over 15 minutes like real holds
+        for (int i = 0; i < outstanding; i++) {
+            wheel.schedule(this, 1 + (i * 7919L) % 900_000);
+        }
+        wheel.advanceTo(0);
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel() {
+        return wheel.schedule(this, now + 300_000).cancel();
+    }
+
+    // The wheel thread's work per tick: one bucket, about outstanding / 1024 holds, never all of them
+    @Benchmark
+    public void tick() {
+        now += 100;
+        wheel.advanceTo(now);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.dto.BinaryWireFormat;
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.dto.OrderResponseDto;
+import com.example.bookstore.dto.OrderedBookDto;
+import com.example.bookstore.dto.SkuDeserializer;
+import com.example.bookstore.model.Catalog;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.KeyDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.cfg.HandlerInstantiator;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Decoding orders and encoding order responses with Jackson and with the binary wire format, the sizes of both are
+// printed when the benchmark starts
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int lineItems;
+
+    private Catalog catalog;
+    private ObjectMapper objectMapper;
+    private ObjectReader orderReader;
+    private byte[] jsonOrder;
+    private byte[] binaryOrder;
+    private OrderResponseDto response;
+    private final byte[] buffer = new byte[BinaryWireFormat.BUFFER_SIZE];
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup() throws IOException {
+        Catalog.Builder builder = new Catalog.Builder();
+        for (int i = 0; i < lineItems; i++) {
+            builder.add("BOOK_" + i, "Title of book " + i, 5, 20, true);
+        }
+        catalog = builder.build();
+
+        // What Spring's handler instantiator does for the application's ObjectMapper
+        objectMapper = new ObjectMapper();
+        objectMapper.setHandlerInstantiator(new SkuHandlerInstantiator());
+        orderReader = objectMapper.readerFor(new TypeReference<List<BookRequestDto>>() {
+        });
+
+        List<BookRequestDto> order = new ArrayList<>(lineItems);
+        List<OrderedBookDto> orderedBooks = new ArrayList<>(lineItems);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < lineItems; i++) {
+            order.add(new BookRequestDto(i, 2));
+            orderedBooks.add(new OrderedBookDto(catalog.title(i), 2, catalog.price(i)));
+            json.append(i == 0 ? "" : ",").append("{\"book\":\"").append(catalog.sku(i)).append("\",\"quantity\":2}");
+        }
+        jsonOrder = json.append(']').toString().getBytes();
+        BinaryWireFormat.writeOrder(order, out, buffer);
+        binaryOrder = out.toByteArray();
+        response = new OrderResponseDto(orderedBooks, 10 * lineItems, "Order placed successfully!");
+
+        out.reset();
+        BinaryWireFormat.writeOrderResponse(response, out, buffer);
+        System.out.printf("%n%d lines: order %d B as JSON, %d B binary; response %d B as JSON, %d B binary%n", lineItems,
+                jsonOrder.length, binaryOrder.length, objectMapper.writeValueAsBytes(response).length, out.size());
+    }
+
+    @Benchmark
+    public List<BookRequestDto> decodeOrder_jackson() throws IOException {
+        return orderReader.readValue(jsonOrder);
+    }
+
+    @Benchmark
+    public List<BookRequestDto> decodeOrder_binary() throws IOException {
+        return BinaryWireFormat.readOrder(new ByteArrayInputStream(binaryOrder), catalog.size(), buffer);
+    }
+
+    @Benchmark
+    public byte[] encodeResponse_jackson() throws IOException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public int encodeResponse_binary() throws IOException {
+        out.reset();
+        BinaryWireFormat.writeOrderResponse(response, out, buffer);
+        return out.size();
+    }
+
+    private class SkuHandlerInstantiator extends HandlerInstantiator {
+        @Override
+        public JsonDeserializer<?> deserializerInstance(DeserializationConfig config, Annotated annotated, Class<?> deserClass) {
+            return deserClass == SkuDeserializer.class ? new SkuDeserializer(catalog) : null;
+        }
+
+        @Override
+        public KeyDeserializer keyDeserializerInstance(DeserializationConfig config, Annotated annotated, Class<?> keyDeserClass) {
+            return null;
+        }
+
+        @Override
+        public JsonSerializer<?> serializerInstance(SerializationConfig config, Annotated annotated, Class<?> serClass) {
+            return null;
+        }
+
+        @Override
+        public TypeResolverBuilder<?> typeResolverBuilderInstance(MapperConfig<?> config, Annotated annotated, Class<?> builderClass) {
+            return null;
+        }
+
+        @Override
+        public TypeIdResolver typeIdResolverInstance(MapperConfig<?> config, Annotated annotated, Class<?> resolverClass) {
+            return null;
+        }
+    }
+}
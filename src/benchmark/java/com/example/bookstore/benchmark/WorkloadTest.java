@@ -0,0 +1,298 @@
+package com.example.bookstore.benchmark;
+
+import com.example.bookstore.BookstoreApplication;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.InventoryService;
+import com.example.bookstore.service.StockSnapshot;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Boots the app on loopback and drives it with an open-loop workload, then checks the inventory still adds up.
+ * <p>
+ * Requests are started on a fixed schedule (rate per second) whether or not earlier ones have been answered, like
+ * real customers, and every latency is measured from the time the request was due rather than sent. A stalled app
+ * therefore shows up as the long latencies its queued customers saw, instead of as fewer, faster requests
+ * (coordinated omission). Latencies go to one HDR histogram per kind of request, written as .hgrm percentile files
+ * next to a throughput summary.
+ * <p>
+ * Scenarios: "mix" browses the listing, orders a random book or restocks one (90/9/1 by default), "flash-sale"
+ * puts flash-stock copies of BOOK_D on sale behind an admission limit and sends mostly orders for it. Afterwards no
+ * stock or held count may be negative and no book may have sold more copies than it had plus its restocks; when
+ * every order and restock got an answer the stock must match them exactly.
+ * <p>
+ * Options as key=value: scenario (mix), rate (1000), seconds (30), warmup-seconds (5), browse (90), order (9),
+ * restock (1), flash-stock (1000), flash-rate (200), timeout-ms (10000), out (target/load-test)
+ */
+public final class WorkloadTest {
+
+    private static final String ADMIN_AUTH = "Basic " + Base64.getEncoder()
+            .encodeToString("Uncle_Bob_1337:TomCruiseIsUnder170cm".getBytes(StandardCharsets.UTF_8));
+    private static final int RESTOCK_QUANTITY = 10;
+
+    private enum Kind { BROWSE, ORDER, RESTOCK }
+
+    private final Map<Kind, ConcurrentHistogram> latencies = new EnumMap<>(Kind.class);
+    private final Map<Kind, LongAdder> sent = new EnumMap<>(Kind.class);
+    private final Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+    // Orders and restocks that got no answer, they may or may not have been applied
+    private final LongAdder unanswered = new LongAdder();
+
+    private final Catalog catalog;
+    private final HttpClient client;
+    private final String url;
+    private final long timeoutMillis;
+    private final AtomicLongArray sold;
+    private final AtomicLongArray restocked;
+
+    private WorkloadTest(Catalog catalog, int port, long timeoutMillis) {
+        this.catalog = catalog;
+        this.url = "http://127.0.0.1:" + port;
+        this.timeoutMillis = timeoutMillis;
+        this.sold = new AtomicLongArray(catalog.size());
+        this.restocked = new AtomicLongArray(catalog.size());
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(timeoutMillis))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        for (Kind kind : Kind.values()) {
+            latencies.put(kind, new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3));
+            sent.put(kind, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "");
+        }
+        String scenario = options.getOrDefault("scenario", "mix");
+        int rate = Integer.parseInt(options.getOrDefault("rate", "1000"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup-seconds", "5"));
+        long timeoutMillis = Long.parseLong(options.getOrDefault("timeout-ms", "10000"));
+        Path out = Path.of(options.getOrDefault("out", "target/load-test"), scenario);
+
+        int browse;
+        int order;
+        List<String> properties = new ArrayList<>(List.of("server.port=0", "server.address=127.0.0.1", "logging.level.root=WARN"));
+        if (scenario.equals("mix")) {
+            browse = Integer.parseInt(options.getOrDefault("browse", "90"));
+            order = Integer.parseInt(options.getOrDefault("order", "9"));
+            int restock = Integer.parseInt(options.getOrDefault("restock", "1"));
+            if (browse + order + restock != 100) {
+                throw new IllegalArgumentException("browse, order and restock must add up to 100");
+            }
+        } else if (scenario.equals("flash-sale")) {
+            browse = 10;
+            order = 90;
+            properties.add("bookstore.admission.books=BOOK_D:" + options.getOrDefault("flash-rate", "200"));
+        } else {
+            throw new IllegalArgumentException("Unknown scenario " + scenario + ", use mix or flash-sale");
+        }
+
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(BookstoreApplication.class)
+                .properties(properties.toArray(new String[0]))
+                .run()) {
+            InventoryService inventoryService = app.getBean(InventoryService.class);
+            Catalog catalog = app.getBean(Catalog.class);
+            boolean flashSale = scenario.equals("flash-sale");
+            if (flashSale) {
+                inventoryService.setStock(Book.BOOK_D.id(), Integer.parseInt(options.getOrDefault("flash-stock", "1000")));
+            }
+            StockSnapshot before = inventoryService.snapshot();
+
+            int port = app.getEnvironment().getProperty("local.server.port", Integer.class);
+            WorkloadTest test = new WorkloadTest(catalog, port, timeoutMillis);
+            System.out.printf("%s: %d requests/s, %d%% browse, %d%% order, %d%% restock, %ds warm-up, %ds measured%n",
+                    scenario, rate, browse, order, 100 - browse - order, warmupSeconds, seconds);
+            long elapsed = test.run(rate, browse, order, flashSale, warmupSeconds, seconds);
+
+            test.report(elapsed, out);
+            boolean ok = test.checkInvariants(before, inventoryService.snapshot());
+            if (!ok) {
+                System.exit(1);
+            }
+        }
+    }
+
+    // Sends requests on schedule until the time is up, returns how long the measurement ran
+    private long run(int rate, int browse, int order, boolean flashSale, int warmupSeconds, int seconds) throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long measureEnd = measureStart + TimeUnit.SECONDS.toNanos(seconds);
+
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (long due = start; due < measureEnd; due += interval) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                int roll = random.nextInt(100);
+                long intended = due;
+                // Decided by when the request was due, not by when its thread gets to run
+                boolean measured = intended >= measureStart && intended < measureEnd;
+                if (roll < browse) {
+                    requests.submit(() -> send(Kind.BROWSE, browse(), intended, measured, -1, 0));
+                } else if (roll < browse + order) {
+                    int book = flashSale ? Book.BOOK_D.id() : random.nextInt(catalog.size());
+                    int quantity = flashSale ? 1 : 1 + random.nextInt(2);
+                    requests.submit(() -> send(Kind.ORDER, order(book, quantity), intended, measured, book, quantity));
+                } else {
+                    int book = restockableBook(random);
+                    requests.submit(() -> send(Kind.RESTOCK, restock(book), intended, measured, book, RESTOCK_QUANTITY));
+                }
+            }
+            // Closing the executor waits for the requests still out
+        }
+        return measureEnd - measureStart;
+    }
+
+    private void send(Kind kind, HttpRequest request, long intended, boolean measured, int book, int quantity) {
+        String outcome;
+        try {
+            int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            outcome = Integer.toString(status);
+            if (status == 200 && kind == Kind.ORDER) {
+                sold.addAndGet(book, quantity);
+            } else if (status == 200 && kind == Kind.RESTOCK) {
+                restocked.addAndGet(book, quantity);
+            }
+        } catch (IOException e) {
+            outcome = e.getClass().getSimpleName();
+            if (kind != Kind.BROWSE) {
+                unanswered.increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (measured) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended);
+            latencies.get(kind).recordValue(Math.min(micros, TimeUnit.MINUTES.toMicros(1)));
+            sent.get(kind).increment();
+            statuses.computeIfAbsent(kind + " " + outcome, key -> new LongAdder()).increment();
+        }
+    }
+
+    private HttpRequest browse() {
+        return HttpRequest.newBuilder(URI.create(url + "/api/books"))
+                .timeout(Duration.ofMillis(timeoutMillis))
+                .GET()
+                .build();
+    }
+
+    private HttpRequest order(int book, int quantity) {
+        return HttpRequest.newBuilder(URI.create(url + "/api/order"))
+                .timeout(Duration.ofMillis(timeoutMillis))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "[{\"book\": \"" + catalog.sku(book) + "\", \"quantity\": " + quantity + "}]"))
+                .build();
+    }
+
+    private HttpRequest restock(int book) {
+        return HttpRequest.newBuilder(URI.create(url + "/api/restock"))
+                .timeout(Duration.ofMillis(timeoutMillis))
+                .header("Content-Type", "application/json")
+                .header("Authorization", ADMIN_AUTH)
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "[{\"book\": \"" + catalog.sku(book) + "\", \"quantity\": " + RESTOCK_QUANTITY + "}]"))
+                .build();
+    }
+
+    private int restockableBook(ThreadLocalRandom random) {
+        while (true) {
+            int book = random.nextInt(catalog.size());
+            if (catalog.isRestockable(book)) {
+                return book;
+            }
+        }
+    }
+
+    private void report(long elapsedNanos, Path out) throws IOException {
+        Files.createDirectories(out);
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder summary = new StringBuilder();
+        long total = 0;
+        for (Kind kind : Kind.values()) {
+            total += sent.get(kind).sum();
+        }
+        summary.append(String.format("Throughput: %.0f requests/s (%d requests in %.1f s)%n", total / seconds, total, seconds));
+        for (Kind kind : Kind.values()) {
+            ConcurrentHistogram histogram = latencies.get(kind);
+            summary.append(String.format("%-8s %8.0f/s  p50 %7.1f ms  p99 %7.1f ms  p99.9 %7.1f ms  max %7.1f ms%n", kind,
+                    sent.get(kind).sum() / seconds,
+                    histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getMaxValue() / 1000.0));
+            // Percentile distribution in milliseconds, the format HdrHistogram's plotter reads
+            try (PrintStream hgrm = new PrintStream(Files.newOutputStream(out.resolve(kind.name().toLowerCase() + ".hgrm")))) {
+                histogram.outputPercentileDistribution(hgrm, 1000.0);
+            }
+        }
+        summary.append("Responses: ").append(new TreeMap<>(statuses)).append(System.lineSeparator());
+        Files.writeString(out.resolve("summary.txt"), summary);
+        System.out.print(summary);
+        System.out.println("Histograms written to " + out.toAbsolutePath());
+    }
+
+    private boolean checkInvariants(StockSnapshot before, StockSnapshot after) {
+        boolean ok = true;
+        boolean everyWriteAnswered = unanswered.sum() == 0;
+        for (int book = 0; book < catalog.size(); book++) {
+            int stock = after.getStock(book);
+            int held = after.getHeld(book);
+            long available = before.getStock(book) + restocked.get(book);
+            if (stock < 0 || held < 0) {
+                System.out.printf("FAILED: %s has %d in stock and %d held%n", catalog.sku(book), stock, held);
+                ok = false;
+            }
+            if (sold.get(book) > available) {
+                System.out.printf("FAILED: %s sold %d copies of the %d it had%n", catalog.sku(book), sold.get(book), available);
+                ok = false;
+            }
+            if (everyWriteAnswered && stock + held != available - sold.get(book)) {
+                System.out.printf("FAILED: %s has %d in stock and %d held, expected %d%n",
+                        catalog.sku(book), stock, held, available - sold.get(book));
+                ok = false;
+            }
+        }
+        System.out.println(ok ? "Invariants hold" + (everyWriteAnswered ? "" : " (" + unanswered.sum()
+                + " orders or restocks got no answer, exact stock not checked)") : "Invariants violated");
+        return ok;
+    }
+}
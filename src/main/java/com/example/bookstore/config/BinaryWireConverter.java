@@ -0,0 +1,104 @@
+package com.example.bookstore.config;
+
+import com.example.bookstore.dto.BinaryWireFormat;
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.dto.OrderResponseDto;
+import com.example.bookstore.model.Catalog;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reads orders and writes order responses and error bodies in BinaryWireFormat, for requests sent with
+ * Content-Type or Accept application/x-bookstore. Everything else, and every request that doesn't ask for it, stays JSON.
+ * Buffers are taken from a small pool, so decoding an order doesn't allocate one per request.
+ */
+public class BinaryWireConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(BinaryWireFormat.MEDIA_TYPE);
+
+    private static final int POOLED_BUFFERS = 256;
+
+    private final Catalog catalog;
+    private final ArrayBlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(POOLED_BUFFERS);
+
+    public BinaryWireConverter(Catalog catalog) {
+        super(MEDIA_TYPE);
+        this.catalog = catalog;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return OrderResponseDto.class == clazz || Map.class.isAssignableFrom(clazz);
+    }
+
+    // The only body read in binary is an order, a List<BookRequestDto>
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return type instanceof ParameterizedType parameterized
+                && parameterized.getRawType() == List.class
+                && parameterized.getActualTypeArguments()[0] == BookRequestDto.class
+                && canRead(mediaType);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        byte[] buffer = borrow();
+        try {
+            return BinaryWireFormat.readOrder(inputMessage.getBody(), catalog.size(), buffer);
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException("Order could not be read: " + e.getMessage(), e, inputMessage);
+        } finally {
+            buffers.offer(buffer);
+        }
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Only orders can be sent as " + BinaryWireFormat.MEDIA_TYPE, inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object body, Type type, HttpOutputMessage outputMessage) throws IOException {
+        byte[] buffer = borrow();
+        try {
+            if (body instanceof OrderResponseDto response) {
+                BinaryWireFormat.writeOrderResponse(response, outputMessage.getBody(), buffer);
+            } else {
+                BinaryWireFormat.writeErrors(errorMessages((Map<?, ?>) body), outputMessage.getBody(), buffer);
+            }
+        } finally {
+            buffers.offer(buffer);
+        }
+    }
+
+    // Error bodies are {"error": message} or {"errors": [messages]}, in binary they are just the messages.
+    // Spring's own error page has more entries (status, path...), only its "error" is kept
+    private static List<String> errorMessages(Map<?, ?> body) {
+        List<String> messages = new ArrayList<>();
+        if (body.get("errors") instanceof List<?> errors) {
+            for (Object message : errors) {
+                messages.add(String.valueOf(message));
+            }
+        }
+        if (body.get("error") instanceof String message) {
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private byte[] borrow() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[BinaryWireFormat.BUFFER_SIZE];
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.bookstore.config;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers credentials that passed the (slow on purpose) BCrypt check for a while, so HTTP Basic clients that call
+ * /api/restock in bursts don't pay ~100ms of CPU on every request.
+ * <p>
+ * Entries are keyed by an HMAC-SHA256 of the raw password and the stored hash, with a key that only lives in this
+ * process, so no plaintext is kept and a leaked cache can't be brute forced offline. The stored hash is part of
+ * the key, so changing the password makes every old entry miss. Only successful checks are cached, an entry
+ * expires after the TTL and nothing new is cached while the cache is full of live entries.
+ */
+public class CachingPasswordEncoder implements PasswordEncoder {
+
+    private record Key(long high, long low) {
+    }
+
+    private final PasswordEncoder delegate;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Clock clock;
+    // Initialized with the key once, every check works on its own clone since a Mac isn't thread-safe
+    private final Mac hmac;
+    private final Map<Key, Long> verified = new ConcurrentHashMap<>();
+
+    public CachingPasswordEncoder(PasswordEncoder delegate, Duration ttl, int maxEntries) {
+        this(delegate, ttl, maxEntries, Clock.systemUTC());
+    }
+
+    CachingPasswordEncoder(PasswordEncoder delegate, Duration ttl, int maxEntries, Clock clock) {
+        this.delegate = delegate;
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        try {
+            byte[] key = new byte[32];
+            new SecureRandom().nextBytes(key);
+            hmac = Mac.getInstance("HmacSHA256");
+            hmac.init(new SecretKeySpec(key, "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (rawPassword == null || encodedPassword == null) {
+            return delegate.matches(rawPassword, encodedPassword);
+        }
+
+        Key key = keyOf(rawPassword, encodedPassword);
+        long now = clock.millis();
+        Long expiresAt = verified.get(key);
+        if (expiresAt != null) {
+            if (expiresAt > now) {
+                return true;
+            }
+            verified.remove(key, expiresAt);
+        }
+
+        if (!delegate.matches(rawPassword, encodedPassword)) {
+            return false;
+        }
+        if (verified.size() >= maxEntries) {
+            verified.values().removeIf(expiry -> expiry <= now);
+        }
+        if (verified.size() < maxEntries) {
+            verified.put(key, now + ttlMillis);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    // Drops every cached credential
+    public void clear() {
+        verified.clear();
+    }
+
+    private Key keyOf(CharSequence rawPassword, String encodedPassword) {
+        Mac mac;
+        try {
+            mac = (Mac) hmac.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("HmacSHA256 can't be cloned", e);
+        }
+
+        ByteBuffer raw = StandardCharsets.UTF_8.encode(CharBuffer.wrap(rawPassword));
+        byte[] rawBytes = new byte[raw.remaining()];
+        raw.get(rawBytes);
+        // The length first, so a password and hash can't be shifted into another pair with the same bytes
+        mac.update(ByteBuffer.allocate(4).putInt(rawBytes.length).array());
+        mac.update(rawBytes);
+        mac.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+        Arrays.fill(rawBytes, (byte) 0);
+        Arrays.fill(raw.array(), (byte) 0);
+
+        ByteBuffer digest = ByteBuffer.wrap(mac.doFinal());
+        return new Key(digest.getLong(), digest.getLong());
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.bookstore.config;
+
+import com.example.bookstore.model.Catalog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@Configuration
+public class CatalogConfig {
+
+    @Bean
+    public Catalog catalog(@Value("${bookstore.catalog.file:}") String file) throws IOException {
+        // Without a catalog file the built-in books are sold
+        if (file.isBlank()) {
+            return Catalog.defaultCatalog();
+        }
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(file))) {
+            return Catalog.read(reader);
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.example.bookstore.config;
 
+import com.example.bookstore.service.ClusterInventory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
@@ -9,23 +12,48 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
 
+    // BCrypt, with successful checks remembered for a while so restock bursts don't re-hash the password every call
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${bookstore.security.credential-cache.ttl-seconds:300}") long ttlSeconds,
+                                           @Value("${bookstore.security.credential-cache.max-entries:1024}") int maxEntries) {
+        PasswordEncoder bcrypt = new BCryptPasswordEncoder();
+        if (ttlSeconds <= 0) {
+            return bcrypt;
+        }
+        return new CachingPasswordEncoder(bcrypt, Duration.ofSeconds(ttlSeconds), maxEntries);
     }
 
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http,
+                                                   @Value("${bookstore.cluster.enabled:false}") boolean clusterEnabled,
+                                                   @Value("${bookstore.cluster.token:}") String clusterToken) throws Exception {
         http.csrf(csrf -> csrf.disable()) // Disable CSRF for simplicity
                 .authorizeHttpRequests(auth -> {
-                    auth.requestMatchers("/api/restock").hasRole("ADMIN"); // Protect restock endpoint
+                    auth.requestMatchers("/api/restock", "/api/restock/**").hasRole("ADMIN"); // Protect restock endpoints
+                    auth.requestMatchers("/api/analytics/**").hasRole("ADMIN"); // Sales figures are for the admin too
+                    auth.requestMatchers("/api/ledger/**").hasRole("ADMIN"); // Past orders are for the admin and support
+                    // Load balancers probe health without credentials, metrics are scraped with the admin's
+                    auth.requestMatchers("/actuator/health", "/actuator/health/**").permitAll();
+                    auth.requestMatchers("/actuator/**").hasRole("ADMIN");
+                    // Only other nodes of the cluster, with the cluster token, may reserve and restock shards
+                    auth.requestMatchers("/internal/shard/**").access((authentication, context) ->
+                            new AuthorizationDecision(clusterEnabled && hasToken(context.getRequest().getHeader(ClusterInventory.TOKEN_HEADER), clusterToken)));
                     auth.anyRequest().permitAll(); // Allow all other endpoints
                 })
                 .httpBasic(Customizer.withDefaults()); // Use basic authentication
         return http.build();
     }
+
+    private static boolean hasToken(String requestToken, String clusterToken) {
+        return !clusterToken.isBlank() && requestToken != null
+                && MessageDigest.isEqual(clusterToken.getBytes(StandardCharsets.UTF_8), requestToken.getBytes(StandardCharsets.UTF_8));
+    }
 }
@@ -0,0 +1,133 @@
+package com.example.bookstore.config;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.dto.OrderResponseDto;
+import com.example.bookstore.dto.OrderedBookDto;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.CatalogCache;
+import com.example.bookstore.service.InventoryService;
+import com.example.bookstore.service.OrderValidator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Runs the order and listing paths before the app reports ready, so the first real orders after a scale-out don't
+ * run in the interpreter. Application runners run once the web server is up but before the readiness state turns
+ * ACCEPTING_TRAFFIC, so a load balancer watching /actuator/health/readiness only sends traffic after this.
+ * <p>
+ * Orders are parsed, validated, reserved and answered on a scratch inventory over the same catalog: the JIT compiles
+ * the same methods without any stock being taken, journaled, counted as sales or showing up in metrics. The listing,
+ * and an order for a book that doesn't exist, then go over HTTP to warm Tomcat, security and Spring MVC; neither
+ * touches the stock. Those requests carry a token only this instance knows, and WebConfig leaves requests with it out
+ * of the observations behind http.server.requests and the security metrics. bookstore.warmup.iterations=0 (the
+ * default) skips all of it.
+ */
+@Component
+public class StartupWarmup implements ApplicationRunner {
+
+    public static final String HEADER = "X-Bookstore-Warmup";
+
+    private static final byte[] UNKNOWN_BOOK_ORDER = "[{\"book\": \"WARMUP\", \"quantity\": 1}]".getBytes(StandardCharsets.UTF_8);
+
+    private final Catalog catalog;
+    private final ObjectMapper objectMapper;
+    private final Environment environment;
+    private final int iterations;
+    // Marks the warm-up's own requests, random so no client can have its requests left out of the metrics
+    private final String token = UUID.randomUUID().toString();
+
+    public StartupWarmup(Catalog catalog, ObjectMapper objectMapper, Environment environment,
+                         @Value("${bookstore.warmup.iterations:0}") int iterations) {
+        this.catalog = catalog;
+        this.objectMapper = objectMapper;
+        this.environment = environment;
+        this.iterations = iterations;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (iterations <= 0 || catalog.size() == 0) {
+            return;
+        }
+        warmOrders();
+        // Only set when there is a real web server, not under MockMvc
+        Integer port = environment.getProperty("local.server.port", Integer.class);
+        if (port != null) {
+            warmHttp(port);
+        }
+    }
+
+    public boolean isWarmup(HttpServletRequest request) {
+        return token.equals(request.getHeader(HEADER));
+    }
+
+    private void warmOrders() throws IOException {
+        InventoryService scratch = new InventoryService(catalog);
+        for (int book = 0; book < catalog.size(); book++) {
+            scratch.setStock(book, Integer.MAX_VALUE / 2);
+        }
+        OrderValidator orderValidator = new OrderValidator(catalog);
+        CatalogCache catalogCache = new CatalogCache(scratch, objectMapper);
+        ObjectReader orderReader = objectMapper.readerFor(new TypeReference<List<BookRequestDto>>() {
+        });
+
+        // One line per book for the first few books, like a typical cart
+        StringBuilder json = new StringBuilder("[");
+        for (int book = 0; book < Math.min(3, catalog.size()); book++) {
+            json.append(book == 0 ? "" : ",").append("{\"book\": \"").append(catalog.sku(book)).append("\", \"quantity\": 1}");
+        }
+        byte[] orderJson = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < iterations; i++) {
+            List<BookRequestDto> orderItems = orderReader.readValue(orderJson);
+            long totalPrice = orderValidator.validate(orderItems);
+            if (scratch.tryReserve(orderItems).length > 0) {
+                scratch.restockBooks(orderItems);
+            }
+            List<OrderedBookDto> orderedBooks = new ArrayList<>(orderItems.size());
+            for (BookRequestDto item : orderItems) {
+                orderedBooks.add(new OrderedBookDto(catalog.title(item.book()), item.quantity(), catalog.price(item.book())));
+            }
+            objectMapper.writeValueAsBytes(new OrderResponseDto(orderedBooks, (int) totalPrice, "Order placed successfully!"));
+            // The listing is much bigger than an order, it gets encoded less often
+            if (i % 100 == 0) {
+                catalogCache.get();
+            }
+        }
+    }
+
+    private void warmHttp(int port) throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest books = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/api/books"))
+                .header(HEADER, token)
+                .GET()
+                .build();
+        // Turned down by Jackson before the controller runs, so nothing is ordered or counted as rejected
+        HttpRequest order = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/api/order"))
+                .header("Content-Type", "application/json")
+                .header(HEADER, token)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(UNKNOWN_BOOK_ORDER))
+                .build();
+        for (int i = 0; i < Math.max(1, iterations / 100); i++) {
+            client.send(books, HttpResponse.BodyHandlers.discarding());
+            client.send(order, HttpResponse.BodyHandlers.discarding());
+        }
+    }
+}
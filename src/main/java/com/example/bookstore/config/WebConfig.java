@@ -0,0 +1,45 @@
+package com.example.bookstore.config;
+
+import com.example.bookstore.model.Catalog;
+import io.micrometer.observation.ObservationPredicate;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final Catalog catalog;
+
+    public WebConfig(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    // Added last, so JSON stays the default and binary is only used when a request asks for it
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new BinaryWireConverter(catalog));
+    }
+
+    // The warm-up's requests aren't customers. http.server.requests is observed around the whole request, the
+    // security filters inside it find the request in RequestContextHolder
+    @Bean
+    public ObservationPredicate skipWarmupRequests(StartupWarmup startupWarmup) {
+        return (name, context) -> {
+            HttpServletRequest request = null;
+            if (context instanceof ServerRequestObservationContext server) {
+                request = server.getCarrier();
+            } else if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+                request = attributes.getRequest();
+            }
+            return request == null || !startupWarmup.isWarmup(request);
+        };
+    }
+}
@@ -1,13 +1,41 @@
 package com.example.bookstore.controller;
 
 import com.example.bookstore.dto.*;
-import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.AdmissionControl;
+import com.example.bookstore.service.BatchOrderProcessor;
+import com.example.bookstore.service.BookListingWriter;
+import com.example.bookstore.service.BookstoreMetrics;
+import com.example.bookstore.service.CatalogCache;
+import com.example.bookstore.service.ClusterInventory;
+import com.example.bookstore.service.HoldService;
+import com.example.bookstore.service.IdempotencyCache;
+import com.example.bookstore.service.InventorySequencer;
 import com.example.bookstore.service.InventoryService;
+import com.example.bookstore.service.OrderLedger;
+import com.example.bookstore.service.OrderValidator;
+import com.example.bookstore.service.RestockImporter;
+import com.example.bookstore.service.RestockValidator;
+import com.example.bookstore.service.SalesAnalytics;
+import com.example.bookstore.service.StockFeed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -16,24 +44,121 @@ import java.util.Map;
 @RequestMapping("/api")
 public class BookstoreController {
 
+    // Id of a placed order in the ledger, see /api/ledger/orders/{orderId}
+    public static final String ORDER_ID_HEADER = "Order-Id";
+
+    private static final byte[] INVALID_CURSOR = "{\"error\":\"Invalid cursor.\"}".getBytes(StandardCharsets.UTF_8);
+
     @Autowired
     private InventoryService inventoryService;
 
-    private static final int MAX_ORDER_VALUE = 120;
-    private static final int MAX_RESTOCK_QUANTITY = 1000;
+    @Autowired
+    private Catalog catalog;
+
+    @Autowired
+    private CatalogCache catalogCache;
+
+    @Autowired
+    private BookListingWriter bookListingWriter;
+
+    @Autowired
+    private OrderValidator orderValidator;
+
+    @Autowired
+    private BookstoreMetrics bookstoreMetrics;
+
+    @Autowired
+    private BatchOrderProcessor batchOrderProcessor;
+
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+
+    @Autowired
+    private HoldService holdService;
+
+    @Autowired
+    private StockFeed stockFeed;
+
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    @Autowired
+    private RestockValidator restockValidator;
+
+    @Autowired
+    private RestockImporter restockImporter;
+
+    @Autowired
+    private SalesAnalytics salesAnalytics;
+
+    @Autowired
+    private OrderLedger orderLedger;
+
+    // Only present when bookstore.inventory.mode=sequenced
+    @Autowired(required = false)
+    private InventorySequencer inventorySequencer;
+
+    // Only present when bookstore.cluster.enabled=true
+    @Autowired(required = false)
+    private ClusterInventory clusterInventory;
+
 
 
     @GetMapping("/books")
-    public List<BookResponseDto> getBooks() {
-        // Transform the Map<Book, Integer> into a List<BookResponseDto>
-        List<BookResponseDto> dtoList = new ArrayList<>();
+    public ResponseEntity<byte[]> getBooks(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // The listing is kept encoded and only rebuilt when the stock changed
+        return encodedBooks(catalogCache.get(), MediaType.APPLICATION_JSON, ifNoneMatch);
+    }
+
+    // The same listing in the binary wire format, for clients that send Accept: application/x-bookstore
+    @GetMapping(value = "/books", produces = BinaryWireFormat.MEDIA_TYPE)
+    public ResponseEntity<byte[]> getBooksBinary(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return encodedBooks(catalogCache.getBinary(), MediaType.valueOf(BinaryWireFormat.MEDIA_TYPE), ifNoneMatch);
+    }
+
+    // One page of the listing, pass the nextCursor of a page to get the page after it
+    @GetMapping(value = "/books", params = "limit", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getBooksPage(@RequestParam int limit, @RequestParam(required = false) String cursor) {
+        int from = cursor == null ? 0 : bookListingWriter.decodeCursor(cursor);
+        if (from < 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Invalid cursor."));
+        }
+        if (limit < 1 || limit > BookListingWriter.MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Limit must be between 1 and " + BookListingWriter.MAX_PAGE_SIZE + "."));
+        }
+        return ResponseEntity.ok(bookListingWriter.page(from, limit));
+    }
 
-        for (Map.Entry<Book, Integer> entry : inventoryService.getStock().entrySet()) {
-            // Create a BookResponseDto using the book's title, price, and current stock
-            dtoList.add(new BookResponseDto(entry.getKey(), entry.getValue()));
+    // The whole listing (or from a cursor) as one JSON object per line, written out while the catalog is walked.
+    // Spring MVC only streams a ResponseEntity body declared as StreamingResponseBody, so errors are streamed too
+    @GetMapping(value = "/books", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamBooks(@RequestParam(required = false) Integer limit,
+                                                             @RequestParam(required = false) String cursor) {
+        int from = cursor == null ? 0 : bookListingWriter.decodeCursor(cursor);
+        if (from < 0) {
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(out -> out.write(INVALID_CURSOR));
         }
+        int rows = limit == null ? Integer.MAX_VALUE : limit;
 
-        return dtoList;
+        StreamingResponseBody body = out -> bookListingWriter.writeNdjson(out, from, rows);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    // Live stock over Server-Sent Events: the whole listing first, then the books that changed
+    @GetMapping(value = "/books/feed", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamStockChanges() {
+        SseEmitter emitter = stockFeed.subscribe();
+        if (emitter == null) {
+            // Too many subscribers, the client's EventSource will try again
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .build();
+        }
+        return ResponseEntity.ok(emitter);
     }
 
     /*
@@ -47,60 +172,137 @@ public class BookstoreController {
      */
 
     @PostMapping("/order")
-    public ResponseEntity<?> orderBooks(@RequestBody List<BookRequestDto> orderItems) {
-
-        // Get the total ordered books
-        int totalBooksOrdered = orderItems.stream()
-                .mapToInt(item -> item.quantity())
-                .sum();
-        // Fail if the quantity is 0
-        if (totalBooksOrdered == 0) {
-            return ResponseEntity.badRequest().body(Map.of("error", "No books placed in the order."));
-        }
-
-        // Get the total price of the ordered books
-        int totalPrice = orderItems.stream()
-                .mapToInt(item -> item.book().getPrice() * item.quantity())
-                .sum();
-        // Fail if the price is too high
-        if (totalPrice > MAX_ORDER_VALUE) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Order of $" + totalPrice + " exceeds maximum allowed value of $" + MAX_ORDER_VALUE + "."));
-        }
-
-        // Verify we have the books in stock
-        List<String> stockErrors = orderItems.stream()
-                // Filter out books that are not in stock
-                .filter(item -> !inventoryService.hasBookInStock(item.book(), item.quantity()))
-                .map(item -> {
-                    if (item.book() == Book.BOOK_D) {
-                        return item.book().getTitle() + " is unfortunately sold out and no more copies exist in the world. " +
-                                "Please remove " + item.book().getTitle() + " from your order and try again.";
-                    } else {
-                        return item.book().getTitle() + " is currently sold out. Please try to place the order again without this book.";
-                    }
-                })
-                .toList();
+    public ResponseEntity<?> orderBooks(@RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey,
+                                        @RequestBody List<BookRequestDto> orderItems) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return placeOrder(orderItems);
+        }
+        if (idempotencyKey.length() > IdempotencyCache.MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().body(Map.of("error", IdempotencyCache.HEADER + " can be at most " + IdempotencyCache.MAX_KEY_LENGTH + " characters."));
+        }
+        // A retry with the same key gets the first response back instead of ordering again
+        return idempotencyCache.execute(idempotencyKey, orderItems.hashCode(), () -> placeOrder(orderItems));
+    }
 
-        // Verify if there are any errors in order
-        if (!stockErrors.isEmpty()) {
-            return ResponseEntity.badRequest().body(Map.of("errors", stockErrors));
+    private ResponseEntity<?> placeOrder(List<BookRequestDto> orderItems) {
+        // Empty cart, negative quantities and the max order value are checked in one go
+        long totalPrice = orderValidator.validate(orderItems);
+        if (totalPrice < 0) {
+            bookstoreMetrics.rejectOrder(totalPrice);
+            return ResponseEntity.badRequest().body(Map.of("error", orderValidator.rejectionMessage(totalPrice, orderItems)));
+        }
+
+        // When a flash sale book runs out most orders are for it, turn them down before they wait for admission
+        int[] unavailableBooks = unavailableLimitedBooks(orderItems);
+        if (unavailableBooks.length > 0) {
+            bookstoreMetrics.reject(BookstoreMetrics.Rejection.SOLD_OUT);
+            return ResponseEntity.badRequest().body(Map.of("errors", orderValidator.unavailableErrors(unavailableBooks)));
         }
 
-        // Setup a list of ordered books for the response
-        List<OrderedBookDto> orderedBooks = new ArrayList<>();
-        for (BookRequestDto item : orderItems) {
-            // Call to inventory service to reduce the stock
-            inventoryService.orderBook(item.book(), item.quantity());
+        // Orders for books with an admission limit may wait a little for their turn, or are turned away
+        AdmissionControl.Decision admission = admissionControl.admit(orderItems);
+        if (admission != AdmissionControl.Decision.ADMITTED) {
+            return turnAway(admission);
+        }
 
-            // Convert the bookRequestDto to an OrderedBookDto for the response
-            // This is so we get a response containing the list of books and each book will have a title, quantity,
-            // price per book and a sub-total (book price * quantity)
-            orderedBooks.add(new OrderedBookDto(item.book().getTitle(), item.quantity(), item.book().getPrice()));
+        // Reserve all the books in one go, nothing is taken if any book is out of stock
+        long reserveStart = System.nanoTime();
+        int[] missingBooks;
+        try {
+            missingBooks = reserve(orderItems);
+        } catch (IllegalStateException e) {
+            return clusterUnavailable(e);
+        }
+        bookstoreMetrics.recordReserve(reserveStart);
+        // Verify if there are any errors in order
+        if (missingBooks.length > 0) {
+            bookstoreMetrics.reject(BookstoreMetrics.Rejection.SOLD_OUT);
+            return ResponseEntity.badRequest().body(Map.of("errors", orderValidator.stockErrors(missingBooks)));
         }
+        salesAnalytics.record(orderItems);
+        long orderId = orderLedger.record(orderItems, totalPrice);
 
         // Return a structured response with all ordered books and total price
-        OrderResponseDto response = new OrderResponseDto(orderedBooks, totalPrice, "Order placed successfully!");
-        return ResponseEntity.ok(response);
+        OrderResponseDto response = new OrderResponseDto(orderedBooks(orderItems), (int) totalPrice, "Order placed successfully!");
+        return orderPlaced(orderId, response);
+    }
+
+    /*
+     * Holds keep the books of an order aside for a customer (up to 15 minutes, 5 by default).
+     * Confirming the hold places the order, releasing it or letting it expire puts the books back in stock.
+     * A hold is checked like an order: it can't be empty or go over the max order value.
+     */
+
+    @PostMapping("/holds")
+    public ResponseEntity<?> holdBooks(@RequestParam(defaultValue = "300") int seconds,
+                                       @RequestBody List<BookRequestDto> holdItems) {
+        if (seconds < 1 || seconds > HoldService.MAX_HOLD_SECONDS) {
+            return ResponseEntity.badRequest().body(Map.of("error", "A hold can last between 1 and " + HoldService.MAX_HOLD_SECONDS + " seconds."));
+        }
+        // Holds only take the stock of this node, which isn't the stock sold for books other nodes own
+        if (clusterInventory != null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Holds aren't available while the inventory is spread over a cluster, place the order instead."));
+        }
+        // Also turns down a hold without copies, it would only take up an entry until it expired
+        long totalPrice = orderValidator.validate(holdItems);
+        if (totalPrice < 0) {
+            bookstoreMetrics.rejectOrder(totalPrice);
+            return ResponseEntity.badRequest().body(Map.of("error", orderValidator.rejectionMessage(totalPrice, holdItems)));
+        }
+        int[] unavailableBooks = unavailableLimitedBooks(holdItems);
+        if (unavailableBooks.length > 0) {
+            bookstoreMetrics.reject(BookstoreMetrics.Rejection.SOLD_OUT);
+            return ResponseEntity.badRequest().body(Map.of("errors", orderValidator.unavailableErrors(unavailableBooks)));
+        }
+        // A hold takes stock like an order, so it goes through the same admission limit
+        AdmissionControl.Decision admission = admissionControl.admit(holdItems);
+        if (admission != AdmissionControl.Decision.ADMITTED) {
+            return turnAway(admission);
+        }
+
+        HoldService.Placement placement = holdService.place(holdItems, seconds);
+        if (placement.hold() == null) {
+            bookstoreMetrics.reject(BookstoreMetrics.Rejection.SOLD_OUT);
+            return ResponseEntity.badRequest().body(Map.of("errors", orderValidator.stockErrors(placement.missingBooks())));
+        }
+
+        HoldService.Hold hold = placement.hold();
+        return ResponseEntity.ok(new HoldResponseDto(hold.getId(), orderedBooks(holdItems), (int) totalPrice,
+                hold.getExpiresAt(), "Books held, confirm the hold to place the order."));
+    }
+
+    @PostMapping("/holds/{holdId}/confirm")
+    public ResponseEntity<?> confirmHold(@PathVariable String holdId) {
+        HoldService.Hold hold = holdService.confirm(holdId);
+        if (hold == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Hold not found, it may have expired."));
+        }
+        salesAnalytics.record(hold.getItems());
+
+        List<OrderedBookDto> orderedBooks = orderedBooks(hold.getItems());
+        int totalPrice = 0;
+        for (OrderedBookDto orderedBook : orderedBooks) {
+            totalPrice += orderedBook.subTotal();
+        }
+        long orderId = orderLedger.record(hold.getItems(), totalPrice);
+        return orderPlaced(orderId, new OrderResponseDto(orderedBooks, totalPrice, "Order placed successfully!"));
+    }
+
+    @DeleteMapping("/holds/{holdId}")
+    public ResponseEntity<?> releaseHold(@PathVariable String holdId) {
+        if (!holdService.release(holdId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Hold not found, it may have expired."));
+        }
+        return ResponseEntity.ok(Map.of("message", "Hold released."));
+    }
+
+    // Many independent orders in one request, one order per line and one result per line in the same order
+    @PostMapping(value = "/orders/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> batchOrders(InputStream orders) {
+        StreamingResponseBody body = out -> batchOrderProcessor.process(orders, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     /*
@@ -120,26 +322,19 @@ public class BookstoreController {
         List<String> restockErrors = new ArrayList<>();
 
         for (BookRequestDto restockItem : restockItems) {
-            Book book = restockItem.book();
+            int book = restockItem.book();
             int quantity = restockItem.quantity();
 
-            /*int currentStock = inventoryService.getStock().getOrDefault(book, 0);
+            /*int currentStock = inventoryService.getStock(book);
             if (currentStock != 0) {
-                restockErrors.add(("Cannot restock " + book.getTitle() + " unless stock is zero!"));
+                restockErrors.add(("Cannot restock " + catalog.title(book) + " unless stock is zero!"));
             }*/
 
-            // Ensure restock quantity does not go over max limit of 1000 per book
-            if (quantity > MAX_RESTOCK_QUANTITY) {
-                restockErrors.add("Restock exceeds maximum allowed quantity of " + MAX_RESTOCK_QUANTITY + " for book " + book.getTitle() + ".");
-            }
-            // Ensure restock quantity is in multiples of 10
-            else if (quantity % 10 != 0) {
-                restockErrors.add("Restock quantity for " + book.getTitle() + " must be in multiples of 10.");
-            }
-            // Ensure the book isn't book D
-            else if (book == Book.BOOK_D) {
-                restockErrors.add("Cannot restock " + book.getTitle() +
-                        ". as no more exists in the world. Please try to create a new restock order without " + book.getTitle());
+            // Max quantity, multiples of 10 and book D are checked the same way for restock manifests
+            BookstoreMetrics.Rejection rejection = restockValidator.check(book, quantity);
+            if (rejection != null) {
+                bookstoreMetrics.reject(rejection);
+                restockErrors.add(restockValidator.rejectionMessage(rejection, book));
             } else {
                 validRestocks.add(restockItem);
             }
@@ -151,19 +346,195 @@ public class BookstoreController {
         }
 
         // Only restock the valid restock orders at the end
-        for (BookRequestDto validRestock : validRestocks) {
-            // Call to inventory service to increase the stock
-            inventoryService.restockBook(validRestock.book(), validRestock.quantity());
+        try {
+            restock(validRestocks);
+        } catch (IllegalStateException e) {
+            return clusterUnavailable(e);
         }
 
         // Setup a list of restocked books for the response
         List<RestockedBookDto> restockedItems = new ArrayList<>();
         for (BookRequestDto validRestock : validRestocks) {
-            restockedItems.add(new RestockedBookDto(validRestock.book().getTitle(), validRestock.quantity()));
+            restockedItems.add(new RestockedBookDto(catalog.title(validRestock.book()), validRestock.quantity()));
         }
 
         // Return a structured response with all restocked books
         RestockResponseDto response = new RestockResponseDto("Restocked successfully!", restockedItems);
         return ResponseEntity.ok(response);
     }
+
+    /*
+     * A restock manifest from the warehouse, one sku,quantity per line (millions of them), streamed instead of read
+     * into a list. Every line follows the same rules as /api/restock and the quantities are added up per book.
+     * Like /api/restock, nothing is restocked if any line is rejected, the response names the rejected lines.
+     */
+
+    @PostMapping(value = "/restock/import", consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<?> importRestock(InputStream manifest) throws IOException {
+        RestockImportResponseDto response;
+        try {
+            response = restockImporter.importCsv(Channels.newChannel(manifest));
+        } catch (IllegalStateException e) {
+            return clusterUnavailable(e);
+        }
+        if (!response.errors().isEmpty()) {
+            return ResponseEntity.badRequest().body(response);
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    // Top sellers and revenue per book over the last 5m, 1h or 24h, counted on this node
+    @GetMapping("/analytics/sales")
+    public ResponseEntity<?> salesReport(@RequestParam(defaultValue = "1h") String window,
+                                         @RequestParam(defaultValue = "10") int limit) {
+        SalesAnalytics.Window salesWindow = SalesAnalytics.Window.of(window);
+        if (salesWindow == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Window must be 5m, 1h or 24h."));
+        }
+        if (limit < 1 || limit > SalesAnalytics.MAX_REPORTED_BOOKS) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Limit must be between 1 and " + SalesAnalytics.MAX_REPORTED_BOOKS + "."));
+        }
+        return ResponseEntity.ok(salesAnalytics.report(salesWindow, limit));
+    }
+
+    /*
+     * Accepted orders from the ledger, newest first, for support questions and reconciling the stock.
+     * Without from and to the last hour is searched, book narrows it down to the orders with that book.
+     */
+    @GetMapping("/ledger/orders")
+    public ResponseEntity<?> ledgerOrders(@RequestParam(required = false) String book,
+                                          @RequestParam(required = false) Instant from,
+                                          @RequestParam(required = false) Instant to,
+                                          @RequestParam(defaultValue = "100") int limit) {
+        int bookId = book == null ? -1 : catalog.idOf(book);
+        if (book != null && bookId < 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Unknown book " + book + "."));
+        }
+        if (limit < 1 || limit > OrderLedger.MAX_RESULTS) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Limit must be between 1 and " + OrderLedger.MAX_RESULTS + "."));
+        }
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(Duration.ofHours(1));
+        return ResponseEntity.ok(orderLedger.find(bookId, start, end, limit));
+    }
+
+    @GetMapping("/ledger/orders/{orderId}")
+    public ResponseEntity<?> ledgerOrder(@PathVariable long orderId) {
+        LedgerOrderDto order = orderLedger.get(orderId);
+        if (order == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Order not found, it may be older than the ledger keeps."));
+        }
+        return ResponseEntity.ok(order);
+    }
+
+    // Each book will have a title, quantity, price per book and a sub-total (book price * quantity)
+    private List<OrderedBookDto> orderedBooks(List<BookRequestDto> items) {
+        List<OrderedBookDto> orderedBooks = new ArrayList<>(items.size());
+        for (BookRequestDto item : items) {
+            orderedBooks.add(new OrderedBookDto(catalog.title(item.book()), item.quantity(), catalog.price(item.book())));
+        }
+        return orderedBooks;
+    }
+
+    // 429 when a book's order rate is exceeded, 503 when too many orders are already waiting for it.
+    // Nothing was reserved either way, so an Idempotency-Key retry runs the order again
+    private ResponseEntity<?> turnAway(AdmissionControl.Decision admission) {
+        if (admission == AdmissionControl.Decision.THROTTLED) {
+            bookstoreMetrics.reject(BookstoreMetrics.Rejection.THROTTLED);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .header(IdempotencyCache.RETRYABLE_HEADER, "true")
+                    .body(Map.of("error", "Too many orders for this book right now, please try again in a moment."));
+        }
+        bookstoreMetrics.reject(BookstoreMetrics.Rejection.QUEUE_FULL);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .header(IdempotencyCache.RETRYABLE_HEADER, "true")
+                .body(Map.of("error", "The store is too busy to take this order, please try again in a moment."));
+    }
+
+    // Books with an admission limit that have no copy to sell right now, read without reserving anything
+    private int[] unavailableLimitedBooks(List<BookRequestDto> items) {
+        int[] unavailable = clusterInventory == null
+                ? inventoryService.soldOutBooks(items)
+                : clusterInventory.soldOutBooks(items);
+        int count = 0;
+        for (int book : unavailable) {
+            if (admissionControl.isLimited(book)) {
+                unavailable[count++] = book;
+            }
+        }
+        return count == unavailable.length ? unavailable : Arrays.copyOf(unavailable, count);
+    }
+
+    // The id finds the order in the ledger, an order the ledger couldn't keep is placed without one
+    private static ResponseEntity<?> orderPlaced(long orderId, OrderResponseDto response) {
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+        if (orderId >= 0) {
+            ok.header(ORDER_ID_HEADER, Long.toString(orderId));
+        }
+        return ok.body(response);
+    }
+
+    // A node of the cluster couldn't be reached or failed, the message tells whether anything was done
+    private static ResponseEntity<?> clusterUnavailable(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.of("error", e.getMessage() + "."));
+    }
+
+    private static ResponseEntity<byte[]> encodedBooks(CatalogCache.EncodedCatalog catalog, MediaType contentType, String ifNoneMatch) {
+        // Nothing changed since the client's copy, so skip the body
+        if (ifNoneMatch != null && matchesETag(ifNoneMatch, catalog.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(catalog.etag())
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .eTag(catalog.etag())
+                .cacheControl(CacheControl.noCache())
+                .body(catalog.body());
+    }
+
+    // If-None-Match can hold several ETags, weak ones are compared by their value
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Reserves the order directly, through the single writer in sequenced mode, or on the nodes owning the books
+    private int[] reserve(List<BookRequestDto> orderItems) {
+        if (clusterInventory != null) {
+            return clusterInventory.reserve(orderItems);
+        }
+        if (inventorySequencer != null) {
+            return inventorySequencer.reserve(orderItems).join();
+        }
+        return inventoryService.tryReserve(orderItems);
+    }
+
+    private void restock(List<BookRequestDto> restockItems) {
+        if (clusterInventory != null) {
+            clusterInventory.restock(restockItems);
+            return;
+        }
+        if (inventorySequencer != null) {
+            inventorySequencer.restock(restockItems).join();
+            return;
+        }
+        for (BookRequestDto restockItem : restockItems) {
+            // Call to inventory service to increase the stock
+            inventoryService.restockBook(restockItem.book(), restockItem.quantity());
+        }
+    }
 }
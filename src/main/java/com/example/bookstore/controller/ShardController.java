@@ -0,0 +1,106 @@
+package com.example.bookstore.controller;
+
+import com.example.bookstore.dto.ShardItemsDto;
+import com.example.bookstore.dto.ShardReplyDto;
+import com.example.bookstore.service.ClusterInventory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+ * What the other nodes of the cluster call to prepare and commit orders and to check and apply restocks, for the books
+ * this node owns.
+ * Only there when bookstore.cluster.enabled=true, and requests have to carry bookstore.cluster.token when one is set.
+ */
+@RestController
+@RequestMapping("/internal/shard")
+@ConditionalOnProperty(name = "bookstore.cluster.enabled", havingValue = "true")
+public class ShardController {
+
+    private static final int[] NONE_MISSING = new int[0];
+
+    @Autowired
+    private ClusterInventory clusterInventory;
+
+
+    // Phase one of an order that spans shards: hold this node's part until it is committed or aborted
+    @PostMapping("/prepare")
+    public ResponseEntity<?> prepare(@RequestHeader(value = ClusterInventory.TOKEN_HEADER, required = false) String token,
+                                     @RequestBody ShardItemsDto items) {
+        ResponseEntity<?> refusal = refuse(token, items);
+        if (refusal != null) {
+            return refusal;
+        }
+        return ResponseEntity.ok(clusterInventory.prepareLocal(items));
+    }
+
+    @PostMapping("/prepared/{preparedId}/commit")
+    public ResponseEntity<?> commit(@RequestHeader(value = ClusterInventory.TOKEN_HEADER, required = false) String token,
+                                    @PathVariable String preparedId) {
+        if (!clusterInventory.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!clusterInventory.commitLocal(preparedId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Prepared order not found, it may have expired."));
+        }
+        return ResponseEntity.ok(new ShardReplyDto(preparedId, NONE_MISSING));
+    }
+
+    @DeleteMapping("/prepared/{preparedId}")
+    public ResponseEntity<?> abort(@RequestHeader(value = ClusterInventory.TOKEN_HEADER, required = false) String token,
+                                   @PathVariable String preparedId) {
+        if (!clusterInventory.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!clusterInventory.abortLocal(preparedId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Prepared order not found, it may have expired."));
+        }
+        return ResponseEntity.ok(new ShardReplyDto(preparedId, NONE_MISSING));
+    }
+
+    // Phase one of a restock spanning nodes: only tells whether this node's part would be restocked
+    @PostMapping("/restock/check")
+    public ResponseEntity<?> checkRestock(@RequestHeader(value = ClusterInventory.TOKEN_HEADER, required = false) String token,
+                                          @RequestBody ShardItemsDto items) {
+        ResponseEntity<?> refusal = refuse(token, items);
+        if (refusal != null) {
+            return refusal;
+        }
+        List<String> errors = clusterInventory.checkRestockLocal(items);
+        if (!errors.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("errors", errors));
+        }
+        return ResponseEntity.ok(new ShardReplyDto(null, NONE_MISSING));
+    }
+
+    // Restocks that were checked by the node the admin called, and are checked again here
+    @PostMapping("/restock")
+    public ResponseEntity<?> restock(@RequestHeader(value = ClusterInventory.TOKEN_HEADER, required = false) String token,
+                                     @RequestBody ShardItemsDto items) {
+        ResponseEntity<?> refusal = refuse(token, items);
+        if (refusal != null) {
+            return refusal;
+        }
+        List<String> errors = clusterInventory.restockLocal(items);
+        if (!errors.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("errors", errors));
+        }
+        return ResponseEntity.ok(new ShardReplyDto(null, NONE_MISSING));
+    }
+
+    // A node that was sent books it doesn't own has a different catalog or list of nodes than the sender
+    private ResponseEntity<?> refuse(String token, ShardItemsDto items) {
+        if (!clusterInventory.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!clusterInventory.ownsAll(items)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "This node doesn't own every book sent to it."));
+        }
+        return null;
+    }
+}
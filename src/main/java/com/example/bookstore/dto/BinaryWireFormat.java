@@ -0,0 +1,276 @@
+package com.example.bookstore.dto;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact binary encoding of orders, order responses and the books listing, for partners that send orders in
+ * volume and don't want to pay for JSON. Every message decodes to exactly the DTOs its JSON would.
+ * <p>
+ * Numbers are varints, 7 bits per byte with the high bit set on every byte but the last. Signed numbers are zigzag
+ * encoded first so small negative numbers stay short. Strings are their UTF-8 length as a varint, then the bytes.
+ * Books in orders are sent as their id, the position of the book in the catalog (the ordinal for BOOK_A to BOOK_D).
+ * <pre>
+ * order           count, count * (book id, signed quantity)
+ * order response  count, count * (title, signed quantity, signed price per book, signed sub total),
+ *                 signed total price, message
+ * books listing   count, count * (sku, title, signed price, signed stock, signed held)
+ * errors          count, count * message
+ * </pre>
+ * Reading and writing go through a buffer handed in by the caller, so buffers can be reused between requests.
+ */
+public final class BinaryWireFormat {
+
+    public static final String MEDIA_TYPE = "application/x-bookstore";
+    public static final int BUFFER_SIZE = 1024;
+
+    // Longest string accepted when reading, far more than any title or message
+    private static final int MAX_STRING_BYTES = 64 * 1024;
+
+    private BinaryWireFormat() {
+    }
+
+    public static void writeOrder(List<BookRequestDto> items, OutputStream out, byte[] buffer) throws IOException {
+        Output output = new Output(out, buffer);
+        output.varint(items.size());
+        for (BookRequestDto item : items) {
+            output.varint(item.book());
+            output.signed(item.quantity());
+        }
+        output.flush();
+    }
+
+    // An order with a book id outside the catalog fails, like an unknown SKU does in JSON
+    public static List<BookRequestDto> readOrder(InputStream in, int catalogSize, byte[] buffer) throws IOException {
+        Input input = new Input(in, buffer);
+        int count = input.count();
+        List<BookRequestDto> items = new ArrayList<>(Math.min(count, 64));
+        for (int i = 0; i < count; i++) {
+            int book = input.varint();
+            if (book < 0 || book >= catalogSize) {
+                throw new IOException("Unknown book " + book);
+            }
+            items.add(new BookRequestDto(book, input.signed()));
+        }
+        input.end();
+        return items;
+    }
+
+    public static void writeOrderResponse(OrderResponseDto response, OutputStream out, byte[] buffer) throws IOException {
+        Output output = new Output(out, buffer);
+        output.varint(response.orderedBooks().size());
+        for (OrderedBookDto orderedBook : response.orderedBooks()) {
+            output.string(orderedBook.title());
+            output.signed(orderedBook.quantity());
+            output.signed(orderedBook.pricePerBook());
+            output.signed(orderedBook.subTotal());
+        }
+        output.signed(response.totalPrice());
+        output.string(response.message());
+        output.flush();
+    }
+
+    public static OrderResponseDto readOrderResponse(InputStream in, byte[] buffer) throws IOException {
+        Input input = new Input(in, buffer);
+        int count = input.count();
+        List<OrderedBookDto> orderedBooks = new ArrayList<>(Math.min(count, 64));
+        for (int i = 0; i < count; i++) {
+            orderedBooks.add(new OrderedBookDto(input.string(), input.signed(), input.signed(), input.signed()));
+        }
+        OrderResponseDto response = new OrderResponseDto(orderedBooks, input.signed(), input.string());
+        input.end();
+        return response;
+    }
+
+    public static void writeBooks(List<BookResponseDto> books, OutputStream out, byte[] buffer) throws IOException {
+        Output output = new Output(out, buffer);
+        output.varint(books.size());
+        for (BookResponseDto book : books) {
+            output.string(book.book());
+            output.string(book.title());
+            output.signed(book.price());
+            output.signed(book.stock());
+            output.signed(book.held());
+        }
+        output.flush();
+    }
+
+    public static List<BookResponseDto> readBooks(InputStream in, byte[] buffer) throws IOException {
+        Input input = new Input(in, buffer);
+        int count = input.count();
+        List<BookResponseDto> books = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            books.add(new BookResponseDto(input.string(), input.string(), input.signed(), input.signed(), input.signed()));
+        }
+        input.end();
+        return books;
+    }
+
+    public static void writeErrors(List<String> errors, OutputStream out, byte[] buffer) throws IOException {
+        Output output = new Output(out, buffer);
+        output.varint(errors.size());
+        for (String error : errors) {
+            output.string(error);
+        }
+        output.flush();
+    }
+
+    public static List<String> readErrors(InputStream in, byte[] buffer) throws IOException {
+        Input input = new Input(in, buffer);
+        int count = input.count();
+        List<String> errors = new ArrayList<>(Math.min(count, 64));
+        for (int i = 0; i < count; i++) {
+            errors.add(input.string());
+        }
+        input.end();
+        return errors;
+    }
+
+    // Writes into the buffer and hands it to the stream whenever it fills up
+    private static final class Output {
+        private final OutputStream out;
+        private final byte[] buffer;
+        private int position;
+
+        Output(OutputStream out, byte[] buffer) {
+            this.out = out;
+            this.buffer = buffer;
+        }
+
+        void varint(int value) throws IOException {
+            // A varint of an int is at most 5 bytes
+            if (buffer.length - position < 5) {
+                drain();
+            }
+            while ((value & ~0x7f) != 0) {
+                buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void signed(int value) throws IOException {
+            varint((value << 1) ^ (value >> 31));
+        }
+
+        void string(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (position == buffer.length) {
+                    drain();
+                }
+                int length = Math.min(bytes.length - offset, buffer.length - position);
+                System.arraycopy(bytes, offset, buffer, position, length);
+                position += length;
+                offset += length;
+            }
+        }
+
+        void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        private void drain() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    // Reads the stream into the buffer as the message is decoded, never further than the buffer holds
+    private static final class Input {
+        private final InputStream in;
+        private final byte[] buffer;
+        private int position;
+        private int limit;
+
+        Input(InputStream in, byte[] buffer) {
+            this.in = in;
+            this.buffer = buffer;
+        }
+
+        int varint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 28; shift += 7) {
+                byte b = next();
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            // The 5th byte holds the top 4 bits, anything above them doesn't fit in an int
+            byte b = next();
+            if ((b & 0xf0) != 0) {
+                throw new IOException("Varint longer than 32 bits");
+            }
+            return value | b << 28;
+        }
+
+        // Counts are sent unsigned, anything from 2^31 up is a broken message
+        int count() throws IOException {
+            int count = varint();
+            if (count < 0) {
+                throw new IOException("Count of " + Integer.toUnsignedString(count) + " is too large");
+            }
+            return count;
+        }
+
+        int signed() throws IOException {
+            int value = varint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String string() throws IOException {
+            int length = varint();
+            if (length < 0 || length > MAX_STRING_BYTES) {
+                throw new IOException("String of " + Integer.toUnsignedString(length) + " bytes is too long");
+            }
+            if (limit - position >= length) {
+                String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+                position += length;
+                return value;
+            }
+            byte[] bytes = new byte[length];
+            for (int offset = 0; offset < length; ) {
+                if (position == limit) {
+                    fill();
+                }
+                int chunk = Math.min(length - offset, limit - position);
+                System.arraycopy(buffer, position, bytes, offset, chunk);
+                position += chunk;
+                offset += chunk;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // Anything after the message means the sender and the format don't agree
+        void end() throws IOException {
+            if (position < limit || in.read() >= 0) {
+                throw new IOException("Unexpected bytes after the end of the message");
+            }
+        }
+
+        private byte next() throws IOException {
+            if (position == limit) {
+                fill();
+            }
+            return buffer[position++];
+        }
+
+        private void fill() throws IOException {
+            int read = in.read(buffer, 0, buffer.length);
+            if (read <= 0) {
+                throw new EOFException("Message ends too early");
+            }
+            position = 0;
+            limit = read;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.bookstore.dto;
+
+import java.util.List;
+
+// This class represents one page of the books listing, nextCursor is null on the last page
+public record BookPageDto(List<BookResponseDto> books, String nextCursor) {
+}
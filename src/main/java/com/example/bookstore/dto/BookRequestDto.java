@@ -1,7 +1,14 @@
 package com.example.bookstore.dto;
 
 import com.example.bookstore.model.Book;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
-// This class represents one item in an order
-public record BookRequestDto(Book book, int quantity) {
+// This class represents one item in an order, the book is sent as its SKU and resolved to its catalog id
+public record BookRequestDto(@JsonProperty(required = true) @JsonDeserialize(using = SkuDeserializer.class) int book,
+                             int quantity) {
+    // Helper constructor for the books of the default catalog
+    public BookRequestDto(Book book, int quantity) {
+        this(book.id(), quantity);
+    }
 }
@@ -1,10 +1,11 @@
 package com.example.bookstore.dto;
 
-import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
 
-public record BookResponseDto(String title, int price, int stock) {
-    // Helper constructor to create a response from a Book
-    public BookResponseDto(Book book, int stock) {
-        this(book.getTitle(), book.getPrice(), stock);
+// stock is what can still be ordered, held is what customers have on hold but didn't order yet
+public record BookResponseDto(String book, String title, int price, int stock, int held) {
+    // Helper constructor to create a response from a book in the catalog
+    public BookResponseDto(Catalog catalog, int book, int stock, int held) {
+        this(catalog.sku(book), catalog.title(book), catalog.price(book), stock, held);
     }
 }
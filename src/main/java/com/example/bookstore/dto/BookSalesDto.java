@@ -0,0 +1,5 @@
+package com.example.bookstore.dto;
+
+// This class represents the copies of a book sold over a window and the revenue they brought
+public record BookSalesDto(String sku, String title, long unitsSold, long revenue) {
+}
@@ -0,0 +1,7 @@
+package com.example.bookstore.dto;
+
+import java.util.List;
+
+// This class represents a hold on books, confirm it with its holdId before expiresAt (epoch millis) to order them
+public record HoldResponseDto(String holdId, List<OrderedBookDto> heldBooks, int totalPrice, long expiresAt, String message) {
+}
@@ -0,0 +1,5 @@
+package com.example.bookstore.dto;
+
+// This class represents one line of an order in the ledger: the book and the copies ordered
+public record LedgerLineDto(String book, int quantity) {
+}
@@ -0,0 +1,8 @@
+package com.example.bookstore.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+// This class represents an accepted order as the ledger remembers it
+public record LedgerOrderDto(long id, Instant time, List<LedgerLineDto> lines, int totalPrice) {
+}
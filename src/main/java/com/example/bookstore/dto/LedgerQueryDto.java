@@ -0,0 +1,7 @@
+package com.example.bookstore.dto;
+
+import java.util.List;
+
+// This class represents the orders matching a ledger query: how many there are and the newest of them
+public record LedgerQueryDto(long matching, List<LedgerOrderDto> orders) {
+}
@@ -0,0 +1,8 @@
+package com.example.bookstore.dto;
+
+import java.util.List;
+
+// This class represents the result of a restock manifest, the books restocked or the lines that were rejected
+public record RestockImportResponseDto(String message, long lines, List<RestockedBookDto> restockedItems,
+                                       long rejectedLines, List<String> errors) {
+}
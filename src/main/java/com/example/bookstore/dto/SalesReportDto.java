@@ -0,0 +1,7 @@
+package com.example.bookstore.dto;
+
+import java.util.List;
+
+// This class represents the sales over a window: the totals of every book and the top sellers
+public record SalesReportDto(String window, long unitsSold, long revenue, List<BookSalesDto> topSellers) {
+}
@@ -0,0 +1,5 @@
+package com.example.bookstore.dto;
+
+// This class represents the books of an order sent to the node that owns them, by catalog id
+public record ShardItemsDto(int[] books, int[] quantities) {
+}
@@ -0,0 +1,5 @@
+package com.example.bookstore.dto;
+
+// This class represents what a node answers for its part of an order: the prepared reservation, or the books that were short
+public record ShardReplyDto(String preparedId, int[] missingBooks) {
+}
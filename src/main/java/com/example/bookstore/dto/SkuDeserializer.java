@@ -0,0 +1,28 @@
+package com.example.bookstore.dto;
+
+import com.example.bookstore.model.Catalog;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+
+// Turns a SKU like "BOOK_A" into its catalog id, an unknown SKU fails the request with 400
+public class SkuDeserializer extends JsonDeserializer<Integer> {
+
+    private final Catalog catalog;
+
+    public SkuDeserializer(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public Integer deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        String sku = parser.getValueAsString();
+        int id = sku == null ? -1 : catalog.idOf(sku);
+        if (id < 0) {
+            return (Integer) context.handleWeirdStringValue(Integer.class, sku, "Unknown book");
+        }
+        return id;
+    }
+}
@@ -0,0 +1,5 @@
+package com.example.bookstore.dto;
+
+// This class represents the latest stock of one book in the stock feed
+public record StockChangeDto(String book, int stock, int held) {
+}
@@ -1,18 +1,22 @@
 package com.example.bookstore.model;
 
-// Enum holding all the available books (name and price)
+// Enum holding the built-in books (name, price, starting stock), used as the catalog when no catalog file is configured
 public enum Book {
-    BOOK_A("Fellowship of the book", 5),
-    BOOK_B("Books and the chamber of books", 10),
-    BOOK_C("The Return of the Book", 15),
-    BOOK_D("Limited Collectors Edition", 75);
+    BOOK_A("Fellowship of the book", 5, 20, true),
+    BOOK_B("Books and the chamber of books", 10, 20, true),
+    BOOK_C("The Return of the Book", 15, 20, true),
+    BOOK_D("Limited Collectors Edition", 75, 10, false); // Max 10 copies for Book D, sold out worldwide after that
 
     private final String title;
     private final int price;
+    private final int initialStock;
+    private final boolean restockable;
 
-    Book(String title, int price) {
+    Book(String title, int price, int initialStock, boolean restockable) {
         this.title = title;
         this.price = price;
+        this.initialStock = initialStock;
+        this.restockable = restockable;
     }
 
     public String getTitle() {
@@ -22,4 +26,17 @@ public enum Book {
     public int getPrice() {
         return price;
     }
+
+    public int getInitialStock() {
+        return initialStock;
+    }
+
+    public boolean isRestockable() {
+        return restockable;
+    }
+
+    // The id of this book in the default catalog
+    public int id() {
+        return ordinal();
+    }
 }
@@ -0,0 +1,239 @@
+package com.example.bookstore.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * All books that can be sold, loaded at startup so the catalog can change without a new build.
+ * <p>
+ * Every book gets a dense int id (its position in the catalog) and everything about it lives in parallel
+ * primitive arrays indexed by that id. SKUs and titles are UTF-8 bytes in two shared pools, so a book costs a few
+ * dozen bytes instead of a handful of objects. SKUs are found with an open-addressing hash table of ids.
+ */
+public final class Catalog {
+
+    private final int size;
+    private final int[] prices;
+    private final int[] initialStock;
+    private final boolean[] restockable;
+    private final byte[] skuPool;
+    private final int[] skuOffsets;
+    private final byte[] titlePool;
+    private final int[] titleOffsets;
+    // id + 1 of the book hashed to each slot, 0 for an empty slot
+    private final int[] slots;
+    private final int slotMask;
+
+    private Catalog(Builder builder) {
+        size = builder.size;
+        prices = Arrays.copyOf(builder.prices, size);
+        initialStock = Arrays.copyOf(builder.initialStock, size);
+        restockable = Arrays.copyOf(builder.restockable, size);
+        skuPool = Arrays.copyOf(builder.skuPool, builder.skuPoolSize);
+        skuOffsets = Arrays.copyOf(builder.skuOffsets, size + 1);
+        titlePool = Arrays.copyOf(builder.titlePool, builder.titlePoolSize);
+        titleOffsets = Arrays.copyOf(builder.titleOffsets, size + 1);
+
+        // Keep the table at most half full so probes stay short
+        slots = new int[Math.max(2, Integer.highestOneBit(Math.max(1, size) * 2 - 1) * 2)];
+        slotMask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashOfSku(id) & slotMask;
+            while (slots[slot] != 0) {
+                if (skuEquals(slots[slot] - 1, skuPool, skuOffsets[id], skuOffsets[id + 1] - skuOffsets[id])) {
+                    throw new IllegalArgumentException("Duplicate SKU in catalog: " + sku(id));
+                }
+                slot = (slot + 1) & slotMask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    // The built-in catalog, every Book keeps its ordinal as id
+    public static Catalog defaultCatalog() {
+        Builder builder = new Builder();
+        for (Book book : Book.values()) {
+            builder.add(book.name(), book.getTitle(), book.getPrice(), book.getInitialStock(), book.isRestockable());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads a catalog with one book per line: sku,price,stock,restockable,title
+     * The title is last so it can contain commas, empty lines and lines starting with # are skipped.
+     * Ids follow the order of the lines, new books should be added at the end so journaled stock keeps its book.
+     */
+    public static Catalog read(BufferedReader reader) throws IOException {
+        Builder builder = new Builder();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",", 5);
+            if (fields.length != 5) {
+                throw new IllegalArgumentException("Catalog line " + lineNumber + " should be sku,price,stock,restockable,title");
+            }
+            builder.add(fields[0].trim(), fields[4].trim(), Integer.parseInt(fields[1].trim()),
+                    Integer.parseInt(fields[2].trim()), Boolean.parseBoolean(fields[3].trim()));
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Returns the id of the book with this SKU, or -1 if there is none
+    public int idOf(CharSequence sku) {
+        int hash = 0;
+        for (int i = 0; i < sku.length(); i++) {
+            hash = 31 * hash + sku.charAt(i);
+        }
+        int slot = spread(hash) & slotMask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (skuEquals(id, sku)) {
+                return id;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return -1;
+    }
+
+    // Same as idOf(CharSequence) for a SKU in a byte array, so a parser can look books up without building a String
+    public int idOf(byte[] bytes, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        int slot = spread(hash) & slotMask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (skuEquals(id, bytes, offset, length)) {
+                return id;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return -1;
+    }
+
+    public String sku(int id) {
+        return new String(skuPool, skuOffsets[id], skuOffsets[id + 1] - skuOffsets[id], StandardCharsets.US_ASCII);
+    }
+
+    public String title(int id) {
+        return new String(titlePool, titleOffsets[id], titleOffsets[id + 1] - titleOffsets[id], StandardCharsets.UTF_8);
+    }
+
+    public int price(int id) {
+        return prices[id];
+    }
+
+    public int initialStock(int id) {
+        return initialStock[id];
+    }
+
+    // Books that are sold out worldwide once their last copy is gone, like BOOK_D
+    public boolean isRestockable(int id) {
+        return restockable[id];
+    }
+
+    // Heap used by the catalog's arrays, for sizing
+    public long footprintBytes() {
+        return 4L * prices.length + 4L * initialStock.length + restockable.length
+                + skuPool.length + 4L * skuOffsets.length
+                + titlePool.length + 4L * titleOffsets.length
+                + 4L * slots.length;
+    }
+
+    private int hashOfSku(int id) {
+        int hash = 0;
+        for (int i = skuOffsets[id]; i < skuOffsets[id + 1]; i++) {
+            hash = 31 * hash + skuPool[i];
+        }
+        return spread(hash);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    // SKUs are ASCII, so every char matches one byte
+    private boolean skuEquals(int id, CharSequence sku) {
+        int start = skuOffsets[id];
+        if (skuOffsets[id + 1] - start != sku.length()) {
+            return false;
+        }
+        for (int i = 0; i < sku.length(); i++) {
+            if (skuPool[start + i] != sku.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean skuEquals(int id, byte[] pool, int offset, int length) {
+        return Arrays.equals(skuPool, skuOffsets[id], skuOffsets[id + 1], pool, offset, offset + length);
+    }
+
+    public static final class Builder {
+        private int size;
+        private int[] prices = new int[16];
+        private int[] initialStock = new int[16];
+        private boolean[] restockable = new boolean[16];
+        private byte[] skuPool = new byte[256];
+        private int skuPoolSize;
+        private int[] skuOffsets = new int[17];
+        private byte[] titlePool = new byte[1024];
+        private int titlePoolSize;
+        private int[] titleOffsets = new int[17];
+
+        public Builder add(String sku, String title, int price, int stock, boolean canRestock) {
+            if (sku.isEmpty() || !sku.chars().allMatch(c -> c < 128)) {
+                throw new IllegalArgumentException("SKU must be non-empty ASCII: " + sku);
+            }
+            if (size == prices.length) {
+                int capacity = size * 2;
+                prices = Arrays.copyOf(prices, capacity);
+                initialStock = Arrays.copyOf(initialStock, capacity);
+                restockable = Arrays.copyOf(restockable, capacity);
+                skuOffsets = Arrays.copyOf(skuOffsets, capacity + 1);
+                titleOffsets = Arrays.copyOf(titleOffsets, capacity + 1);
+            }
+            prices[size] = price;
+            initialStock[size] = stock;
+            restockable[size] = canRestock;
+
+            byte[] skuBytes = sku.getBytes(StandardCharsets.US_ASCII);
+            skuPool = ensureCapacity(skuPool, skuPoolSize + skuBytes.length);
+            System.arraycopy(skuBytes, 0, skuPool, skuPoolSize, skuBytes.length);
+            skuPoolSize += skuBytes.length;
+            skuOffsets[size + 1] = skuPoolSize;
+
+            byte[] titleBytes = title.getBytes(StandardCharsets.UTF_8);
+            titlePool = ensureCapacity(titlePool, titlePoolSize + titleBytes.length);
+            System.arraycopy(titleBytes, 0, titlePool, titlePoolSize, titleBytes.length);
+            titlePoolSize += titleBytes.length;
+            titleOffsets[size + 1] = titlePoolSize;
+
+            size++;
+            return this;
+        }
+
+        public Catalog build() {
+            return new Catalog(this);
+        }
+
+        private static byte[] ensureCapacity(byte[] pool, int needed) {
+            if (needed <= pool.length) {
+                return pool;
+            }
+            return Arrays.copyOf(pool, Math.max(needed, pool.length + (pool.length >> 1)));
+        }
+    }
+}
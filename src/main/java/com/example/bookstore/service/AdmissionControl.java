@@ -0,0 +1,157 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Catalog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limits the orders for books that draw far more of them than the store can take, like BOOK_D when it drops, so
+ * a flash sale can't make every other book slow too.
+ * <p>
+ * Each limited book gets a token bucket that lets its orders through at a rate per second, with bursts of up to
+ * burst orders. An order over the rate may wait for its token, but only up to max-wait and only while fewer than
+ * max-waiting orders for that book are waiting. Every other order is turned away right away instead of queueing.
+ * The bucket is kept as the time its next token is due (GCRA), so taking a token is a single CAS.
+ * <p>
+ * A rate of 0 leaves the book unlimited, a burst of 0 turns bursts off so every order waits for its own token.
+ */
+@Service
+public class AdmissionControl {
+
+    public enum Decision {
+        ADMITTED,
+        // The order would have to wait longer than max-wait
+        THROTTLED,
+        // Too many orders for the book are already waiting
+        QUEUE_FULL
+    }
+
+    private static final class Bucket {
+        final long intervalNanos;
+        // How far ahead of now the next token may be due and an order still goes through without waiting
+        final long burstNanos;
+        final AtomicLong nextDue;
+        final AtomicInteger waiting = new AtomicInteger();
+
+        Bucket(long intervalNanos, long burstNanos, long now) {
+            this.intervalNanos = intervalNanos;
+            this.burstNanos = burstNanos;
+            this.nextDue = new AtomicLong(now);
+        }
+    }
+
+    // Indexed by book id, null for books that aren't limited
+    private final Bucket[] buckets;
+    private final int maxWaiting;
+    private final long maxWaitNanos;
+
+    /**
+     * @param limits the limited books as sku:orders-per-second pairs separated by commas, e.g. "BOOK_D:200"
+     * @throws IllegalArgumentException if a limit isn't a known sku with a whole rate of 0 or more, or burst is negative
+     */
+    public AdmissionControl(Catalog catalog,
+                            @Value("${bookstore.admission.books:}") String limits,
+                            @Value("${bookstore.admission.burst:50}") int burst,
+                            @Value("${bookstore.admission.max-waiting:100}") int maxWaiting,
+                            @Value("${bookstore.admission.max-wait-ms:100}") long maxWaitMillis) {
+        if (burst < 0) {
+            throw new IllegalArgumentException("Admission burst should be 0 or more, was " + burst);
+        }
+        this.buckets = new Bucket[catalog.size()];
+        this.maxWaiting = maxWaiting;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+
+        long now = System.nanoTime();
+        for (String limit : limits.split(",")) {
+            if (limit.isBlank()) {
+                continue;
+            }
+            String[] fields = limit.trim().split(":");
+            int book = fields.length == 2 ? catalog.idOf(fields[0]) : -1;
+            int rate = book < 0 ? -1 : parseRate(fields[1]);
+            if (rate < 0) {
+                throw new IllegalArgumentException("Admission limit should be a known sku:orders-per-second, was " + limit);
+            }
+            if (rate == 0) {
+                continue;
+            }
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+            buckets[book] = new Bucket(intervalNanos, intervalNanos * Math.max(0, burst - 1), now);
+        }
+    }
+
+    // -1 for anything but a whole number of 0 or more
+    private static int parseRate(String rate) {
+        try {
+            return Math.max(-1, Integer.parseInt(rate.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public boolean isLimited(int book) {
+        return buckets[book] != null;
+    }
+
+    /**
+     * Takes a token for every limited book ordered with a positive quantity, waiting for it when that's allowed.
+     * An order for several limited books keeps the tokens it took before one of them turned it away.
+     */
+    public Decision admit(List<BookRequestDto> orderItems) {
+        for (int i = 0, size = orderItems.size(); i < size; i++) {
+            BookRequestDto item = orderItems.get(i);
+            Bucket bucket = buckets[item.book()];
+            if (bucket != null && item.quantity() > 0) {
+                Decision decision = admit(bucket);
+                if (decision != Decision.ADMITTED) {
+                    return decision;
+                }
+            }
+        }
+        return Decision.ADMITTED;
+    }
+
+    private Decision admit(Bucket bucket) {
+        while (true) {
+            long now = System.nanoTime();
+            long due = bucket.nextDue.get();
+            long next = Math.max(due, now) + bucket.intervalNanos;
+            long wait = due - bucket.burstNanos - now;
+            if (wait <= 0) {
+                if (bucket.nextDue.compareAndSet(due, next)) {
+                    return Decision.ADMITTED;
+                }
+                continue;
+            }
+            if (wait > maxWaitNanos) {
+                return Decision.THROTTLED;
+            }
+
+            if (bucket.waiting.incrementAndGet() > maxWaiting) {
+                bucket.waiting.decrementAndGet();
+                return Decision.QUEUE_FULL;
+            }
+            try {
+                if (!bucket.nextDue.compareAndSet(due, next)) {
+                    continue;
+                }
+                // The token is ours, sleep until it is due
+                long deadline = now + wait;
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(remaining);
+                }
+                return Decision.ADMITTED;
+            } finally {
+                bucket.waiting.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.dto.OrderResponseDto;
+import com.example.bookstore.dto.OrderedBookDto;
+import com.example.bookstore.model.Catalog;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Places many independent orders from one request, one order per line (the same JSON array /api/order takes),
+ * and writes one result per line in the same order: the response or error body /api/order would have sent.
+ * <p>
+ * Orders are read and reserved in chunks, so neither the request nor the response has to fit in memory. The
+ * valid orders of a chunk are reserved in one pass, which bumps the inventory version and tells the journal once.
+ */
+@Service
+public class BatchOrderProcessor {
+
+    public static final int CHUNK_SIZE = 1000;
+
+    private static final Map<String, String> UNREADABLE_ORDER =
+            Map.of("error", "Order could not be read, it should be a list of books and quantities.");
+
+    private final InventoryService inventoryService;
+    private final InventorySequencer inventorySequencer;
+    private final ClusterInventory clusterInventory;
+    private final OrderValidator orderValidator;
+    private final BookstoreMetrics bookstoreMetrics;
+    private final SalesAnalytics salesAnalytics;
+    private final OrderLedger orderLedger;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader orderReader;
+
+    public BatchOrderProcessor(InventoryService inventoryService, Optional<InventorySequencer> inventorySequencer,
+                               Optional<ClusterInventory> clusterInventory, OrderValidator orderValidator, BookstoreMetrics bookstoreMetrics, SalesAnalytics salesAnalytics,
+                               OrderLedger orderLedger, ObjectMapper objectMapper) {
+        this.inventoryService = inventoryService;
+        this.inventorySequencer = inventorySequencer.orElse(null);
+        this.clusterInventory = clusterInventory.orElse(null);
+        this.orderValidator = orderValidator;
+        this.bookstoreMetrics = bookstoreMetrics;
+        this.salesAnalytics = salesAnalytics;
+        this.orderLedger = orderLedger;
+        this.objectMapper = objectMapper;
+        this.orderReader = objectMapper.readerFor(new TypeReference<List<BookRequestDto>>() {
+        });
+    }
+
+    public void process(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+            Object[] results = new Object[CHUNK_SIZE];
+            long[] totals = new long[CHUNK_SIZE];
+            List<List<BookRequestDto>> orders = new ArrayList<>(CHUNK_SIZE);
+            List<List<BookRequestDto>> toReserve = new ArrayList<>(CHUNK_SIZE);
+            String line;
+            do {
+                // Read a chunk, orders that can't be read or fail validation get their error right away
+                orders.clear();
+                toReserve.clear();
+                while (orders.size() < CHUNK_SIZE && (line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    int index = orders.size();
+                    List<BookRequestDto> orderItems = readOrder(line);
+                    orders.add(orderItems);
+                    if (orderItems == null) {
+                        results[index] = UNREADABLE_ORDER;
+                        continue;
+                    }
+
+                    totals[index] = orderValidator.validate(orderItems);
+                    if (totals[index] < 0) {
+                        bookstoreMetrics.rejectOrder(totals[index]);
+                        results[index] = Map.of("error", orderValidator.rejectionMessage(totals[index], orderItems));
+                    } else {
+                        results[index] = null;
+                        toReserve.add(orderItems);
+                    }
+                }
+                if (orders.isEmpty()) {
+                    break;
+                }
+
+                String[] failures = new String[toReserve.size()];
+                int[][] missing = reserve(toReserve, failures);
+                for (int i = 0, reserved = 0; i < orders.size(); i++) {
+                    Object result = results[i];
+                    if (result == null) {
+                        String failure = failures[reserved];
+                        result = failure != null
+                                ? Map.of("error", failure)
+                                : orderResult(orders.get(i), totals[i], missing[reserved]);
+                        reserved++;
+                    }
+                    objectMapper.writeValue(generator, result);
+                    generator.writeRaw('\n');
+                    results[i] = null;
+                }
+                generator.flush();
+            } while (orders.size() == CHUNK_SIZE);
+        }
+    }
+
+    // The order on a line, null if it isn't one. "null" and "[null]" are valid JSON but no order
+    private List<BookRequestDto> readOrder(String line) throws IOException {
+        List<BookRequestDto> orderItems;
+        try {
+            orderItems = orderReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+        return orderItems == null || orderItems.contains(null) ? null : orderItems;
+    }
+
+    private Object orderResult(List<BookRequestDto> orderItems, long totalPrice, int[] missingBooks) {
+        if (missingBooks.length > 0) {
+            bookstoreMetrics.reject(BookstoreMetrics.Rejection.SOLD_OUT);
+            return Map.of("errors", orderValidator.stockErrors(missingBooks));
+        }
+        salesAnalytics.record(orderItems);
+        orderLedger.record(orderItems, totalPrice);
+        Catalog catalog = inventoryService.getCatalog();
+        List<OrderedBookDto> orderedBooks = new ArrayList<>(orderItems.size());
+        for (BookRequestDto item : orderItems) {
+            orderedBooks.add(new OrderedBookDto(catalog.title(item.book()), item.quantity(), catalog.price(item.book())));
+        }
+        return new OrderResponseDto(orderedBooks, (int) totalPrice, "Order placed successfully!");
+    }
+
+    // In sequenced mode the writer already applies whatever is waiting in one batch, in a cluster every order goes
+    // to the nodes owning its books and an order a node failed on gets its message in failures instead
+    private int[][] reserve(List<List<BookRequestDto>> orders, String[] failures) {
+        if (clusterInventory != null) {
+            int[][] missing = new int[orders.size()][];
+            for (int i = 0; i < missing.length; i++) {
+                try {
+                    missing[i] = clusterInventory.reserve(orders.get(i));
+                } catch (IllegalStateException e) {
+                    failures[i] = e.getMessage() + ".";
+                }
+            }
+            return missing;
+        }
+        if (inventorySequencer == null) {
+            return inventoryService.tryReserveBatch(orders);
+        }
+        List<CompletableFuture<int[]>> futures = new ArrayList<>(orders.size());
+        for (List<BookRequestDto> orderItems : orders) {
+            futures.add(inventorySequencer.reserve(orderItems));
+        }
+        int[][] missing = new int[orders.size()][];
+        for (int i = 0; i < missing.length; i++) {
+            missing[i] = futures.get(i).join();
+        }
+        return missing;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookPageDto;
+import com.example.bookstore.dto.BookResponseDto;
+import com.example.bookstore.model.Catalog;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Pages and streams of the books listing for catalogs too big to send as one JSON array.
+ * Cursors are the catalog id of the next book, ids never change so a cursor stays valid while the stock changes.
+ */
+@Service
+public class BookListingWriter {
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private final InventoryService inventoryService;
+    private final ObjectMapper objectMapper;
+
+    public BookListingWriter(InventoryService inventoryService, ObjectMapper objectMapper) {
+        this.inventoryService = inventoryService;
+        this.objectMapper = objectMapper;
+    }
+
+    public BookPageDto page(int from, int limit) {
+        Catalog catalog = inventoryService.getCatalog();
+        int to = (int) Math.min(catalog.size(), (long) from + Math.min(limit, MAX_PAGE_SIZE));
+
+        StockSnapshot snapshot = inventoryService.snapshot();
+        List<BookResponseDto> books = new ArrayList<>(Math.max(0, to - from));
+        for (int book = from; book < to; book++) {
+            books.add(new BookResponseDto(catalog, book, snapshot.getStock(book), snapshot.getHeld(book)));
+        }
+        return new BookPageDto(books, to < catalog.size() ? encodeCursor(to) : null);
+    }
+
+    /**
+     * Writes one JSON object per line straight to the output stream while walking the catalog, so no object is
+     * kept per book, only the two int arrays of the stock snapshot. The first row is flushed right away.
+     */
+    public void writeNdjson(OutputStream out, int from, int limit) throws IOException {
+        Catalog catalog = inventoryService.getCatalog();
+        int to = (int) Math.min(catalog.size(), (long) from + limit);
+        StockSnapshot snapshot = inventoryService.snapshot();
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            // Rows are separated by our own newline instead of Jackson's root value separator
+            generator.setRootValueSeparator(null);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            for (int book = from; book < to; book++) {
+                generator.writeStartObject();
+                generator.writeStringField("book", catalog.sku(book));
+                generator.writeStringField("title", catalog.title(book));
+                generator.writeNumberField("price", catalog.price(book));
+                generator.writeNumberField("stock", snapshot.getStock(book));
+                generator.writeNumberField("held", snapshot.getHeld(book));
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+                if (book == from) {
+                    generator.flush();
+                }
+            }
+        }
+    }
+
+    public static String encodeCursor(int book) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(ByteBuffer.allocate(4).putInt(book).array());
+    }
+
+    // Returns the catalog id the cursor points to, or -1 if it isn't a cursor of this catalog
+    public int decodeCursor(String cursor) {
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+            if (bytes.length != 4) {
+                return -1;
+            }
+            int book = ByteBuffer.wrap(bytes).getInt();
+            return book >= 0 && book <= inventoryService.getCatalog().size() ? book : -1;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
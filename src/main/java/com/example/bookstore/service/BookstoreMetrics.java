@@ -0,0 +1,108 @@
+package com.example.bookstore.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+/**
+ * Metrics of the store, scraped from /actuator/prometheus next to the http.server.requests latencies Spring records
+ * for every endpoint. Every meter is registered up front, so recording one on the order path is a single
+ * increment instead of a lookup by name and tags. Stock is only reported as counts of books, not per book, so the
+ * number of series doesn't grow with the catalog.
+ */
+@Service
+public class BookstoreMetrics {
+
+    // Why an order or restock was turned down, the tag of bookstore.rejections
+    public enum Rejection {
+        EMPTY_ORDER, NEGATIVE_QUANTITY, OVER_MAX_ORDER_VALUE, SOLD_OUT, THROTTLED, QUEUE_FULL,
+        OVER_MAX_RESTOCK_QUANTITY, BAD_RESTOCK_MULTIPLE, NOT_RESTOCKABLE
+    }
+
+    private final Map<Rejection, Counter> rejections = new EnumMap<>(Rejection.class);
+    private final Timer reserveTimer;
+
+    public BookstoreMetrics(MeterRegistry registry, InventoryService inventoryService,
+                            OrderLedger orderLedger, Optional<InventoryJournal> journal, Optional<InventorySequencer> sequencer,
+                            @Value("${bookstore.metrics.low-stock:5}") int lowStock) {
+        for (Rejection rejection : Rejection.values()) {
+            rejections.put(rejection, Counter.builder("bookstore.rejections")
+                    .description("Orders and restocks that were turned down")
+                    .tag("reason", rejection.name().toLowerCase())
+                    .register(registry));
+        }
+
+        reserveTimer = Timer.builder("bookstore.order.reserve")
+                .description("Time to reserve the books of an order, including the wait for the sequencer")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .register(registry);
+
+        // Gauges are read when scraped, they cost nothing while orders come in
+        Gauge.builder("bookstore.stock.sold.out", inventoryService,
+                        inventory -> countBooks(inventory, book -> inventory.getStock(book) <= 0))
+                .description("Books with no copy in stock")
+                .register(registry);
+        Gauge.builder("bookstore.stock.low", inventoryService, inventory -> countBooks(inventory, book -> {
+                    int stock = inventory.getStock(book);
+                    return stock > 0 && stock <= lowStock;
+                }))
+                .description("Books with " + lowStock + " copies in stock or fewer, but not sold out")
+                .register(registry);
+        Gauge.builder("bookstore.stock.striped", inventoryService, inventory -> countBooks(inventory, inventory::isStriped))
+                .description("Books whose stock is split into per-core pools")
+                .register(registry);
+
+        FunctionCounter.builder("bookstore.inventory.cas.retries", inventoryService, InventoryService::getCasRetries)
+                .description("Stock updates that lost a compare-and-set to another order and were retried")
+                .register(registry);
+        FunctionCounter.builder("bookstore.ledger.record.failures", orderLedger, OrderLedger::getFailedRecords)
+                .description("Placed orders the ledger couldn't keep because it ran out of direct memory")
+                .register(registry);
+        journal.ifPresent(j -> FunctionCounter.builder("bookstore.journal.lock.waits", j, InventoryJournal::getLockWaits)
+                .description("Journal appends that had to wait for the lock")
+                .register(registry));
+        sequencer.ifPresent(s -> FunctionCounter.builder("bookstore.sequencer.full.waits", s, InventorySequencer::getFullRingWaits)
+                .description("Orders and restocks that had to wait for room in the sequencer's ring")
+                .register(registry));
+    }
+
+    private static int countBooks(InventoryService inventoryService, IntPredicate predicate) {
+        int count = 0;
+        for (int book = 0, size = inventoryService.getCatalog().size(); book < size; book++) {
+            if (predicate.test(book)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void reject(Rejection rejection) {
+        rejections.get(rejection).increment();
+    }
+
+    // Counts a negative result of OrderValidator.validate
+    public void rejectOrder(long validationResult) {
+        if (validationResult == OrderValidator.EMPTY_ORDER) {
+            reject(Rejection.EMPTY_ORDER);
+        } else if (validationResult == OrderValidator.NEGATIVE_QUANTITY) {
+            reject(Rejection.NEGATIVE_QUANTITY);
+        } else if (validationResult == OrderValidator.OVER_MAX_VALUE) {
+            reject(Rejection.OVER_MAX_ORDER_VALUE);
+        }
+    }
+
+    public void recordReserve(long startNanos) {
+        reserveTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
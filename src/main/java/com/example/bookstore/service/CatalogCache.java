@@ -0,0 +1,89 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BinaryWireFormat;
+import com.example.bookstore.dto.BookResponseDto;
+import com.example.bookstore.model.Catalog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps the books listing encoded as JSON for the current inventory version, built from a snapshot of the stock.
+ * It is only rebuilt when a request comes in after the stock changed, in between every request gets the same bytes.
+ * The binary listing (BinaryWireFormat) is cached the same way on its own, so each format is only built when asked for.
+ */
+@Service
+public class CatalogCache {
+
+    // The encoded listing and its ETag for one inventory version
+    public record EncodedCatalog(long version, byte[] body, String etag) {
+    }
+
+    // Versions start again at 0 after a restart, so the ETag also carries a random id of this run
+    private final String runId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    private final InventoryService inventoryService;
+    private final ObjectMapper objectMapper;
+
+    private volatile EncodedCatalog current;
+    private volatile EncodedCatalog currentBinary;
+
+    public CatalogCache(InventoryService inventoryService, ObjectMapper objectMapper) {
+        this.inventoryService = inventoryService;
+        this.objectMapper = objectMapper;
+    }
+
+    public EncodedCatalog get() {
+        EncodedCatalog catalog = current;
+        if (catalog != null && catalog.version() == inventoryService.getVersion()) {
+            return catalog;
+        }
+        catalog = build(false);
+        current = catalog;
+        return catalog;
+    }
+
+    public EncodedCatalog getBinary() {
+        EncodedCatalog catalog = currentBinary;
+        if (catalog != null && catalog.version() == inventoryService.getVersion()) {
+            return catalog;
+        }
+        catalog = build(true);
+        currentBinary = catalog;
+        return catalog;
+    }
+
+    private EncodedCatalog build(boolean binary) {
+        // A consistent copy of the stock, so the listing never shows an order with only some of its books taken
+        StockSnapshot snapshot = inventoryService.snapshot();
+        // Both formats of one version are different bytes, so they need different ETags
+        String etag = "\"" + runId + "-" + snapshot.getVersion() + (binary ? "-b" : "") + "\"";
+        return new EncodedCatalog(snapshot.getVersion(), encode(snapshot, binary), etag);
+    }
+
+    private byte[] encode(StockSnapshot snapshot, boolean binary) {
+        // Transform the stock of every book in the catalog into a List<BookResponseDto>
+        Catalog catalog = inventoryService.getCatalog();
+        List<BookResponseDto> dtoList = new ArrayList<>(catalog.size());
+        for (int book = 0; book < catalog.size(); book++) {
+            // Create a BookResponseDto using the book's SKU, title, price, current stock and held copies
+            dtoList.add(new BookResponseDto(catalog, book, snapshot.getStock(book), snapshot.getHeld(book)));
+        }
+
+        try {
+            if (binary) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                BinaryWireFormat.writeBooks(dtoList, out, new byte[BinaryWireFormat.BUFFER_SIZE]);
+                return out.toByteArray();
+            }
+            return objectMapper.writeValueAsBytes(dtoList);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode the books listing", e);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.dto.ShardItemsDto;
+import com.example.bookstore.dto.ShardReplyDto;
+import com.example.bookstore.model.Catalog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Clustered inventory, enabled with bookstore.cluster.enabled=true. The books are spread over the nodes of
+ * bookstore.cluster.nodes with a ShardRing and every node only sells the stock of the books it owns, but any node
+ * takes any order: lines for its own books are reserved in process, the others are sent to their owner.
+ * <p>
+ * An order for the books of this node only is reserved in one step, like on a single node, through the sequencer in
+ * sequenced mode. Every other order is reserved with a two-phase commit so it stays all or nothing: every shard first
+ * prepares its part by holding the books, and the holds are only confirmed once every shard could hold its part,
+ * otherwise they are released. That goes for an order with the books of a single other node too, a reply lost after
+ * the owner reserved in one step would leave the stock taken with nobody to give it back. A prepared part nobody
+ * confirms expires like any hold, so a lost reply or a coordinator that dies mid-order doesn't lose stock.
+ * Every node must run the same catalog and the same list of nodes.
+ */
+@Service
+@ConditionalOnProperty(name = "bookstore.cluster.enabled", havingValue = "true")
+public class ClusterInventory {
+
+    public static final String TOKEN_HEADER = "X-Cluster-Token";
+
+    private static final int[] NONE_MISSING = new int[0];
+
+    private final InventoryService inventoryService;
+    private final InventorySequencer inventorySequencer;
+    private final HoldService holdService;
+    private final RestockValidator restockValidator;
+    private final ObjectMapper objectMapper;
+    private final List<String> nodes;
+    private final int self;
+    private final String token;
+    private final int prepareTimeoutSeconds;
+    private final Duration requestTimeout;
+    // Node that owns each book, by catalog id
+    private final int[] owners;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    public ClusterInventory(InventoryService inventoryService, Optional<InventorySequencer> inventorySequencer,
+                            HoldService holdService, RestockValidator restockValidator, ObjectMapper objectMapper,
+                            @Value("${bookstore.cluster.nodes}") String nodes,
+                            @Value("${bookstore.cluster.self:0}") int self,
+                            @Value("${bookstore.cluster.token:}") String token,
+                            @Value("${bookstore.cluster.prepare-timeout-seconds:30}") int prepareTimeoutSeconds,
+                            @Value("${bookstore.cluster.request-timeout-ms:2000}") long requestTimeoutMillis) {
+        this.inventoryService = inventoryService;
+        this.inventorySequencer = inventorySequencer.orElse(null);
+        this.holdService = holdService;
+        this.restockValidator = restockValidator;
+        this.objectMapper = objectMapper;
+        this.nodes = Arrays.stream(nodes.split(",")).map(String::trim).filter(node -> !node.isEmpty()).toList();
+        // Without a token anyone who can reach a node could reserve, commit and restock through /internal/shard
+        if (token.isBlank()) {
+            throw new IllegalArgumentException("bookstore.cluster.token must be set when bookstore.cluster.enabled=true");
+        }
+        if (self < 0 || self >= this.nodes.size()) {
+            throw new IllegalArgumentException("bookstore.cluster.self should be the index of this node in bookstore.cluster.nodes, was " + self);
+        }
+        this.self = self;
+        this.token = token;
+        this.prepareTimeoutSeconds = prepareTimeoutSeconds;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+
+        ShardRing ring = new ShardRing(this.nodes);
+        Catalog catalog = inventoryService.getCatalog();
+        owners = new int[catalog.size()];
+        for (int book = 0; book < catalog.size(); book++) {
+            owners[book] = ring.nodeOf(catalog.sku(book));
+        }
+    }
+
+    public boolean owns(int book) {
+        return owners[book] == self;
+    }
+
+    public boolean ownsAll(ShardItemsDto items) {
+        if (items.books().length != items.quantities().length) {
+            return false;
+        }
+        for (int book : items.books()) {
+            if (book < 0 || book >= owners.length || !owns(book)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isAuthorized(String requestToken) {
+        return requestToken != null
+                && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), requestToken.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // InventoryService.soldOutBooks for the books this node owns, the stock of the others isn't kept here
+    public int[] soldOutBooks(List<BookRequestDto> orderItems) {
+        int[] soldOut = inventoryService.soldOutBooks(orderItems);
+        int count = 0;
+        for (int book : soldOut) {
+            if (owns(book)) {
+                soldOut[count++] = book;
+            }
+        }
+        return count == soldOut.length ? soldOut : Arrays.copyOf(soldOut, count);
+    }
+
+    /**
+     * Same contract as InventoryService.tryReserve, for an order whose books may be owned by any node.
+     *
+     * @throws IllegalStateException if a node couldn't be reached, the order was then not placed unless the
+     *                               failure came while committing, which the message tells
+     */
+    public int[] reserve(List<BookRequestDto> orderItems) {
+        List<BookRequestDto>[] parts = split(orderItems);
+        int shards = 0;
+        for (List<BookRequestDto> part : parts) {
+            if (part != null) {
+                shards++;
+            }
+        }
+        if (shards == 0) {
+            return NONE_MISSING;
+        }
+        if (shards == 1 && parts[self] != null) {
+            return reserveHere(parts[self]);
+        }
+
+        // Phase one: every shard holds its part of the order, or tells which of its books were short
+        List<CompletableFuture<ShardReplyDto>> pending = new ArrayList<>(parts.length);
+        for (int node = 0; node < parts.length; node++) {
+            if (parts[node] == null) {
+                pending.add(null);
+            } else if (node == self) {
+                pending.add(CompletableFuture.completedFuture(prepareLocal(parts[node])));
+            } else {
+                pending.add(call(node, "POST", "/prepare", parts[node]));
+            }
+        }
+        ShardReplyDto[] prepared = new ShardReplyDto[parts.length];
+        int[] missing = NONE_MISSING;
+        RuntimeException failure = null;
+        for (int node = 0; node < parts.length; node++) {
+            if (pending.get(node) == null) {
+                continue;
+            }
+            try {
+                prepared[node] = join(pending.get(node));
+                missing = merge(missing, prepared[node].missingBooks());
+            } catch (IllegalStateException e) {
+                failure = e;
+            }
+        }
+
+        // Phase two: release every hold if any part failed, confirm them all otherwise
+        boolean commit = failure == null && missing.length == 0;
+        List<CompletableFuture<ShardReplyDto>> outcomes = new ArrayList<>(parts.length);
+        for (int node = 0; node < parts.length; node++) {
+            if (prepared[node] != null && prepared[node].preparedId() != null) {
+                outcomes.add(finish(node, prepared[node].preparedId(), commit));
+            }
+        }
+        for (CompletableFuture<ShardReplyDto> outcome : outcomes) {
+            try {
+                join(outcome);
+            } catch (IllegalStateException e) {
+                // A hold that couldn't be released expires on its own. A commit whose reply was lost may have gone
+                // through or not, the order must not be placed again either way
+                if (commit) {
+                    throw new IllegalStateException("A shard didn't confirm its part of the order, it may have been placed in part or in full", e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw new IllegalStateException("A shard couldn't prepare its part, the order was not placed", failure);
+        }
+        return missing;
+    }
+
+    /**
+     * Restocks every book on the node that owns it, all or nothing as far as the nodes let it: every other node first
+     * checks its part without restocking anything, then they all restock and this node goes last, once the others
+     * did. A node that fails after checking leaves a partial restock, which the message tells.
+     *
+     * @throws IllegalStateException if a node couldn't be reached or turned its part down
+     */
+    public void restock(List<BookRequestDto> restockItems) {
+        List<BookRequestDto>[] parts = split(restockItems);
+
+        // Phase one: every other node checks its part, a node that can't be reached fails the restock here
+        List<CompletableFuture<ShardReplyDto>> checks = new ArrayList<>(parts.length);
+        for (int node = 0; node < parts.length; node++) {
+            if (parts[node] != null && node != self) {
+                checks.add(call(node, "POST", "/restock/check", parts[node]));
+            }
+        }
+        try {
+            for (CompletableFuture<ShardReplyDto> check : checks) {
+                join(check);
+            }
+        } catch (IllegalStateException e) {
+            throw new IllegalStateException("A shard couldn't take its part of the restock, nothing was restocked", e);
+        }
+
+        // Phase two: the other nodes restock, then this one if they all did
+        List<CompletableFuture<ShardReplyDto>> restocks = new ArrayList<>(parts.length);
+        for (int node = 0; node < parts.length; node++) {
+            restocks.add(parts[node] != null && node != self ? call(node, "POST", "/restock", parts[node]) : null);
+        }
+        List<String> restocked = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        IllegalStateException failure = null;
+        for (int node = 0; node < parts.length; node++) {
+            if (restocks.get(node) == null) {
+                continue;
+            }
+            try {
+                join(restocks.get(node));
+                restocked.add(nodes.get(node));
+            } catch (IllegalStateException e) {
+                failed.add(nodes.get(node));
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw new IllegalStateException("The restock failed on " + String.join(", ", failed)
+                    + (restocked.isEmpty() ? ", nothing was restocked" : ", only the books of " + String.join(", ", restocked) + " were restocked"),
+                    failure);
+        }
+        if (parts[self] != null) {
+            restockHere(parts[self]);
+        }
+    }
+
+    // Called by other nodes through ShardController, for books this node owns
+
+    public ShardReplyDto prepareLocal(ShardItemsDto items) {
+        return prepareLocal(toItems(items));
+    }
+
+    public boolean commitLocal(String preparedId) {
+        return holdService.confirm(preparedId) != null;
+    }
+
+    public boolean abortLocal(String preparedId) {
+        return holdService.release(preparedId);
+    }
+
+    // Checked again like /api/restock, nothing is restocked if any book is turned down. Returns why they were
+    public List<String> restockLocal(ShardItemsDto items) {
+        List<String> errors = checkRestockLocal(items);
+        if (errors.isEmpty()) {
+            restockHere(toItems(items));
+        }
+        return errors;
+    }
+
+    // Why the books would be turned down by restockLocal, without restocking them
+    public List<String> checkRestockLocal(ShardItemsDto items) {
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < items.books().length; i++) {
+            BookstoreMetrics.Rejection rejection = restockValidator.check(items.books()[i], items.quantities()[i]);
+            if (rejection != null) {
+                errors.add(restockValidator.rejectionMessage(rejection, items.books()[i]));
+            }
+        }
+        return errors;
+    }
+
+    // The stock of this node only changes through the sequencer's writer in sequenced mode
+    private int[] reserveHere(List<BookRequestDto> items) {
+        return inventorySequencer != null
+                ? inventorySequencer.reserve(items).join()
+                : inventoryService.tryReserve(items);
+    }
+
+    private void restockHere(List<BookRequestDto> items) {
+        if (inventorySequencer != null) {
+            inventorySequencer.restock(items).join();
+        } else {
+            inventoryService.restockBooks(items);
+        }
+    }
+
+    private ShardReplyDto prepareLocal(List<BookRequestDto> items) {
+        HoldService.Placement placement = holdService.place(items, prepareTimeoutSeconds);
+        if (placement.hold() == null) {
+            return new ShardReplyDto(null, placement.missingBooks());
+        }
+        return new ShardReplyDto(placement.hold().getId(), NONE_MISSING);
+    }
+
+    private CompletableFuture<ShardReplyDto> finish(int node, String preparedId, boolean commit) {
+        if (node == self) {
+            boolean done = commit ? commitLocal(preparedId) : abortLocal(preparedId);
+            return done
+                    ? CompletableFuture.completedFuture(new ShardReplyDto(preparedId, NONE_MISSING))
+                    : CompletableFuture.failedFuture(new IllegalStateException("Prepared order " + preparedId + " expired"));
+        }
+        return commit
+                ? call(node, "POST", "/prepared/" + preparedId + "/commit", null)
+                : call(node, "DELETE", "/prepared/" + preparedId, null);
+    }
+
+    // The lines of every node's books, null for nodes with no book in the order
+    @SuppressWarnings("unchecked")
+    private List<BookRequestDto>[] split(List<BookRequestDto> items) {
+        List<BookRequestDto>[] parts = new List[nodes.size()];
+        for (BookRequestDto item : items) {
+            if (item.quantity() == 0) {
+                continue;
+            }
+            int node = owners[item.book()];
+            if (parts[node] == null) {
+                parts[node] = new ArrayList<>(items.size());
+            }
+            parts[node].add(item);
+        }
+        return parts;
+    }
+
+    private CompletableFuture<ShardReplyDto> call(int node, String method, String path, List<BookRequestDto> items) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(nodes.get(node) + "/internal/shard" + path))
+                .timeout(requestTimeout);
+        request.header(TOKEN_HEADER, token);
+        if (items == null) {
+            request.method(method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            request.header("Content-Type", "application/json")
+                    .method(method, HttpRequest.BodyPublishers.ofByteArray(encode(toShardItems(items))));
+        }
+        return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray()).thenApply(response -> {
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Node " + nodes.get(node) + " answered " + response.statusCode() + " to " + method + " " + path);
+            }
+            return decode(response.body());
+        });
+    }
+
+    // Unwraps the failure of a call, a node that can't be reached or answers with an error is an IllegalStateException
+    private static ShardReplyDto join(CompletableFuture<ShardReplyDto> reply) {
+        try {
+            return reply.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IllegalStateException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Shard request failed", e.getCause());
+        }
+    }
+
+    private byte[] encode(ShardItemsDto items) {
+        try {
+            return objectMapper.writeValueAsBytes(items);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ShardReplyDto decode(byte[] body) {
+        try {
+            return objectMapper.readValue(body, ShardReplyDto.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("Shard reply could not be read", e);
+        }
+    }
+
+    private static ShardItemsDto toShardItems(List<BookRequestDto> items) {
+        int[] books = new int[items.size()];
+        int[] quantities = new int[items.size()];
+        for (int i = 0; i < books.length; i++) {
+            books[i] = items.get(i).book();
+            quantities[i] = items.get(i).quantity();
+        }
+        return new ShardItemsDto(books, quantities);
+    }
+
+    private static List<BookRequestDto> toItems(ShardItemsDto items) {
+        List<BookRequestDto> list = new ArrayList<>(items.books().length);
+        for (int i = 0; i < items.books().length; i++) {
+            list.add(new BookRequestDto(items.books()[i], items.quantities()[i]));
+        }
+        return list;
+    }
+
+    // Sorted ids of the books short on any shard, shards never share a book so there are no duplicates
+    private static int[] merge(int[] a, int[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        int[] merged = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, merged, a.length, b.length);
+        Arrays.sort(merged);
+        return merged;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookRequestDto;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds keep books out of the stock for a customer for a few minutes, until they confirm the order or let it go.
+ * Every hold gets a timeout in a timing wheel, which gives the books back when nobody confirmed or released it.
+ * Confirming, releasing and expiring all start by cancelling that timeout, so only one of them can win.
+ * In sequenced mode the stock is only changed by the sequencer's writer, so holds go through it like orders.
+ */
+@Service
+public class HoldService {
+
+    public static final int MAX_HOLD_SECONDS = 900;
+
+    public static final class Hold {
+        private final String id;
+        private final List<BookRequestDto> items;
+        // Set right after the hold is registered, a hold without one can't be confirmed yet
+        private volatile TimingWheel.Timeout<Hold> timeout;
+
+        private Hold(String id, List<BookRequestDto> items) {
+            this.id = id;
+            this.items = items;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public List<BookRequestDto> getItems() {
+            return items;
+        }
+
+        public long getExpiresAt() {
+            return timeout.getDeadlineMillis();
+        }
+    }
+
+    // The hold, or the ids of the books that didn't have enough stock
+    public record Placement(Hold hold, int[] missingBooks) {
+    }
+
+    private final InventoryService inventoryService;
+    private final InventorySequencer inventorySequencer;
+    private final TimingWheel<Hold> wheel;
+    private final Map<String, Hold> holds = new ConcurrentHashMap<>();
+
+    public HoldService(InventoryService inventoryService, long tickMillis, int wheelSize) {
+        this(inventoryService, Optional.empty(), tickMillis, wheelSize);
+    }
+
+    @Autowired
+    public HoldService(InventoryService inventoryService, Optional<InventorySequencer> inventorySequencer,
+                       @Value("${bookstore.holds.tick-ms:100}") long tickMillis,
+                       @Value("${bookstore.holds.wheel-size:1024}") int wheelSize) {
+        this.inventoryService = inventoryService;
+        this.inventorySequencer = inventorySequencer.orElse(null);
+        this.wheel = new TimingWheel<>(tickMillis, wheelSize, System.currentTimeMillis(), this::expire);
+    }
+
+    @PostConstruct
+    public void start() {
+        wheel.start("hold-expiry");
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        wheel.stop();
+    }
+
+    // Holds the books for the given number of seconds, all of them or none
+    public Placement place(List<BookRequestDto> items, int seconds) {
+        int[] missing = inventorySequencer != null
+                ? inventorySequencer.hold(items).join()
+                : inventoryService.tryHold(items);
+        if (missing.length > 0) {
+            return new Placement(null, missing);
+        }
+        Hold hold = new Hold(UUID.randomUUID().toString(), List.copyOf(items));
+        // Registered before it can expire, so expiry always finds it to remove
+        holds.put(hold.id, hold);
+        hold.timeout = wheel.schedule(hold, System.currentTimeMillis() + seconds * 1000L);
+        return new Placement(hold, missing);
+    }
+
+    // Sells the held books, returns the hold or null if it expired or was already confirmed or released
+    public Hold confirm(String id) {
+        Hold hold = take(id);
+        if (hold != null && inventorySequencer != null) {
+            inventorySequencer.confirmHold(hold.items).join();
+        } else if (hold != null) {
+            inventoryService.confirmHold(hold.items);
+        }
+        return hold;
+    }
+
+    // Gives the held books back, returns false if the hold expired or was already confirmed or released
+    public boolean release(String id) {
+        Hold hold = take(id);
+        if (hold != null && inventorySequencer != null) {
+            inventorySequencer.releaseHold(hold.items).join();
+        } else if (hold != null) {
+            inventoryService.releaseHold(hold.items);
+        }
+        return hold != null;
+    }
+
+    public int size() {
+        return holds.size();
+    }
+
+    // Expires holds up to now, the wheel's own thread does this every tick
+    void advanceTo(long nowMillis) {
+        wheel.advanceTo(nowMillis);
+    }
+
+    private Hold take(String id) {
+        Hold hold = holds.get(id);
+        TimingWheel.Timeout<Hold> timeout = hold == null ? null : hold.timeout;
+        if (timeout == null || !timeout.cancel()) {
+            return null;
+        }
+        holds.remove(id);
+        return hold;
+    }
+
+    private void expire(Hold hold) {
+        holds.remove(hold.id);
+        // Nobody waits for an expired hold, so the wheel's thread doesn't wait for the sequencer's writer either
+        if (inventorySequencer != null) {
+            inventorySequencer.releaseHold(hold.items);
+        } else {
+            inventoryService.releaseHold(hold.items);
+        }
+    }
+}
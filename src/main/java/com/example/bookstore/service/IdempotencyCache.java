@@ -0,0 +1,153 @@
+package com.example.bookstore.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the response of every order sent with an Idempotency-Key, so a client that retries after a timeout
+ * gets the first response again instead of ordering twice.
+ * <p>
+ * The first request with a key runs the order, a duplicate that comes in meanwhile waits for that result instead
+ * of running it again. Every key lives for the same TTL, so keys expire in the order they were added: a queue in
+ * that order lets each new key evict the expired ones (and the oldest ones once the cache is full) without a scan.
+ * Eviction stops at an order that is still running, a retry would otherwise run it again: while a slow order is in
+ * flight the cache can go over max-entries, and it catches up once the order is done.
+ */
+@Service
+public class IdempotencyCache {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    // Set on responses to orders that were turned away before anything was reserved, their key isn't kept
+    public static final String RETRYABLE_HEADER = "Idempotent-Retryable";
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private static final class Entry {
+        final String key;
+        final int fingerprint;
+        final long expiresAt;
+        final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+
+        Entry(String key, int fingerprint, long expiresAt) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Clock clock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Entries in the order they were added, which is also the order they expire in
+    private final Queue<Entry> expiryQueue = new ConcurrentLinkedQueue<>();
+
+    @Autowired
+    public IdempotencyCache(@Value("${bookstore.idempotency.ttl-seconds:86400}") long ttlSeconds,
+                            @Value("${bookstore.idempotency.max-entries:1000000}") int maxEntries) {
+        this(Duration.ofSeconds(ttlSeconds), maxEntries, Clock.systemUTC());
+    }
+
+    IdempotencyCache(Duration ttl, int maxEntries, Clock clock) {
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+    }
+
+    /**
+     * Runs the order the first time a key is seen and returns its response for every later request with that key.
+     * The fingerprint identifies the order, a key sent again with a different order is rejected.
+     */
+    public ResponseEntity<?> execute(String key, int fingerprint, Supplier<ResponseEntity<?>> order) {
+        while (true) {
+            long now = clock.millis();
+            Entry entry = new Entry(key, fingerprint, now + ttlMillis);
+            Entry existing = entries.putIfAbsent(key, entry);
+            if (existing == null) {
+                expiryQueue.add(entry);
+                evict(now);
+                return run(entry, order);
+            }
+
+            if (existing.expiresAt <= now) {
+                // Expired but not evicted yet, take its place
+                if (entries.replace(key, existing, entry)) {
+                    expiryQueue.add(entry);
+                    return run(entry, order);
+                }
+                continue;
+            }
+            if (existing.fingerprint != fingerprint) {
+                return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                        .body(Map.of("error", HEADER + " was already used for a different order."));
+            }
+            try {
+                return replay(existing.response.join());
+            } catch (CompletionException e) {
+                // The first request failed and its key was dropped, run the order again
+                continue;
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Requests waiting for the order running under this key, for tests
+    int waiting(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? 0 : entry.response.getNumberOfDependents();
+    }
+
+    private ResponseEntity<?> run(Entry entry, Supplier<ResponseEntity<?>> order) {
+        ResponseEntity<?> response;
+        try {
+            response = order.get();
+        } catch (RuntimeException | Error e) {
+            // Nothing to replay, a retry should run the order again
+            entries.remove(entry.key, entry);
+            entry.response.completeExceptionally(e);
+            evict(clock.millis());
+            throw e;
+        }
+        // Only admission control says the order was turned away untouched. Any other failure, like a 503 for an order
+        // a shard may have placed, is replayed: running it again could place it twice
+        if (response.getHeaders().containsKey(RETRYABLE_HEADER)) {
+            entries.remove(entry.key, entry);
+        }
+        entry.response.complete(response);
+        evict(clock.millis());
+        return response;
+    }
+
+    private static ResponseEntity<?> replay(ResponseEntity<?> response) {
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(REPLAYED_HEADER, "true")
+                .body(response.getBody());
+    }
+
+    private void evict(long now) {
+        Entry oldest;
+        while ((oldest = expiryQueue.peek()) != null && oldest.response.isDone()
+                && (oldest.expiresAt <= now || entries.size() > maxEntries)) {
+            if (expiryQueue.remove(oldest)) {
+                entries.remove(oldest.key, oldest);
+            }
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package com.example.bookstore.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead log of every stock change, enabled with bookstore.journal.enabled=true.
+ * <p>
+ * Changes are appended as binary records to a memory-mapped log file: [int length][int crc32c][int count]
+ * followed by count pairs of [int book][int delta]. Every snapshot-every records the stock is written to a
+ * snapshot file and a new log generation is started, so startup loads the snapshot and only replays the log
+ * written after it. A torn record at the end of the log (crash while writing) fails its checksum and is dropped.
+ */
+@Service
+@ConditionalOnProperty(name = "bookstore.journal.enabled", havingValue = "true")
+public class InventoryJournal implements InventoryListener {
+
+    public enum FsyncPolicy {
+        // Force the log to disk before the order or restock returns
+        PER_OP,
+        // Force the log from a background thread every fsync-interval-ms, a power loss can lose that interval
+        INTERVAL,
+        // Leave it to the OS, survives a crash of the app but not of the machine
+        NONE
+    }
+
+    private static final String SNAPSHOT_FILE = "inventory.snapshot";
+    private static final int HEADER_BYTES = 8;
+    private static final int SKIP_TO_NEXT_SEGMENT = -1;
+
+    private final InventoryService inventoryService;
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+    private final int segmentSize;
+    private final long snapshotEvery;
+
+    // A lock instead of synchronized so waiting on it doesn't pin virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    // Appends that found the lock taken and had to wait for it
+    private final LongAdder lockWaits = new LongAdder();
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer record = ByteBuffer.allocate(64);
+
+    // Stock as described by the snapshot plus the log, only touched while holding the lock
+    private int[] stock;
+    private long generation;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private int forcedPosition;
+    private long recordsSinceSnapshot;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public InventoryJournal(InventoryService inventoryService,
+                            @Value("${bookstore.journal.directory:data/journal}") String directory,
+                            @Value("${bookstore.journal.fsync:interval}") String fsyncPolicy,
+                            @Value("${bookstore.journal.fsync-interval-ms:10}") long fsyncIntervalMillis,
+                            @Value("${bookstore.journal.segment-size-mb:64}") int segmentSizeMb,
+                            @Value("${bookstore.journal.snapshot-every:1000000}") long snapshotEvery) {
+        this.inventoryService = inventoryService;
+        this.directory = Path.of(directory);
+        this.fsyncPolicy = FsyncPolicy.valueOf(fsyncPolicy.toUpperCase().replace('-', '_'));
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.segmentSize = segmentSizeMb * 1024 * 1024;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        recover();
+        inventoryService.addListener(this);
+
+        running = true;
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            flusher = new Thread(this::flushPeriodically, "inventory-journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        running = false;
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        lock.lock();
+        try {
+            force();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Loads the latest snapshot, replays the log generations written after it and hands the result to the
+     * InventoryService. A fresh snapshot and log generation are then started so the next startup is fast again.
+     */
+    void recover() throws IOException {
+        Files.createDirectories(directory);
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+
+        // Books without journaled stock (first start, or added to the catalog since) start at the catalog's stock
+        int size = inventoryService.getCatalog().size();
+        stock = new int[size];
+        for (int book = 0; book < size; book++) {
+            stock[book] = inventoryService.getStock(book);
+        }
+
+        if (Files.exists(snapshotFile)) {
+            readSnapshot(snapshotFile);
+            for (Path log : logsFrom(generation)) {
+                replay(log);
+            }
+            for (int book = 0; book < size; book++) {
+                inventoryService.setStock(book, stock[book]);
+            }
+        } else {
+            generation = -1;
+        }
+
+        lock.lock();
+        try {
+            rollGeneration();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void stockChanged(int[] books, int[] deltas, int count) {
+        int payloadBytes = 4 + count * 8;
+        if (!lock.tryLock()) {
+            lockWaits.increment();
+            lock.lock();
+        }
+        try {
+            if (record.capacity() < payloadBytes) {
+                record = ByteBuffer.allocate(payloadBytes);
+            }
+            record.clear();
+            record.putInt(count);
+            for (int i = 0; i < count; i++) {
+                record.putInt(books[i]).putInt(deltas[i]);
+                stock[books[i]] += deltas[i];
+            }
+            crc.reset();
+            crc.update(record.array(), 0, payloadBytes);
+
+            if (segment.remaining() < HEADER_BYTES + payloadBytes) {
+                nextSegment();
+            }
+            // Length goes in last, until then the record reads as the end of the log
+            int position = segment.position();
+            segment.putInt(position + 4, (int) crc.getValue());
+            segment.put(position + HEADER_BYTES, record.array(), 0, payloadBytes);
+            segment.putInt(position, payloadBytes);
+            segment.position(position + HEADER_BYTES + payloadBytes);
+
+            if (fsyncPolicy == FsyncPolicy.PER_OP) {
+                force();
+            }
+            if (++recordsSinceSnapshot >= snapshotEvery) {
+                rollGeneration();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to the inventory journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getLockWaits() {
+        return lockWaits.sum();
+    }
+
+    private void flushPeriodically() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis));
+
+            // Only grab the range under the lock, appends can go on while the disk catches up
+            MappedByteBuffer toForce;
+            int from;
+            int to;
+            lock.lock();
+            try {
+                toForce = segment;
+                from = forcedPosition;
+                to = segment.position();
+            } finally {
+                lock.unlock();
+            }
+            if (to <= from) {
+                continue;
+            }
+
+            toForce.force(from, to - from);
+            lock.lock();
+            try {
+                if (segment == toForce && forcedPosition < to) {
+                    forcedPosition = to;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Writes the part of the current segment that hasn't been forced yet to disk
+    private void force() {
+        int position = segment.position();
+        if (position > forcedPosition) {
+            segment.force(forcedPosition, position - forcedPosition);
+            forcedPosition = position;
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        if (segment.remaining() >= 4) {
+            segment.putInt(segment.position(), SKIP_TO_NEXT_SEGMENT);
+        }
+        segment.position(segment.capacity());
+        force();
+        mapSegment(segmentStart + segmentSize);
+    }
+
+    private void mapSegment(long start) throws IOException {
+        segmentStart = start;
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, start, segmentSize);
+        forcedPosition = 0;
+    }
+
+    // Snapshots the current stock and starts an empty log generation after it
+    private void rollGeneration() throws IOException {
+        if (channel != null) {
+            force();
+            channel.close();
+        }
+        generation++;
+        writeSnapshot(directory.resolve(SNAPSHOT_FILE));
+
+        channel = FileChannel.open(logFile(generation),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapSegment(0);
+        recordsSinceSnapshot = 0;
+
+        // Older generations are covered by the snapshot now
+        for (Path log : logsFrom(0)) {
+            if (generationOf(log) < generation) {
+                Files.delete(log);
+            }
+        }
+    }
+
+    private void writeSnapshot(Path snapshotFile) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(16 + stock.length * 4);
+        buffer.putLong(generation).putInt(stock.length);
+        for (int quantity : stock) {
+            buffer.putInt(quantity);
+        }
+        crc.reset();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        // Write to a temporary file first so a crash never leaves a half written snapshot behind
+        Path temporary = snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void readSnapshot(Path snapshotFile) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshotFile));
+        generation = buffer.getLong();
+        int books = buffer.getInt();
+        for (int book = 0; book < books; book++) {
+            int quantity = buffer.getInt();
+            // Books removed from the end of the catalog are dropped
+            if (book < stock.length) {
+                stock[book] = quantity;
+            }
+        }
+        crc.reset();
+        crc.update(buffer.array(), 0, buffer.position());
+        if (buffer.getInt() != (int) crc.getValue()) {
+            throw new IllegalStateException("Inventory snapshot " + snapshotFile + " is corrupt");
+        }
+    }
+
+    private void replay(Path log) throws IOException {
+        try (FileChannel in = FileChannel.open(log, StandardOpenOption.READ)) {
+            long start = 0;
+            while (start < in.size()) {
+                MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, in.size() - start));
+                if (!replaySegment(mapped)) {
+                    return;
+                }
+                start += segmentSize;
+            }
+        }
+    }
+
+    // Returns false once the end of the log is reached
+    private boolean replaySegment(ByteBuffer mapped) {
+        while (mapped.remaining() >= HEADER_BYTES) {
+            int position = mapped.position();
+            int length = mapped.getInt(position);
+            if (length == SKIP_TO_NEXT_SEGMENT) {
+                return true;
+            }
+            if (length <= 0 || length > mapped.remaining() - HEADER_BYTES) {
+                return false;
+            }
+
+            ByteBuffer changes = mapped.slice(position + HEADER_BYTES, length);
+            crc.reset();
+            crc.update(changes);
+            if (mapped.getInt(position + 4) != (int) crc.getValue()) {
+                // Torn write at the end of the log
+                return false;
+            }
+
+            changes.rewind();
+            int count = changes.getInt();
+            for (int i = 0; i < count; i++) {
+                int book = changes.getInt();
+                int delta = changes.getInt();
+                if (book < stock.length) {
+                    stock[book] += delta;
+                }
+            }
+            mapped.position(position + HEADER_BYTES + length);
+        }
+        return true;
+    }
+
+    private Path logFile(long generation) {
+        return directory.resolve(String.format("inventory-%016d.log", generation));
+    }
+
+    private long generationOf(Path log) {
+        String name = log.getFileName().toString();
+        return Long.parseLong(name.substring("inventory-".length(), name.length() - ".log".length()));
+    }
+
+    // Log files of the given generation and later, oldest first
+    private List<Path> logsFrom(long fromGeneration) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().matches("inventory-\\d{16}\\.log"))
+                    .filter(file -> generationOf(file) >= fromGeneration)
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.bookstore.service;
+
+// Gets told about every change applied to the stock, books[i] (a catalog id) changed by deltas[i]
+// A batch of orders comes in one call, so a book can show up more than once
+public interface InventoryListener {
+    void stockChanged(int[] books, int[] deltas, int count);
+}
@@ -0,0 +1,261 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookRequestDto;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sequenced inventory mode, enabled with bookstore.inventory.mode=sequenced.
+ * Request threads publish orders, restocks and hold changes into a preallocated ring buffer and wait on a future,
+ * a single writer thread drains the buffer in batches and is the only thread that changes the stock.
+ * <p>
+ * Once stopped it turns new commands away with a failed future. The writer applies what was published before the stop,
+ * and a command it never got to fails too, so nobody waits on a future that would never complete.
+ */
+@Service
+@ConditionalOnProperty(name = "bookstore.inventory.mode", havingValue = "sequenced")
+public class InventorySequencer {
+
+    private static final int RESERVE = 1;
+    private static final int RESTOCK = 2;
+    private static final int HOLD = 3;
+    private static final int CONFIRM_HOLD = 4;
+    private static final int RELEASE_HOLD = 5;
+    private static final int[] NONE_MISSING = new int[0];
+
+    // One preallocated slot per ring position, reused for every command that lands in it
+    private static final class Slot {
+        int type;
+        List<BookRequestDto> items;
+        CompletableFuture<int[]> result;
+        int[] outcome;
+        RuntimeException failure;
+    }
+
+    private final InventoryService inventoryService;
+    private final int batchSize;
+    private final int mask;
+    private final Slot[] slots;
+    // Sequence number last published into each slot, the writer only reads a slot once its sequence shows up
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicBoolean writerParked = new AtomicBoolean();
+    // Commands that found the ring full and had to wait for the writer
+    private final LongAdder fullRingWaits = new LongAdder();
+
+    private volatile boolean running;
+    // Set once the writer applies nothing more, a command published after that is failed instead
+    private volatile boolean writerDone;
+    private Thread writer;
+
+    public InventorySequencer(InventoryService inventoryService,
+                              @Value("${bookstore.inventory.sequencer.buffer-size:1024}") int bufferSize,
+                              @Value("${bookstore.inventory.sequencer.batch-size:256}") int batchSize) {
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("Sequencer buffer size must be a power of two, was " + bufferSize);
+        }
+        this.inventoryService = inventoryService;
+        this.batchSize = batchSize;
+        this.mask = bufferSize - 1;
+        this.slots = new Slot[bufferSize];
+        this.published = new AtomicLongArray(bufferSize);
+        for (int i = 0; i < bufferSize; i++) {
+            slots[i] = new Slot();
+            published.set(i, -1);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::drain, "inventory-sequencer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    // Same contract as InventoryService.tryReserve, the future completes once the writer applied the order
+    public CompletableFuture<int[]> reserve(List<BookRequestDto> orderItems) {
+        return publish(RESERVE, orderItems);
+    }
+
+    public CompletableFuture<int[]> restock(List<BookRequestDto> restockItems) {
+        return publish(RESTOCK, restockItems);
+    }
+
+    // Same contract as InventoryService.tryHold
+    public CompletableFuture<int[]> hold(List<BookRequestDto> items) {
+        return publish(HOLD, items);
+    }
+
+    public CompletableFuture<int[]> confirmHold(List<BookRequestDto> items) {
+        return publish(CONFIRM_HOLD, items);
+    }
+
+    public CompletableFuture<int[]> releaseHold(List<BookRequestDto> items) {
+        return publish(RELEASE_HOLD, items);
+    }
+
+    public long getFullRingWaits() {
+        return fullRingWaits.sum();
+    }
+
+    private CompletableFuture<int[]> publish(int type, List<BookRequestDto> items) {
+        if (!running) {
+            return CompletableFuture.failedFuture(stopped());
+        }
+        long sequence = claimed.getAndIncrement();
+        // Wait for the writer if the ring is full
+        if (sequence - consumed.get() >= slots.length) {
+            fullRingWaits.increment();
+            do {
+                if (writerDone) {
+                    return CompletableFuture.failedFuture(stopped());
+                }
+                wakeWriter();
+                Thread.yield();
+            } while (sequence - consumed.get() >= slots.length);
+        }
+
+        CompletableFuture<int[]> result = new CompletableFuture<>();
+        Slot slot = slots[(int) sequence & mask];
+        slot.type = type;
+        slot.items = items;
+        slot.result = result;
+        published.set((int) sequence & mask, sequence);
+
+        wakeWriter();
+        // The writer may have finished before it saw this command, failing it twice is harmless
+        if (writerDone) {
+            result.completeExceptionally(stopped());
+        }
+        return result;
+    }
+
+    private static IllegalStateException stopped() {
+        return new IllegalStateException("The inventory sequencer is stopped");
+    }
+
+    private void wakeWriter() {
+        if (writerParked.get() && writerParked.compareAndSet(true, false)) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void drain() {
+        try {
+            applyPublished();
+        } finally {
+            writerDone = true;
+            failUnapplied(consumed.get());
+        }
+    }
+
+    // Applies commands until stopped and every command claimed by then is applied
+    private void applyPublished() {
+        long next = 0;
+        int idleSpins = 0;
+        while (running || next < claimed.get()) {
+            // Collect a batch of consecutive published commands
+            long end = next;
+            while (end - next < batchSize && published.get((int) end & mask) == end) {
+                end++;
+            }
+
+            if (end == next) {
+                if (++idleSpins < 100) {
+                    Thread.onSpinWait();
+                } else if (idleSpins < 200) {
+                    Thread.yield();
+                } else {
+                    writerParked.set(true);
+                    if (published.get((int) next & mask) != next && running) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    }
+                    writerParked.set(false);
+                }
+                continue;
+            }
+            idleSpins = 0;
+
+            applyBatch(next, end);
+            next = end;
+            // Free the slots for the producers
+            consumed.set(next);
+        }
+    }
+
+    // Fails the commands published but never applied, a producer that publishes after this fails its own
+    private void failUnapplied(long from) {
+        long to = Math.min(claimed.get(), from + slots.length);
+        for (long sequence = from; sequence < to; sequence++) {
+            if (published.get((int) sequence & mask) != sequence) {
+                continue;
+            }
+            // A batch the writer failed in the middle of has its completed futures cleared already
+            CompletableFuture<int[]> result = slots[(int) sequence & mask].result;
+            if (result != null) {
+                result.completeExceptionally(stopped());
+            }
+        }
+    }
+
+    // Applies the whole batch first and only then releases the callers, so they never see a half-applied batch
+    private void applyBatch(long from, long to) {
+        for (long sequence = from; sequence < to; sequence++) {
+            Slot slot = slots[(int) sequence & mask];
+            try {
+                slot.outcome = switch (slot.type) {
+                    case RESERVE -> inventoryService.tryReserve(slot.items);
+                    case HOLD -> inventoryService.tryHold(slot.items);
+                    case CONFIRM_HOLD -> {
+                        inventoryService.confirmHold(slot.items);
+                        yield NONE_MISSING;
+                    }
+                    case RELEASE_HOLD -> {
+                        inventoryService.releaseHold(slot.items);
+                        yield NONE_MISSING;
+                    }
+                    default -> {
+                        inventoryService.restockBooks(slot.items);
+                        yield NONE_MISSING;
+                    }
+                };
+            } catch (RuntimeException e) {
+                slot.failure = e;
+            }
+        }
+
+        for (long sequence = from; sequence < to; sequence++) {
+            Slot slot = slots[(int) sequence & mask];
+            if (slot.failure != null) {
+                slot.result.completeExceptionally(slot.failure);
+            } else {
+                slot.result.complete(slot.outcome);
+            }
+            slot.items = null;
+            slot.result = null;
+            slot.outcome = null;
+            slot.failure = null;
+        }
+    }
+}
@@ -1,38 +1,544 @@
 package com.example.bookstore.service;
 
-import com.example.bookstore.model.Book;
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Catalog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.EnumMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 @Service
 public class InventoryService {
-    private final Map<Book, Integer> stock = new EnumMap<>(Book.class);
+    private static final int[] NONE_MISSING = new int[0];
+    private static final int STRIPES = StripedStock.stripesFor(Runtime.getRuntime().availableProcessors());
+    private static final long CONTENTION_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Tries at a consistent copy before snapshot() settles for the last one
+    private static final int MAX_SNAPSHOT_ATTEMPTS = 1000;
 
-    public InventoryService() {
+    private final Catalog catalog;
+    // Stock per book, indexed by catalog id so every update can be a CAS instead of taking a lock
+    private final AtomicIntegerArray stock;
+    // Copies taken out of the stock by holds that weren't confirmed or released yet
+    private final AtomicIntegerArray held;
+    private final List<InventoryListener> listeners = new CopyOnWriteArrayList<>();
+    // Bumped after every change to the stock, lets readers cache anything derived from it
+    private final AtomicLong version = new AtomicLong();
+    // Bumped before every change to the stock, so it's ahead of version while a change is being made
+    private final AtomicLong writesStarted = new AtomicLong();
+    // Latest consistent copy of the stock, shared by every reader until the version moves on
+    private final AtomicReference<StockSnapshot> lastSnapshot = new AtomicReference<>();
+    // Compare-and-sets that lost to another thread and had to be tried again
+    private final LongAdder casRetries = new LongAdder();
+    // Hot books get their stock split into pools, null for books that are still a single count in stock
+    private final AtomicReferenceArray<StripedStock> striped;
+    // Lost compare-and-sets per book since contentionSince, a book that loses stripeThreshold in a second is striped
+    private final AtomicIntegerArray contention;
+    private final AtomicLongArray contentionSince;
+    private final int stripeThreshold;
+    // Keeps setStock from overwriting the stock of a book while it is being striped
+    private final ReentrantLock stripeLock = new ReentrantLock();
+
+    // Books are never striped
+    public InventoryService(Catalog catalog) {
+        this(catalog, 0);
+    }
+
+    /**
+     * @param stripeThreshold lost compare-and-sets on one book within a second before its stock is striped, 0 never
+     */
+    @Autowired
+    public InventoryService(Catalog catalog, @Value("${bookstore.inventory.stripe-threshold:1000}") int stripeThreshold) {
+        this.catalog = catalog;
+        this.stripeThreshold = stripeThreshold;
         // Initialize starting stock
-        stock.put(Book.BOOK_A, 20);
-        stock.put(Book.BOOK_B, 20);
-        stock.put(Book.BOOK_C, 20);
-        stock.put(Book.BOOK_D, 10); // Max 10 copies for Book D
+        this.stock = new AtomicIntegerArray(catalog.size());
+        this.held = new AtomicIntegerArray(catalog.size());
+        this.striped = new AtomicReferenceArray<>(catalog.size());
+        this.contention = new AtomicIntegerArray(catalog.size());
+        this.contentionSince = new AtomicLongArray(catalog.size());
+        int[] initialStock = new int[catalog.size()];
+        for (int book = 0; book < catalog.size(); book++) {
+            initialStock[book] = catalog.initialStock(book);
+            stock.set(book, initialStock[book]);
+        }
+        lastSnapshot.set(new StockSnapshot(0, initialStock, new int[catalog.size()]));
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+
+    public void addListener(InventoryListener listener) {
+        listeners.add(listener);
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public long getCasRetries() {
+        return casRetries.sum();
+    }
+
+    public int getStock(int book) {
+        return available(book);
+    }
+
+    public int getHeld(int book) {
+        return held.get(book);
+    }
+
+    public boolean isStriped(int book) {
+        return striped.get(book) != null;
+    }
+
+    /**
+     * The stock and held copies of every book at one point in time, for readers that show more than one book.
+     * Reading the live counts one by one could catch an order halfway, with some of its books taken and some not.
+     * <p>
+     * Works like a seqlock with many writers: every change bumps writesStarted before it touches the counts and
+     * version once it's done. The counts are copied while both are equal, no change was in flight, and the copy is
+     * kept if writesStarted didn't move meanwhile. Writers never wait for readers and readers never lock, a reader
+     * only tries again when a change overlapped its copy. The copy is shared by every reader until the next change,
+     * so most reads only compare two numbers.
+     * <p>
+     * Under a constant stream of changes a copy might never get through, so after MAX_SNAPSHOT_ATTEMPTS the last
+     * consistent copy is returned instead, marked stale. Readers showing the stock can live with one a moment old.
+     */
+    public StockSnapshot snapshot() {
+        StockSnapshot snapshot = lastSnapshot.get();
+        if (snapshot.getVersion() == version.get()) {
+            return snapshot;
+        }
+
+        int size = catalog.size();
+        for (int attempt = 0; attempt < MAX_SNAPSHOT_ATTEMPTS; attempt++) {
+            long started = writesStarted.get();
+            if (version.get() == started) {
+                int[] stockCopy = new int[size];
+                int[] heldCopy = new int[size];
+                for (int book = 0; book < size; book++) {
+                    stockCopy[book] = available(book);
+                    heldCopy[book] = held.get(book);
+                }
+                if (writesStarted.get() == started) {
+                    StockSnapshot copy = new StockSnapshot(started, stockCopy, heldCopy);
+                    // Keep the newest copy when readers race
+                    lastSnapshot.accumulateAndGet(copy, (last, next) -> last.getVersion() < next.getVersion() ? next : last);
+                    return copy;
+                }
+            }
+            // A writer that was descheduled mid-change needs the core more than a spinning reader does
+            if (attempt < MAX_SNAPSHOT_ATTEMPTS / 10) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        return lastSnapshot.get().asStale();
+    }
+
+    // Overwrites the stock of a book, used to reset the inventory
+    public void setStock(int book, int quantity) {
+        beginWrite(book);
+        int previous;
+        stripeLock.lock();
+        try {
+            StripedStock pools = striped.get(book);
+            previous = pools != null ? pools.set(quantity) : stock.getAndSet(book, quantity);
+        } finally {
+            stripeLock.unlock();
+        }
+        notifyListeners(book, quantity - previous);
+    }
+
+    public void orderBook(int book, int quantity) {
+        beginWrite(book);
+        add(book, -quantity);
+        notifyListeners(book, -quantity);
+    }
+
+    public void restockBook(int book, int quantity) {
+        beginWrite(book);
+        add(book, quantity);
+        notifyListeners(book, quantity);
+    }
+
+    // Restocks several books with one version bump and one call to the listeners
+    public void restockBooks(List<BookRequestDto> restockItems) {
+        int[] books = new int[restockItems.size()];
+        int[] quantities = new int[restockItems.size()];
+        beginWrite(restockItems);
+        for (int i = 0; i < books.length; i++) {
+            BookRequestDto item = restockItems.get(i);
+            add(item.book(), item.quantity());
+            books[i] = item.book();
+            quantities[i] = item.quantity();
+        }
+        version.incrementAndGet();
+        for (InventoryListener listener : listeners) {
+            listener.stockChanged(books, quantities, books.length);
+        }
+    }
+
+    public boolean hasBookInStock(int book, int quantity) {
+        return available(book) >= quantity;
+    }
+
+    // No copy left to order right now, a book that can't be restocked only comes back if a hold is released
+    public boolean isSoldOut(int book) {
+        return available(book) == 0;
+    }
+
+    /**
+     * The books of an order that are sold out, read without reserving anything. Lets a flood of orders for a book
+     * that is gone be turned down before they are validated or touch the stock with a CAS. A book can sell out or
+     * come back right after it was read, the reservation stays the only answer for an order that gets past this.
+     *
+     * @return ids of the sold out books ordered with a positive quantity, an empty array if there are none
+     */
+    public int[] soldOutBooks(List<BookRequestDto> orderItems) {
+        int[] soldOut = NONE_MISSING;
+        int count = 0;
+        for (int i = 0, size = orderItems.size(); i < size; i++) {
+            BookRequestDto item = orderItems.get(i);
+            if (item.quantity() > 0 && available(item.book()) == 0 && !contains(soldOut, count, item.book())) {
+                if (count == soldOut.length) {
+                    soldOut = Arrays.copyOf(soldOut, size);
+                }
+                soldOut[count++] = item.book();
+            }
+        }
+        return count == soldOut.length ? soldOut : Arrays.copyOf(soldOut, count);
+    }
+
+    /**
+     * Reserves every line of an order or none of them.
+     * Lines for the same book are added together first, then each book is decremented with a CAS that never lets
+     * the stock go below zero. If one book can't be reserved, the books already taken are put back.
+     * Another order may briefly see the taken stock before it is put back, so it can be rejected under heavy
+     * contention, but stock is never oversold.
+     *
+     * @return ids of the books that didn't have enough stock, an empty array means the order was reserved
+     */
+    public int[] tryReserve(List<BookRequestDto> orderItems) {
+        int[] books = new int[orderItems.size()];
+        int[] quantities = new int[orderItems.size()];
+        int count = sortLines(orderItems, books, quantities);
+        beginWrite(orderItems);
+        int failed = take(books, quantities, count);
+        if (failed >= 0) {
+            return failedWrite(books, quantities, count, failed);
+        }
+
+        version.incrementAndGet();
+        if (!listeners.isEmpty()) {
+            for (int i = 0; i < count; i++) {
+                quantities[i] = -quantities[i];
+            }
+            for (InventoryListener listener : listeners) {
+                listener.stockChanged(books, quantities, count);
+            }
+        }
+        return NONE_MISSING;
+    }
+
+    /**
+     * Reserves many independent orders, each one all or nothing like tryReserve.
+     * The version is bumped and listeners are told once for the whole batch instead of once per order.
+     *
+     * @return per order, in the same order, the ids of the books that were short
+     */
+    public int[][] tryReserveBatch(List<List<BookRequestDto>> orders) {
+        int[][] results = new int[orders.size()][];
+        int[] changedBooks = new int[16];
+        int[] changedDeltas = new int[16];
+        int changed = 0;
+
+        // Every order is checked and sorted before the write starts, a bad one can't leave it open and stall snapshots
+        int[][] sortedBooks = new int[orders.size()][];
+        int[][] sortedQuantities = new int[orders.size()][];
+        int[] counts = new int[orders.size()];
+        for (int o = 0; o < orders.size(); o++) {
+            List<BookRequestDto> orderItems = orders.get(o);
+            checkBooks(orderItems);
+            sortedBooks[o] = new int[orderItems.size()];
+            sortedQuantities[o] = new int[orderItems.size()];
+            counts[o] = sortLines(orderItems, sortedBooks[o], sortedQuantities[o]);
+        }
+        writesStarted.incrementAndGet();
+        for (int o = 0; o < orders.size(); o++) {
+            int[] books = sortedBooks[o];
+            int[] quantities = sortedQuantities[o];
+            int count = counts[o];
+            int failed = take(books, quantities, count);
+            results[o] = failed < 0 ? NONE_MISSING : missingBooks(books, quantities, count, failed);
+            if (failed >= 0 || listeners.isEmpty()) {
+                continue;
+            }
+
+            if (changed + count > changedBooks.length) {
+                int capacity = Math.max(changedBooks.length * 2, changed + count);
+                changedBooks = Arrays.copyOf(changedBooks, capacity);
+                changedDeltas = Arrays.copyOf(changedDeltas, capacity);
+            }
+            for (int i = 0; i < count; i++) {
+                changedBooks[changed] = books[i];
+                changedDeltas[changed++] = -quantities[i];
+            }
+        }
+
+        version.incrementAndGet();
+        if (changed > 0) {
+            for (InventoryListener listener : listeners) {
+                listener.stockChanged(changedBooks, changedDeltas, changed);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Moves the books of an order from the stock to held, all or nothing like tryReserve.
+     * Held copies can't be ordered by anyone else, they are still owned by the store until the hold is confirmed,
+     * so listeners (and the journal) only hear about them then. A restart gives every held copy back.
+     *
+     * @return ids of the books that didn't have enough stock, an empty array means the books are held
+     */
+    public int[] tryHold(List<BookRequestDto> items) {
+        int[] books = new int[items.size()];
+        int[] quantities = new int[items.size()];
+        int count = sortLines(items, books, quantities);
+        beginWrite(items);
+        int failed = take(books, quantities, count);
+        if (failed >= 0) {
+            return failedWrite(books, quantities, count, failed);
+        }
+        for (int i = 0; i < count; i++) {
+            if (quantities[i] > 0) {
+                held.addAndGet(books[i], quantities[i]);
+            }
+        }
+        version.incrementAndGet();
+        return NONE_MISSING;
+    }
+
+    // Turns held books into sold books
+    public void confirmHold(List<BookRequestDto> items) {
+        int[] books = new int[items.size()];
+        int[] deltas = new int[items.size()];
+        int count = 0;
+        beginWrite(items);
+        for (BookRequestDto item : items) {
+            if (item.quantity() > 0) {
+                held.addAndGet(item.book(), -item.quantity());
+                books[count] = item.book();
+                deltas[count++] = -item.quantity();
+            }
+        }
+        version.incrementAndGet();
+        for (InventoryListener listener : listeners) {
+            listener.stockChanged(books, deltas, count);
+        }
+    }
+
+    // Puts held books back in the stock
+    public void releaseHold(List<BookRequestDto> items) {
+        beginWrite(items);
+        for (BookRequestDto item : items) {
+            if (item.quantity() > 0) {
+                held.addAndGet(item.book(), -item.quantity());
+                add(item.book(), item.quantity());
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    // Sorts the lines by book and merges lines for the same book. A line is packed into one long, book << 32 | index,
+    // so a single sort orders them by book and keeps the lines of a book in the order they came
+    private static int sortLines(List<BookRequestDto> orderItems, int[] books, int[] quantities) {
+        int size = orderItems.size();
+        long[] lines = new long[size];
+        for (int i = 0; i < size; i++) {
+            lines[i] = (long) orderItems.get(i).book() << 32 | i;
+        }
+        Arrays.sort(lines);
+
+        int count = 0;
+        for (long line : lines) {
+            int book = (int) (line >>> 32);
+            int quantity = orderItems.get((int) line).quantity();
+            if (count > 0 && books[count - 1] == book) {
+                quantities[count - 1] = Math.addExact(quantities[count - 1], quantity);
+            } else {
+                books[count] = book;
+                quantities[count++] = quantity;
+            }
+        }
+        return count;
+    }
+
+    // Every change starts here, the ids are checked first so a bad one can't leave a change open and stall snapshots
+    private void beginWrite(int book) {
+        Objects.checkIndex(book, stock.length());
+        writesStarted.incrementAndGet();
+    }
+
+    private void beginWrite(List<BookRequestDto> items) {
+        checkBooks(items);
+        writesStarted.incrementAndGet();
+    }
+
+    private void checkBooks(List<BookRequestDto> items) {
+        for (int i = 0, size = items.size(); i < size; i++) {
+            Objects.checkIndex(items.get(i).book(), stock.length());
+        }
+    }
+
+    // Takes every sorted line or none of them, returns the index of the line that was short or -1
+    private int take(int[] books, int[] quantities, int count) {
+        for (int i = 0; i < count; i++) {
+            if (quantities[i] > 0 && !tryDecrement(books[i], quantities[i])) {
+                // Put back the books we already took
+                for (int j = 0; j < i; j++) {
+                    if (quantities[j] > 0) {
+                        add(books[j], quantities[j]);
+                    }
+                }
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Ends the write of an order that was short, a snapshot may only skip it if no book was taken and put back
+    private int[] failedWrite(int[] books, int[] quantities, int count, int failed) {
+        int[] missing = missingBooks(books, quantities, count, failed);
+        if (failed == 0) {
+            writesStarted.decrementAndGet();
+        } else {
+            version.incrementAndGet();
+        }
+        return missing;
+    }
+
+    private static boolean contains(int[] books, int count, int book) {
+        for (int i = 0; i < count; i++) {
+            if (books[i] == book) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void notifyListeners(int book, int delta) {
+        version.incrementAndGet();
+        if (listeners.isEmpty()) {
+            return;
+        }
+        int[] books = {book};
+        int[] deltas = {delta};
+        for (InventoryListener listener : listeners) {
+            listener.stockChanged(books, deltas, 1);
+        }
+    }
+
+    private boolean tryDecrement(int book, int quantity) {
+        StripedStock pools = striped.get(book);
+        if (pools != null) {
+            return pools.tryTake(quantity);
+        }
+        while (true) {
+            int current = stock.get(book);
+            if (current < quantity) {
+                // The book may have been striped meanwhile, with its copies moved to the pools
+                pools = striped.get(book);
+                return pools != null && pools.tryTake(quantity);
+            }
+            if (stock.compareAndSet(book, current, current - quantity)) {
+                return true;
+            }
+            casRetries.increment();
+            contended(book, System.nanoTime());
+        }
+    }
+
+    // Stripes the book once it lost stripeThreshold compare-and-sets within a second, the second starts at the first
+    void contended(int book, long now) {
+        if (stripeThreshold <= 0) {
+            return;
+        }
+        int lost = contention.incrementAndGet(book);
+        if (lost == 1) {
+            contentionSince.set(book, now);
+        }
+        if (lost < stripeThreshold) {
+            return;
+        }
+        if (now - contentionSince.get(book) < CONTENTION_WINDOW_NANOS) {
+            stripe(book);
+        }
+        contention.set(book, 0);
     }
 
-    public Map<Book, Integer> getStock() {
-        return stock;
+    /**
+     * Splits the stock of a book into pools, see StripedStock. A book stays striped, a promotion's hot book is
+     * usually hot again at the next one and a striped book costs little when it's quiet.
+     */
+    void stripe(int book) {
+        if (striped.get(book) != null) {
+            return;
+        }
+        StripedStock pools = new StripedStock(stock, book, STRIPES);
+        stripeLock.lock();
+        try {
+            if (!striped.compareAndSet(book, null, pools)) {
+                return;
+            }
+            // A change of its own, moving the copies must not show up in a snapshot as copies gone
+            writesStarted.incrementAndGet();
+            pools.spreadBase();
+            version.incrementAndGet();
+        } finally {
+            stripeLock.unlock();
+        }
     }
 
-    public void orderBook(Book book, int quantity) {
-        int currentStock = stock.getOrDefault(book, 0);
-        stock.put(book, currentStock - quantity);
+    private int available(int book) {
+        StripedStock pools = striped.get(book);
+        return pools != null ? pools.sum() : stock.get(book);
     }
 
-    public void restockBook(Book book, int quantity) {
-        stock.put(book, stock.getOrDefault(book, 0) + quantity);
+    private void add(int book, int quantity) {
+        StripedStock pools = striped.get(book);
+        if (pools != null) {
+            pools.add(quantity);
+        } else {
+            stock.addAndGet(book, quantity);
+        }
     }
 
-    public boolean hasBookInStock(Book book, int quantity) {
-        return stock.getOrDefault(book, 0) >= quantity;
+    // Collects every book in the order that is short, the failed book is always included
+    private int[] missingBooks(int[] books, int[] quantities, int count, int failed) {
+        int[] missing = new int[count];
+        int missingCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (quantities[i] > 0 && (i == failed || available(books[i]) < quantities[i])) {
+                missing[missingCount++] = books[i];
+            }
+        }
+        return Arrays.copyOf(missing, missingCount);
     }
 }
@@ -0,0 +1,150 @@
+package com.example.bookstore.service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only column of ints or longs kept in direct buffers outside the heap, so millions of entries cost the
+ * garbage collector nothing. Entries are addressed by a long index that keeps growing; the oldest ones can be dropped,
+ * which frees whole chunks once nothing in them is kept.
+ * <p>
+ * Chunks start small and double up to maxChunkEntries, so a column that only ever holds a few entries stays small.
+ * Room can be reserved ahead of a group of appends, so running out of direct memory fails before any of them.
+ * Not thread safe, OrderLedger only touches its columns while holding its lock.
+ */
+final class OffHeapColumn {
+
+    private record Chunk(long start, ByteBuffer buffer, int entries) {
+    }
+
+    private final int width;
+    private final int maxChunkEntries;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private int nextChunkEntries;
+    // Index of the oldest entry still kept and of the next one to be appended
+    private long first;
+    private long size;
+    private long bytes;
+
+    private OffHeapColumn(int width, int initialChunkEntries, int maxChunkEntries) {
+        this.width = width;
+        this.nextChunkEntries = initialChunkEntries;
+        this.maxChunkEntries = maxChunkEntries;
+    }
+
+    static OffHeapColumn ofInts(int initialChunkEntries, int maxChunkEntries) {
+        return new OffHeapColumn(Integer.BYTES, initialChunkEntries, maxChunkEntries);
+    }
+
+    static OffHeapColumn ofLongs(int initialChunkEntries, int maxChunkEntries) {
+        return new OffHeapColumn(Long.BYTES, initialChunkEntries, maxChunkEntries);
+    }
+
+    long first() {
+        return first;
+    }
+
+    long size() {
+        return size;
+    }
+
+    // Off-heap memory held by the column
+    long bytes() {
+        return bytes;
+    }
+
+    // Allocates whatever chunks the next entries appends need, throws OutOfMemoryError without changing any entry
+    void reserve(long entries) {
+        Chunk last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        long end = last == null ? size : last.start + last.entries;
+        while (end - size < entries) {
+            Chunk chunk = new Chunk(end, ByteBuffer.allocateDirect(nextChunkEntries * width), nextChunkEntries);
+            chunks.add(chunk);
+            bytes += chunk.buffer.capacity();
+            nextChunkEntries = Math.min(nextChunkEntries * 2, maxChunkEntries);
+            end += chunk.entries;
+        }
+    }
+
+    void appendInt(int value) {
+        Chunk chunk = chunkForAppend();
+        chunk.buffer.putInt((int) (size - chunk.start) * Integer.BYTES, value);
+        size++;
+    }
+
+    void appendLong(long value) {
+        Chunk chunk = chunkForAppend();
+        chunk.buffer.putLong((int) (size - chunk.start) * Long.BYTES, value);
+        size++;
+    }
+
+    int getInt(long index) {
+        Chunk chunk = chunkOf(index);
+        return chunk.buffer.getInt((int) (index - chunk.start) * Integer.BYTES);
+    }
+
+    long getLong(long index) {
+        Chunk chunk = chunkOf(index);
+        return chunk.buffer.getLong((int) (index - chunk.start) * Long.BYTES);
+    }
+
+    // Index of the first entry from first on that is at least value, size if there is none. The column must be sorted
+    long lowerBound(long value) {
+        long low = first;
+        long high = size;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            long entry = width == Long.BYTES ? getLong(middle) : getInt(middle);
+            if (entry < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Drops every entry before index, the buffers of chunks left empty are released to the garbage collector
+    void trimTo(long index) {
+        first = Math.max(first, Math.min(index, size));
+        int dropped = 0;
+        while (dropped < chunks.size() - 1 && chunks.get(dropped).start + chunks.get(dropped).entries <= first) {
+            bytes -= chunks.get(dropped).buffer.capacity();
+            dropped++;
+        }
+        chunks.subList(0, dropped).clear();
+    }
+
+    // The chunk the next entry goes to, reserved chunks after it are empty
+    private Chunk chunkForAppend() {
+        reserve(1);
+        int index = chunks.size() - 1;
+        while (chunks.get(index).start > size) {
+            index--;
+        }
+        return chunks.get(index);
+    }
+
+    private Chunk chunkOf(long index) {
+        if (index < first || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside " + first + " to " + size);
+        }
+        // Most reads are of the newest entries
+        Chunk last = chunks.get(chunks.size() - 1);
+        if (index >= last.start) {
+            return last;
+        }
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (chunks.get(middle).start <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return chunks.get(low);
+    }
+}
@@ -0,0 +1,494 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.dto.LedgerLineDto;
+import com.example.bookstore.dto.LedgerOrderDto;
+import com.example.bookstore.dto.LedgerQueryDto;
+import com.example.bookstore.model.Catalog;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers every accepted order (id, time, lines and total) so support can look orders up and stock can be
+ * reconciled, e.g. the orders containing BOOK_D in the last hour.
+ * <p>
+ * Orders are stored by column in off-heap chunks, not as objects: the time, the first line and the total of each
+ * order, and the book and quantity of each line. Orders are appended in id order and times never go backwards, so
+ * the time column is sorted and a time range becomes a range of rows with two binary searches. Every book has a
+ * column of the rows of the orders it was in, also sorted, that narrows the range down to the orders with that book
+ * the same way. A query costs a few binary searches plus the orders it returns, however many orders there are.
+ * <p>
+ * Only the newest max-orders are kept, older ones are dropped a chunk at a time. The rows of a book start in a chunk
+ * of 16, and a book none of the kept orders has lets go of its rows altogether, so a catalog of many cold books costs
+ * little. The ledger lives in memory, a restart starts it empty.
+ * <p>
+ * Recording doesn't take a lock: the request thread gets the next id and puts the order in a preallocated ring buffer,
+ * and a single writer thread appends the orders to the columns in id order, like InventorySequencer's writer applies
+ * orders to the stock. The writer takes a lock for each batch it appends, which only queries share. A query first waits
+ * for the writer to catch up with the orders recorded before it, so an order can be looked up as soon as it's placed.
+ * Queries only hold the lock for their few binary searches and to copy out the columns of the orders they return, the
+ * responses are built after it's released.
+ * <p>
+ * The order is already placed when it's recorded. If there is no direct memory left for it, it's counted in
+ * getFailedRecords() and not kept, instead of failing an order that took its books. Its id is skipped, looking it up
+ * finds nothing.
+ */
+@Service
+public class OrderLedger {
+
+    public static final int MAX_RESULTS = 1000;
+
+    // Order columns grow to chunks of 1M entries, a book's rows to chunks of 64K
+    private static final int INITIAL_CHUNK = 4096;
+    private static final int MAX_ORDER_CHUNK = 1 << 20;
+    private static final int INITIAL_BOOK_CHUNK = 16;
+    private static final int MAX_BOOK_CHUNK = 1 << 16;
+    // Orders of a book between two trims of its rows
+    private static final int BOOK_TRIM_INTERVAL = 256;
+    // Orders waiting for the writer, and the most it appends under one lock
+    private static final int BUFFER_SIZE = 4096;
+    private static final int BATCH_SIZE = 256;
+
+    // One preallocated slot per ring position, reused for every order that lands in it
+    private static final class Slot {
+        List<BookRequestDto> items;
+        long totalPrice;
+        long time;
+    }
+
+    private final Catalog catalog;
+    private final Clock clock;
+    private final long maxOrders;
+
+    private final Slot[] slots = new Slot[BUFFER_SIZE];
+    // Id of the order last published into each slot, the writer only reads a slot once its id shows up
+    private final AtomicLongArray published = new AtomicLongArray(BUFFER_SIZE);
+    // The next id, and the first id the writer hasn't appended yet
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicBoolean writerParked = new AtomicBoolean();
+    private final LongAdder failedRecords = new LongAdder();
+    private volatile boolean running;
+    private Thread writer;
+
+    // Shared by the writer and queries only. A lock instead of synchronized so waiting on it doesn't pin virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    // One entry per kept order, the row of an order is its id less the ids skipped before it
+    private final OffHeapColumn times = OffHeapColumn.ofLongs(INITIAL_CHUNK, MAX_ORDER_CHUNK);
+    private final OffHeapColumn firstLines = OffHeapColumn.ofLongs(INITIAL_CHUNK, MAX_ORDER_CHUNK);
+    private final OffHeapColumn totals = OffHeapColumn.ofInts(INITIAL_CHUNK, MAX_ORDER_CHUNK);
+    // One entry per line
+    private final OffHeapColumn lineBooks = OffHeapColumn.ofInts(INITIAL_CHUNK, MAX_ORDER_CHUNK);
+    private final OffHeapColumn lineQuantities = OffHeapColumn.ofInts(INITIAL_CHUNK, MAX_ORDER_CHUNK);
+    // Rows of the orders each book was in, null for books that were never ordered
+    private final OffHeapColumn[] ordersByBook;
+    // Ids of the orders that couldn't be kept, as runs of (first id, count) in id order. Runs before the oldest kept
+    // order are only counted
+    private long[] skippedRuns = new long[8];
+    private int skippedRunCount;
+    private long skippedBeforeFirst;
+    // Next book whose rows are checked for dropped orders, one per order recorded
+    private int sweepCursor;
+    private long lastTime;
+
+    @Autowired
+    public OrderLedger(Catalog catalog, @Value("${bookstore.ledger.max-orders:1000000}") long maxOrders) {
+        this(catalog, maxOrders, Clock.systemUTC());
+    }
+
+    OrderLedger(Catalog catalog, long maxOrders, Clock clock) {
+        if (maxOrders < 1) {
+            throw new IllegalArgumentException("The ledger should keep at least one order, max-orders was " + maxOrders);
+        }
+        this.catalog = catalog;
+        this.maxOrders = maxOrders;
+        this.clock = clock;
+        this.ordersByBook = new OffHeapColumn[catalog.size()];
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            slots[i] = new Slot();
+            published.set(i, -1);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::drain, "order-ledger");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Appends what was already recorded, orders recorded afterwards aren't kept
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Hands an accepted order to the writer, waiting only if the writer is a whole buffer behind.
+     *
+     * @return the id of the order, -1 if the ledger is stopped
+     */
+    public long record(List<BookRequestDto> orderItems, long totalPrice) {
+        if (!running) {
+            failedRecords.increment();
+            return -1;
+        }
+        long id = claimed.getAndIncrement();
+        while (id - consumed.get() >= BUFFER_SIZE) {
+            wakeWriter();
+            Thread.yield();
+        }
+        Slot slot = slots[(int) id & (BUFFER_SIZE - 1)];
+        slot.items = orderItems;
+        slot.totalPrice = totalPrice;
+        slot.time = clock.millis();
+        published.set((int) id & (BUFFER_SIZE - 1), id);
+        wakeWriter();
+        return id;
+    }
+
+    // The order with this id, null if there is none, it was dropped or it couldn't be kept
+    public LedgerOrderDto get(long id) {
+        awaitRecorded();
+        Found found = new Found(1);
+        lock.lock();
+        try {
+            long row = rowOf(id);
+            if (row >= times.first() && row < times.size()) {
+                found.add(row);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return found.count == 0 ? null : found.orders().get(0);
+    }
+
+    /**
+     * The orders placed from (inclusive) to (exclusive), newest first.
+     *
+     * @param book only orders with this book, or any order when negative
+     * @param limit returns at most this many orders, matching counts them all
+     */
+    public LedgerQueryDto find(int book, Instant from, Instant to, int limit) {
+        awaitRecorded();
+        Found found = new Found(Math.min(limit, 64));
+        long matching;
+        lock.lock();
+        try {
+            long fromRow = times.lowerBound(from.toEpochMilli());
+            long toRow = times.lowerBound(to.toEpochMilli());
+            if (book < 0) {
+                for (long row = toRow - 1; row >= fromRow && found.count < limit; row--) {
+                    found.add(row);
+                }
+                matching = Math.max(0, toRow - fromRow);
+            } else if (ordersByBook[book] == null) {
+                matching = 0;
+            } else {
+                OffHeapColumn rows = ordersByBook[book];
+                // The book's rows may still start before the oldest order kept, fromRow is never before it
+                long start = rows.lowerBound(fromRow);
+                long end = rows.lowerBound(toRow);
+                for (long i = end - 1; i >= start && found.count < limit; i--) {
+                    found.add(rows.getLong(i));
+                }
+                matching = Math.max(0, end - start);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return new LedgerQueryDto(matching, found.orders());
+    }
+
+    public long getOrderCount() {
+        awaitRecorded();
+        lock.lock();
+        try {
+            return times.size() - times.first();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Orders placed but not kept because there was no direct memory left or the ledger was stopped
+    public long getFailedRecords() {
+        return failedRecords.sum();
+    }
+
+    // Off-heap memory taken by the kept orders and the rows per book
+    public long getBytes() {
+        awaitRecorded();
+        lock.lock();
+        try {
+            long bytes = times.bytes() + firstLines.bytes() + totals.bytes() + lineBooks.bytes() + lineQuantities.bytes();
+            for (OffHeapColumn rows : ordersByBook) {
+                bytes += rows != null ? rows.bytes() : 0;
+            }
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits for the writer to append every order recorded before the call
+    private void awaitRecorded() {
+        long recorded = claimed.get();
+        while (running && consumed.get() < recorded) {
+            wakeWriter();
+            Thread.yield();
+        }
+    }
+
+    private void wakeWriter() {
+        if (writerParked.get() && writerParked.compareAndSet(true, false)) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    // The writer thread: appends the published orders in batches of consecutive ids
+    private void drain() {
+        long next = 0;
+        int idleSpins = 0;
+        while (running || next < claimed.get()) {
+            long end = next;
+            while (end - next < BATCH_SIZE && published.get((int) end & (BUFFER_SIZE - 1)) == end) {
+                end++;
+            }
+
+            if (end == next) {
+                if (++idleSpins < 100) {
+                    Thread.onSpinWait();
+                } else if (idleSpins < 200) {
+                    Thread.yield();
+                } else {
+                    writerParked.set(true);
+                    if (published.get((int) next & (BUFFER_SIZE - 1)) != next && running) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    }
+                    writerParked.set(false);
+                }
+                continue;
+            }
+            idleSpins = 0;
+
+            lock.lock();
+            try {
+                for (long id = next; id < end; id++) {
+                    Slot slot = slots[(int) id & (BUFFER_SIZE - 1)];
+                    append(id, slot.items, slot.totalPrice, slot.time);
+                    slot.items = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+            next = end;
+            // Free the slots for the request threads
+            consumed.set(next);
+        }
+    }
+
+    // Called by the writer with the lock held, ids come in order
+    private void append(long id, List<BookRequestDto> orderItems, long totalPrice, long time) {
+        // Every column gets its room first, so running out of memory can't leave an order half written
+        try {
+            times.reserve(1);
+            firstLines.reserve(1);
+            totals.reserve(1);
+            lineBooks.reserve(orderItems.size());
+            lineQuantities.reserve(orderItems.size());
+            for (int i = 0, size = orderItems.size(); i < size; i++) {
+                rowsOf(orderItems.get(i).book()).reserve(1);
+            }
+        } catch (OutOfMemoryError e) {
+            failedRecords.increment();
+            skip(id);
+            return;
+        }
+
+        long row = times.size();
+        // Never earlier than the order before, so the time column stays sorted if the clock is set back
+        lastTime = Math.max(lastTime, time);
+        times.appendLong(lastTime);
+        firstLines.appendLong(lineBooks.size());
+        totals.appendInt((int) totalPrice);
+        for (int i = 0, size = orderItems.size(); i < size; i++) {
+            BookRequestDto item = orderItems.get(i);
+            lineBooks.appendInt(item.book());
+            lineQuantities.appendInt(item.quantity());
+            addToBook(item.book(), row);
+        }
+        if (times.size() - times.first() > maxOrders) {
+            dropBefore(times.size() - maxOrders);
+        }
+        if (times.first() > 0) {
+            sweep();
+        }
+    }
+
+    private void skip(long id) {
+        int last = 2 * (skippedRunCount - 1);
+        if (skippedRunCount > 0 && skippedRuns[last] + skippedRuns[last + 1] == id) {
+            skippedRuns[last + 1]++;
+            return;
+        }
+        if (2 * skippedRunCount == skippedRuns.length) {
+            skippedRuns = Arrays.copyOf(skippedRuns, skippedRuns.length * 2);
+        }
+        skippedRuns[2 * skippedRunCount] = id;
+        skippedRuns[2 * skippedRunCount + 1] = 1;
+        skippedRunCount++;
+    }
+
+    // Row of the order with this id, -1 if it was skipped. Ids of dropped orders give rows before the oldest one kept
+    private long rowOf(long id) {
+        long skipped = skippedBeforeFirst;
+        for (int i = 0; i < skippedRunCount && skippedRuns[2 * i] <= id; i++) {
+            if (id < skippedRuns[2 * i] + skippedRuns[2 * i + 1]) {
+                return -1;
+            }
+            skipped += skippedRuns[2 * i + 1];
+        }
+        return id - skipped;
+    }
+
+    private long idOf(long row) {
+        long id = row + skippedBeforeFirst;
+        for (int i = 0; i < skippedRunCount && skippedRuns[2 * i] <= id; i++) {
+            id += skippedRuns[2 * i + 1];
+        }
+        return id;
+    }
+
+    private OffHeapColumn rowsOf(int book) {
+        OffHeapColumn rows = ordersByBook[book];
+        if (rows == null) {
+            rows = OffHeapColumn.ofLongs(INITIAL_BOOK_CHUNK, MAX_BOOK_CHUNK);
+            ordersByBook[book] = rows;
+        }
+        return rows;
+    }
+
+    private void addToBook(int book, long row) {
+        OffHeapColumn rows = ordersByBook[book];
+        long last = rows.size() - 1;
+        // An order with two lines for the same book is listed once
+        if (last >= rows.first() && rows.getLong(last) == row) {
+            return;
+        }
+        // Rows of dropped orders are let go every few hundred orders of the book, queries skip them until then
+        if (rows.size() % BOOK_TRIM_INTERVAL == 0 && last >= rows.first() && rows.getLong(rows.first()) < times.first()) {
+            rows.trimTo(rows.lowerBound(times.first()));
+        }
+        rows.appendLong(row);
+    }
+
+    // Books that stopped selling are only trimmed here, a book left without kept orders drops its column
+    private void sweep() {
+        int book = sweepCursor;
+        sweepCursor = book + 1 == ordersByBook.length ? 0 : book + 1;
+        OffHeapColumn rows = ordersByBook[book];
+        if (rows == null) {
+            return;
+        }
+        rows.trimTo(rows.lowerBound(times.first()));
+        if (rows.first() == rows.size()) {
+            ordersByBook[book] = null;
+        }
+    }
+
+    private void dropBefore(long oldest) {
+        // Skipped ids before the oldest order kept are only counted from now on
+        long oldestId = idOf(oldest);
+        int dropped = 0;
+        while (dropped < skippedRunCount && skippedRuns[2 * dropped] < oldestId) {
+            skippedBeforeFirst += skippedRuns[2 * dropped + 1];
+            dropped++;
+        }
+        if (dropped > 0) {
+            System.arraycopy(skippedRuns, 2 * dropped, skippedRuns, 0, 2 * (skippedRunCount - dropped));
+            skippedRunCount -= dropped;
+        }
+        lineBooks.trimTo(firstLines.getLong(oldest));
+        lineQuantities.trimTo(firstLines.getLong(oldest));
+        times.trimTo(oldest);
+        firstLines.trimTo(oldest);
+        totals.trimTo(oldest);
+    }
+
+    // The columns of the orders a query returns, copied out under the lock and turned into responses after it
+    private final class Found {
+        long[] ids;
+        long[] orderTimes;
+        int[] orderTotals;
+        // Index in books and quantities after the last line of each order
+        int[] lineEnds;
+        int count;
+        int[] books = new int[16];
+        int[] quantities = new int[16];
+        int lines;
+
+        Found(int capacity) {
+            ids = new long[capacity];
+            orderTimes = new long[capacity];
+            orderTotals = new int[capacity];
+            lineEnds = new int[capacity];
+        }
+
+        void add(long row) {
+            if (count == ids.length) {
+                int capacity = Math.max(1, count * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                orderTimes = Arrays.copyOf(orderTimes, capacity);
+                orderTotals = Arrays.copyOf(orderTotals, capacity);
+                lineEnds = Arrays.copyOf(lineEnds, capacity);
+            }
+            long firstLine = firstLines.getLong(row);
+            long endLine = row + 1 < firstLines.size() ? firstLines.getLong(row + 1) : lineBooks.size();
+            int needed = lines + (int) (endLine - firstLine);
+            if (needed > books.length) {
+                books = Arrays.copyOf(books, Math.max(books.length * 2, needed));
+                quantities = Arrays.copyOf(quantities, books.length);
+            }
+            for (long line = firstLine; line < endLine; line++) {
+                books[lines] = lineBooks.getInt(line);
+                quantities[lines++] = lineQuantities.getInt(line);
+            }
+            ids[count] = idOf(row);
+            orderTimes[count] = times.getLong(row);
+            orderTotals[count] = totals.getInt(row);
+            lineEnds[count++] = lines;
+        }
+
+        // Only reads the copies, so it runs without the lock
+        List<LedgerOrderDto> orders() {
+            List<LedgerOrderDto> orders = new ArrayList<>(count);
+            for (int i = 0, line = 0; i < count; i++) {
+                List<LedgerLineDto> orderLines = new ArrayList<>(lineEnds[i] - line);
+                for (; line < lineEnds[i]; line++) {
+                    orderLines.add(new LedgerLineDto(catalog.sku(books[line]), quantities[line]));
+                }
+                orders.add(new LedgerOrderDto(ids[i], Instant.ofEpochMilli(orderTimes[i]), orderLines, orderTotals[i]));
+            }
+            return orders;
+        }
+    }
+}
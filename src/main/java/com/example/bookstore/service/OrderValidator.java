@@ -0,0 +1,115 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Catalog;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks an order before any stock is reserved, in a single pass over its lines.
+ * Totals are added up as longs so a big price * quantity can't overflow into a small one. A valid order allocates
+ * nothing: the result is the total price, and rejections are negative codes whose message is only built when
+ * it's needed. Sold out messages are built once per book and kept.
+ */
+@Service
+public class OrderValidator {
+
+    public static final int MAX_ORDER_VALUE = 120;
+
+    // Results of validate() that aren't a total price
+    public static final long EMPTY_ORDER = -1;
+    public static final long NEGATIVE_QUANTITY = -2;
+    public static final long OVER_MAX_VALUE = -3;
+
+    private static final String EMPTY_ORDER_MESSAGE = "No books placed in the order.";
+
+    private final Catalog catalog;
+    // Filled the first time a book is sold out, a race only means the same message is built twice
+    private final String[] soldOutMessages;
+
+    public OrderValidator(Catalog catalog) {
+        this.catalog = catalog;
+        this.soldOutMessages = new String[catalog.size()];
+    }
+
+    // Returns the total price of the order, or EMPTY_ORDER, NEGATIVE_QUANTITY or OVER_MAX_VALUE
+    public long validate(List<BookRequestDto> orderItems) {
+        long totalQuantity = 0;
+        long totalPrice = 0;
+        for (int i = 0, size = orderItems.size(); i < size; i++) {
+            BookRequestDto item = orderItems.get(i);
+            int quantity = item.quantity();
+            if (quantity < 0) {
+                return NEGATIVE_QUANTITY;
+            }
+            totalQuantity += quantity;
+            totalPrice += (long) catalog.price(item.book()) * quantity;
+        }
+
+        // Fail if the quantity is 0
+        if (totalQuantity == 0) {
+            return EMPTY_ORDER;
+        }
+        // Fail if the price is too high
+        if (totalPrice > MAX_ORDER_VALUE) {
+            return OVER_MAX_VALUE;
+        }
+        return totalPrice;
+    }
+
+    // The error for a negative result of validate()
+    public String rejectionMessage(long result, List<BookRequestDto> orderItems) {
+        if (result == EMPTY_ORDER) {
+            return EMPTY_ORDER_MESSAGE;
+        }
+        if (result == NEGATIVE_QUANTITY) {
+            for (BookRequestDto item : orderItems) {
+                if (item.quantity() < 0) {
+                    return "Quantity of " + catalog.title(item.book()) + " can't be negative.";
+                }
+            }
+        }
+        if (result == OVER_MAX_VALUE) {
+            long totalPrice = 0;
+            for (BookRequestDto item : orderItems) {
+                totalPrice += (long) catalog.price(item.book()) * item.quantity();
+            }
+            return "Order of $" + totalPrice + " exceeds maximum allowed value of $" + MAX_ORDER_VALUE + ".";
+        }
+        throw new IllegalArgumentException("Not a rejection: " + result);
+    }
+
+    // One error per book the reservation couldn't take
+    public List<String> stockErrors(int[] missingBooks) {
+        List<String> errors = new ArrayList<>(missingBooks.length);
+        for (int book : missingBooks) {
+            String message = soldOutMessages[book];
+            if (message == null) {
+                message = soldOutMessage(book);
+                soldOutMessages[book] = message;
+            }
+            errors.add(message);
+        }
+        return errors;
+    }
+
+    // One error per book with no copy to sell right now, copies held by other customers may still come back
+    public List<String> unavailableErrors(int[] books) {
+        List<String> errors = new ArrayList<>(books.length);
+        for (int book : books) {
+            errors.add("No copies of " + catalog.title(book) + " are available right now. Please try again later or order without this book.");
+        }
+        return errors;
+    }
+
+    private String soldOutMessage(int book) {
+        String title = catalog.title(book);
+        if (!catalog.isRestockable(book)) {
+            return title + " is unfortunately sold out and no more copies exist in the world. " +
+                    "Please remove " + title + " from your order and try again.";
+        }
+        return title + " is currently sold out. Please try to place the order again without this book.";
+    }
+}
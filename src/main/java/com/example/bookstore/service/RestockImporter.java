@@ -0,0 +1,241 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.dto.RestockImportResponseDto;
+import com.example.bookstore.dto.RestockedBookDto;
+import com.example.bookstore.model.Catalog;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Imports the nightly restock manifests of the warehouse: one sku,quantity per line, millions of lines.
+ * <p>
+ * The manifest is read through a buffer and parsed byte by byte, nothing is allocated per line: SKUs are looked up
+ * straight from the bytes and quantities are added up per book. Every line is checked with the rules of
+ * /api/restock, and like /api/restock nothing is restocked if a line is rejected. Otherwise the totals are applied
+ * in one go, with one version bump and one journal record. Empty lines, lines starting with # and a
+ * "sku,quantity" header are skipped. Blanks around a SKU or a quantity are ignored, blanks inside one are kept, so
+ * "BOOK A" is an unknown book and "1 0" isn't a quantity.
+ */
+@Service
+public class RestockImporter {
+
+    public static final int MAX_REPORTED_ERRORS = 100;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_SKU_LENGTH = 64;
+    private static final byte[] HEADER_SKU = "sku".getBytes(StandardCharsets.US_ASCII);
+
+    private final InventoryService inventoryService;
+    private final InventorySequencer inventorySequencer;
+    private final ClusterInventory clusterInventory;
+    private final RestockValidator restockValidator;
+    private final BookstoreMetrics bookstoreMetrics;
+    private final Catalog catalog;
+
+    public RestockImporter(InventoryService inventoryService, Optional<InventorySequencer> inventorySequencer,
+                           Optional<ClusterInventory> clusterInventory, RestockValidator restockValidator, BookstoreMetrics bookstoreMetrics) {
+        this.inventoryService = inventoryService;
+        this.inventorySequencer = inventorySequencer.orElse(null);
+        this.clusterInventory = clusterInventory.orElse(null);
+        this.restockValidator = restockValidator;
+        this.bookstoreMetrics = bookstoreMetrics;
+        this.catalog = inventoryService.getCatalog();
+    }
+
+    public RestockImportResponseDto importCsv(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return importCsv(channel);
+        }
+    }
+
+    public RestockImportResponseDto importCsv(ReadableByteChannel channel) throws IOException {
+        Manifest manifest = new Manifest();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        while (channel.read(buffer) >= 0) {
+            for (int i = 0, end = buffer.position(); i < end; i++) {
+                manifest.accept(bytes[i]);
+            }
+            buffer.clear();
+        }
+        manifest.endOfInput();
+        return apply(manifest);
+    }
+
+    private RestockImportResponseDto apply(Manifest manifest) {
+        List<BookRequestDto> restockItems = new ArrayList<>();
+        for (int book = 0; book < catalog.size(); book++) {
+            long total = manifest.totals[book];
+            if (total == 0) {
+                continue;
+            }
+            // Millions of lines can add up to more than a stock can count
+            if (total > Integer.MAX_VALUE - inventoryService.getStock(book)) {
+                manifest.error("Restocking " + total + " copies of " + catalog.title(book) + " would overflow its stock.");
+            }
+            restockItems.add(new BookRequestDto(book, (int) total));
+        }
+        if (!manifest.errors.isEmpty()) {
+            return new RestockImportResponseDto("Nothing was restocked, fix the rejected lines and send the manifest again.",
+                    manifest.lines, List.of(), manifest.rejectedLines, manifest.errors);
+        }
+
+        if (!restockItems.isEmpty()) {
+            if (clusterInventory != null) {
+                clusterInventory.restock(restockItems);
+            } else if (inventorySequencer != null) {
+                inventorySequencer.restock(restockItems).join();
+            } else {
+                inventoryService.restockBooks(restockItems);
+            }
+        }
+        List<RestockedBookDto> restockedItems = new ArrayList<>(restockItems.size());
+        for (BookRequestDto item : restockItems) {
+            restockedItems.add(new RestockedBookDto(catalog.title(item.book()), item.quantity()));
+        }
+        return new RestockImportResponseDto("Restocked successfully!", manifest.lines, restockedItems, 0, List.of());
+    }
+
+    // Parsing state of one manifest, fed one byte at a time
+    private final class Manifest {
+        final long[] totals = new long[catalog.size()];
+        final List<String> errors = new ArrayList<>();
+        long lines;
+        long rejectedLines;
+
+        // The line being read
+        final byte[] sku = new byte[MAX_SKU_LENGTH];
+        int skuLength;
+        // Blanks after the SKU so far, only kept if more of the SKU follows
+        int skuBlanks;
+        long quantity;
+        boolean inQuantity;
+        boolean hasDigits;
+        // A blank came after the digits, any more digits make the line malformed
+        boolean quantityEnded;
+        boolean hasContent;
+        boolean comment;
+        boolean malformed;
+
+        void accept(byte b) {
+            if (b == '\n') {
+                endOfLine();
+                return;
+            }
+            if (comment) {
+                return;
+            }
+            if (b == '\r' || b == ' ' || b == '\t') {
+                if (!inQuantity && skuLength > 0) {
+                    skuBlanks++;
+                } else if (hasDigits) {
+                    quantityEnded = true;
+                }
+                return;
+            }
+            if (!hasContent && b == '#') {
+                comment = true;
+                return;
+            }
+            hasContent = true;
+
+            if (!inQuantity) {
+                if (b == ',') {
+                    inQuantity = true;
+                } else if (skuLength + skuBlanks < MAX_SKU_LENGTH) {
+                    for (; skuBlanks > 0; skuBlanks--) {
+                        sku[skuLength++] = ' ';
+                    }
+                    sku[skuLength++] = b;
+                } else {
+                    malformed = true;
+                }
+            } else if (b >= '0' && b <= '9' && !quantityEnded) {
+                hasDigits = true;
+                // Anything this big is rejected anyway, stop before it overflows
+                quantity = Math.min(quantity * 10 + (b - '0'), Integer.MAX_VALUE);
+            } else {
+                malformed = true;
+            }
+        }
+
+        void endOfInput() {
+            if (hasContent || comment) {
+                endOfLine();
+            }
+        }
+
+        private void endOfLine() {
+            lines++;
+            if (hasContent) {
+                check();
+            }
+            skuLength = 0;
+            skuBlanks = 0;
+            quantity = 0;
+            inQuantity = false;
+            hasDigits = false;
+            quantityEnded = false;
+            hasContent = false;
+            comment = false;
+            malformed = false;
+        }
+
+        private void check() {
+            if (malformed || !inQuantity || !hasDigits) {
+                if (lines == 1 && !hasDigits && isHeader()) {
+                    return;
+                }
+                reject("should be sku,quantity with a whole number quantity.");
+                return;
+            }
+            int book = catalog.idOf(sku, 0, skuLength);
+            if (book < 0) {
+                reject("unknown book " + new String(sku, 0, skuLength, StandardCharsets.US_ASCII) + ".");
+                return;
+            }
+            BookstoreMetrics.Rejection rejection = restockValidator.check(book, quantity);
+            if (rejection != null) {
+                bookstoreMetrics.reject(rejection);
+                reject(restockValidator.rejectionMessage(rejection, book));
+                return;
+            }
+            totals[book] += quantity;
+        }
+
+        private boolean isHeader() {
+            if (skuLength != HEADER_SKU.length) {
+                return false;
+            }
+            for (int i = 0; i < skuLength; i++) {
+                if ((sku[i] | 0x20) != HEADER_SKU[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Every rejected line is counted, only the first ones are reported
+        private void reject(String reason) {
+            rejectedLines++;
+            error("Line " + lines + ": " + reason);
+        }
+
+        void error(String error) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(error);
+            }
+        }
+    }
+}
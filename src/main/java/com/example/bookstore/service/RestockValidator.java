@@ -0,0 +1,54 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.model.Catalog;
+import org.springframework.stereotype.Service;
+
+/**
+ * The rules every restocked book has to follow, whether it comes in through /api/restock or a restock manifest.
+ */
+@Service
+public class RestockValidator {
+
+    // Due to "storage issues" there is a restock max limit of 1000 per book
+    public static final int MAX_RESTOCK_QUANTITY = 1000;
+
+    private final Catalog catalog;
+
+    public RestockValidator(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    // Returns why restocking this quantity of the book is turned down, or null if it's fine
+    public BookstoreMetrics.Rejection check(int book, long quantity) {
+        // A negative restock would take books out of the stock
+        if (quantity < 0) {
+            return BookstoreMetrics.Rejection.NEGATIVE_QUANTITY;
+        }
+        // Ensure restock quantity does not go over max limit of 1000 per book
+        if (quantity > MAX_RESTOCK_QUANTITY) {
+            return BookstoreMetrics.Rejection.OVER_MAX_RESTOCK_QUANTITY;
+        }
+        // Ensure restock quantity is in multiples of 10
+        if (quantity % 10 != 0) {
+            return BookstoreMetrics.Rejection.BAD_RESTOCK_MULTIPLE;
+        }
+        // Ensure the book can be restocked, book D can't
+        if (!catalog.isRestockable(book)) {
+            return BookstoreMetrics.Rejection.NOT_RESTOCKABLE;
+        }
+        return null;
+    }
+
+    public String rejectionMessage(BookstoreMetrics.Rejection rejection, int book) {
+        String title = catalog.title(book);
+        return switch (rejection) {
+            case OVER_MAX_RESTOCK_QUANTITY ->
+                    "Restock exceeds maximum allowed quantity of " + MAX_RESTOCK_QUANTITY + " for book " + title + ".";
+            case NEGATIVE_QUANTITY -> "Restock quantity for " + title + " can't be negative.";
+            case BAD_RESTOCK_MULTIPLE -> "Restock quantity for " + title + " must be in multiples of 10.";
+            case NOT_RESTOCKABLE -> "Cannot restock " + title +
+                    ". as no more exists in the world. Please try to create a new restock order without " + title;
+            default -> throw new IllegalArgumentException("Not a restock rejection: " + rejection);
+        };
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.dto.BookSalesDto;
+import com.example.bookstore.dto.SalesReportDto;
+import com.example.bookstore.model.Catalog;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Units sold and revenue per book over the last 5 minutes, hour and day, counted in rings of buckets instead of
+ * remembering the orders.
+ * <p>
+ * Every book that sold gets a ring of one-second buckets and a ring of one-minute buckets, each bucket a units and a
+ * revenue counter in a primitive array. A ticker thread publishes the bucket of the current second and minute and
+ * clears the buckets that come next ahead of time, so recording a sale is a volatile read and two adds per ring,
+ * without checking the clock or whether a bucket is stale. A report adds up the buckets of its window for every book
+ * that sold, its cost depends on the number of buckets and not on the number of orders.
+ * <p>
+ * A book whose last sale left the day window gives its rings back: once a minute the ticker drops the series of books
+ * that haven't sold for a day, so memory and the ticker's work follow the books that sold in the last day rather than
+ * every book that ever sold. A sale that raced with the eviction is moved over to the book's new rings.
+ * <p>
+ * The list of series is the ticker's alone. A book's first sale only puts its new series on a lock-free queue, which
+ * the ticker drains every tick, and reports read the array the ticker publishes when the list changed plus what's
+ * still queued. No sale ever copies the list.
+ */
+@Service
+public class SalesAnalytics {
+
+    // What a report covers, and the ring and number of buckets that make it up
+    public enum Window {
+        FIVE_MINUTES("5m", true, 300),
+        HOUR("1h", false, 60),
+        DAY("24h", false, 1440);
+
+        private final String label;
+        private final boolean inSeconds;
+        private final int buckets;
+
+        Window(String label, boolean inSeconds, int buckets) {
+            this.label = label;
+            this.inSeconds = inSeconds;
+            this.buckets = buckets;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        // null for anything other than 5m, 1h or 24h
+        public static Window of(String label) {
+            for (Window window : values()) {
+                if (window.label.equals(label)) {
+                    return window;
+                }
+            }
+            return null;
+        }
+    }
+
+    public static final int MAX_REPORTED_BOOKS = 1000;
+
+    // The longest window of each ring, plus the two buckets ahead that the ticker clears
+    private static final int SECOND_BUCKETS = Window.FIVE_MINUTES.buckets + 2;
+    private static final int MINUTE_BUCKETS = Window.DAY.buckets + 2;
+
+    // The rings of one book, units at 2 * bucket and revenue right after so a sale touches one cache line per ring
+    private static final class Series {
+        final int book;
+        final AtomicLongArray seconds = new AtomicLongArray(2 * SECOND_BUCKETS);
+        final AtomicLongArray minutes = new AtomicLongArray(2 * MINUTE_BUCKETS);
+        // Set once the series is no longer in seriesByBook and sold
+        volatile boolean evicted;
+        // Last minute the book sold in, -1 until the ticker first sees it. Only touched by the ticker
+        long lastActiveMinute = -1;
+
+        Series(int book) {
+            this.book = book;
+        }
+    }
+
+    private final Catalog catalog;
+    private final Clock clock;
+    private final AtomicReferenceArray<Series> seriesByBook;
+    // New series of books that sold, until the ticker adds them to its list
+    private final Queue<Series> added = new ConcurrentLinkedQueue<>();
+    // The ticker's list of books that sold, and the copy of it reports read
+    private final List<Series> sold = new ArrayList<>();
+    private volatile Series[] listed = new Series[0];
+
+    // Counter index of the current minute bucket in the high half and of the current second bucket in the low half
+    private volatile long currentBuckets;
+
+    // Only touched by the ticker
+    private long currentSecond;
+    private long clearedSecond;
+    private long clearedMinute;
+
+    private volatile boolean running;
+    private Thread ticker;
+
+    @Autowired
+    public SalesAnalytics(Catalog catalog) {
+        this(catalog, Clock.systemUTC());
+    }
+
+    SalesAnalytics(Catalog catalog, Clock clock) {
+        this.catalog = catalog;
+        this.clock = clock;
+        this.seriesByBook = new AtomicReferenceArray<>(catalog.size());
+        currentSecond = clock.millis() / 1000;
+        // New rings start out empty
+        clearedSecond = currentSecond + 2;
+        clearedMinute = currentSecond / 60 + 2;
+        publish();
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        ticker = new Thread(() -> {
+            while (running) {
+                // Ticking a few times a second keeps the current bucket close to the clock
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200));
+                tick();
+            }
+        }, "sales-analytics");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(ticker);
+        ticker.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    // Adds the books of a placed order to the current buckets
+    public void record(List<BookRequestDto> items) {
+        long buckets = currentBuckets;
+        int second = (int) buckets;
+        int minute = (int) (buckets >>> 32);
+        for (int i = 0; i < items.size(); i++) {
+            BookRequestDto item = items.get(i);
+            int quantity = item.quantity();
+            if (quantity <= 0) {
+                continue;
+            }
+            int book = item.book();
+            long revenue = (long) quantity * catalog.price(book);
+            Series series = series(book);
+            series.seconds.getAndAdd(second, quantity);
+            series.seconds.getAndAdd(second + 1, revenue);
+            series.minutes.getAndAdd(minute, quantity);
+            series.minutes.getAndAdd(minute + 1, revenue);
+            // The ticker moves what it finds after evicting, whatever came in after that is moved here
+            if (series.evicted) {
+                moveSales(series);
+            }
+        }
+    }
+
+    /**
+     * The books that sold the most copies over the window, at most limit of them, and the totals of every book. The
+     * window is made of whole buckets up to and including the current one, so it starts on a second or a minute.
+     */
+    public SalesReportDto report(Window window, int limit) {
+        long buckets = currentBuckets;
+        int ringSize = window.inSeconds ? SECOND_BUCKETS : MINUTE_BUCKETS;
+        int current = (int) (window.inSeconds ? buckets : buckets >>> 32) / 2;
+
+        // The queue is read first: a series the ticker took off it since is already in the array read after
+        Set<Series> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+        queued.addAll(added);
+        Series[] listedSeries = listed;
+        List<Series> scanned = new ArrayList<>(listedSeries.length + queued.size());
+        for (Series series : listedSeries) {
+            queued.remove(series);
+            scanned.add(series);
+        }
+        scanned.addAll(queued);
+
+        long totalUnits = 0;
+        long totalRevenue = 0;
+        List<BookSalesDto> books = new ArrayList<>();
+        for (Series series : scanned) {
+            AtomicLongArray ring = window.inSeconds ? series.seconds : series.minutes;
+            long units = 0;
+            long revenue = 0;
+            for (int i = 0, bucket = current; i < window.buckets; i++) {
+                units += ring.get(2 * bucket);
+                revenue += ring.get(2 * bucket + 1);
+                bucket = bucket == 0 ? ringSize - 1 : bucket - 1;
+            }
+            if (units == 0) {
+                continue;
+            }
+            totalUnits += units;
+            totalRevenue += revenue;
+            books.add(new BookSalesDto(catalog.sku(series.book), catalog.title(series.book), units, revenue));
+        }
+
+        books.sort(Comparator.comparingLong(BookSalesDto::unitsSold).thenComparingLong(BookSalesDto::revenue).reversed());
+        if (books.size() > limit) {
+            books = new ArrayList<>(books.subList(0, limit));
+        }
+        return new SalesReportDto(window.label(), totalUnits, totalRevenue, books);
+    }
+
+    // Moves recording to the buckets of the clock's second and minute, after clearing the buckets ahead of them
+    void tick() {
+        long second = clock.millis() / 1000;
+        if (second <= currentSecond) {
+            return;
+        }
+        long minute = second / 60;
+        long previousMinute = currentSecond / 60;
+        boolean evicted = minute > previousMinute && evictIdle(previousMinute, minute);
+        // Taken after the eviction, a series it made for moved sales must have its stale buckets cleared below
+        int taken = takeAdded();
+        if (taken > 0 || evicted) {
+            // Published before the new series leave the queue, a report reads the queue first so it never misses one
+            listed = sold.toArray(new Series[0]);
+            for (int i = 0; i < taken; i++) {
+                added.poll();
+            }
+        }
+        // After a long pause every bucket in between is stale, but there is no point clearing one twice
+        for (long s = Math.max(clearedSecond + 1, second + 3 - SECOND_BUCKETS); s <= second + 2; s++) {
+            int bucket = (int) (s % SECOND_BUCKETS);
+            for (Series series : sold) {
+                series.seconds.set(2 * bucket, 0);
+                series.seconds.set(2 * bucket + 1, 0);
+            }
+        }
+        for (long m = Math.max(clearedMinute + 1, minute + 3 - MINUTE_BUCKETS); m <= minute + 2; m++) {
+            int bucket = (int) (m % MINUTE_BUCKETS);
+            for (Series series : sold) {
+                series.minutes.set(2 * bucket, 0);
+                series.minutes.set(2 * bucket + 1, 0);
+            }
+        }
+        clearedSecond = Math.max(clearedSecond, second + 2);
+        clearedMinute = Math.max(clearedMinute, minute + 2);
+        currentSecond = second;
+        publish();
+    }
+
+    // Adds the series queued since the last tick to the ticker's list, they stay queued until it's published
+    private int takeAdded() {
+        int taken = 0;
+        // Only the ticker takes series off the queue, so the ones it walks past are the first ones
+        for (Series series : added) {
+            sold.add(series);
+            taken++;
+        }
+        return taken;
+    }
+
+    // Notes which books sold in the minute that ended and drops the series of those that haven't sold for a day
+    private boolean evictIdle(long previousMinute, long minute) {
+        int bucket = (int) (previousMinute % MINUTE_BUCKETS);
+        List<Series> idle = new ArrayList<>();
+        int kept = 0;
+        for (int i = 0; i < sold.size(); i++) {
+            Series series = sold.get(i);
+            if (series.lastActiveMinute < 0 || series.minutes.get(2 * bucket) != 0) {
+                series.lastActiveMinute = previousMinute;
+            } else if (minute - series.lastActiveMinute > MINUTE_BUCKETS) {
+                idle.add(series);
+                continue;
+            }
+            sold.set(kept++, series);
+        }
+        if (idle.isEmpty()) {
+            return false;
+        }
+        sold.subList(kept, sold.size()).clear();
+        for (Series series : idle) {
+            seriesByBook.compareAndSet(series.book, series, null);
+        }
+        for (Series series : idle) {
+            series.evicted = true;
+            moveSales(series);
+        }
+        return true;
+    }
+
+    // Moves the counts of an evicted series to the book's current one, every count is moved by exactly one getAndSet
+    private void moveSales(Series evicted) {
+        Series current = null;
+        for (int i = 0; i < evicted.seconds.length(); i++) {
+            long count = evicted.seconds.getAndSet(i, 0);
+            if (count != 0) {
+                current = current != null ? current : series(evicted.book);
+                current.seconds.getAndAdd(i, count);
+            }
+        }
+        for (int i = 0; i < evicted.minutes.length(); i++) {
+            long count = evicted.minutes.getAndSet(i, 0);
+            if (count != 0) {
+                current = current != null ? current : series(evicted.book);
+                current.minutes.getAndAdd(i, count);
+            }
+        }
+    }
+
+    // Books with rings right now, called from the thread that ticks
+    int seriesCount() {
+        return sold.size() + added.size();
+    }
+
+    private void publish() {
+        long secondIndex = 2 * (currentSecond % SECOND_BUCKETS);
+        long minuteIndex = 2 * (currentSecond / 60 % MINUTE_BUCKETS);
+        currentBuckets = minuteIndex << 32 | secondIndex;
+    }
+
+    // The rings of a book, made on its first sale
+    private Series series(int book) {
+        Series series = seriesByBook.get(book);
+        if (series != null) {
+            return series;
+        }
+        Series created = new Series(book);
+        if (seriesByBook.compareAndSet(book, null, created)) {
+            added.add(created);
+            return created;
+        }
+        return seriesByBook.get(book);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.bookstore.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Consistent hashing of books to nodes. Every node is put on a ring of 64 bit hashes at VIRTUAL_NODES points, and a
+ * book belongs to the node of the first point at or after the hash of its SKU. Adding or removing a node only moves
+ * the books next to its points, about 1/N of them, where hash % N would move nearly all of them.
+ */
+public final class ShardRing {
+
+    public static final int VIRTUAL_NODES = 128;
+
+    // Point hashes in ascending order, and the node of each point
+    private final long[] points;
+    private final int[] pointNodes;
+
+    public ShardRing(List<String> nodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A shard ring needs at least one node");
+        }
+        long[] hashes = new long[nodes.size() * VIRTUAL_NODES];
+        int[] owners = new int[hashes.length];
+        Integer[] order = new Integer[hashes.length];
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                int point = node * VIRTUAL_NODES + v;
+                hashes[point] = hash(nodes.get(node) + "#" + v);
+                owners[point] = node;
+                order[point] = point;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+
+        points = new long[hashes.length];
+        pointNodes = new int[hashes.length];
+        for (int i = 0; i < order.length; i++) {
+            points[i] = hashes[order[i]];
+            pointNodes[i] = owners[order[i]];
+        }
+    }
+
+    // Index of the node that owns the book with this SKU
+    public int nodeOf(String sku) {
+        int i = Arrays.binarySearch(points, hash(sku));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        // Past the last point wraps around to the first one
+        return pointNodes[i == points.length ? 0 : i];
+    }
+
+    // FNV-1a, then the MurmurHash3 finalizer so similar names like "node#1" and "node#2" land far apart
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
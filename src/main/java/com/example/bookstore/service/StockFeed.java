@@ -0,0 +1,243 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.StockChangeDto;
+import com.example.bookstore.model.Catalog;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes stock changes to storefronts over Server-Sent Events instead of having them poll the listing.
+ * <p>
+ * A single thread checks the inventory version every interval and, when it changed, publishes a frame with the
+ * books whose stock or held count changed. Subscribers only remember the last frame they got: an idle subscriber
+ * is an async request and a few fields, no thread. When a frame comes out, subscribers that aren't busy sending get
+ * a short task that sends them what they missed. A slow subscriber that is still busy just misses frames, its next
+ * send merges them so it gets the latest value per book instead of a growing backlog. A subscriber that fell
+ * further behind than the frames kept gets the whole listing again.
+ */
+@Service
+public class StockFeed {
+
+    private static final int FRAMES_KEPT = 64;
+
+    // The books that changed in one publication
+    private record Frame(long sequence, List<StockChangeDto> changes, String json) {
+    }
+
+    private final class Subscriber {
+        final SseEmitter emitter;
+        // Last frame sent, -1 until the first full listing went out
+        long sentSequence = -1;
+        final AtomicBoolean sending = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+
+    private final InventoryService inventoryService;
+    private final ObjectMapper objectMapper;
+    private final long intervalMillis;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicReferenceArray<Frame> frames = new AtomicReferenceArray<>(FRAMES_KEPT);
+    private volatile long sequence;
+    // Threads only live while a send is going on, so idle subscribers don't hold any
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Last published values, only touched by the publisher thread
+    private final int[] publishedStock;
+    private final int[] publishedHeld;
+    private long publishedVersion = -1;
+
+    private volatile boolean running;
+    private Thread publisher;
+
+    public StockFeed(InventoryService inventoryService, ObjectMapper objectMapper,
+                     @Value("${bookstore.feed.interval-ms:100}") long intervalMillis,
+                     @Value("${bookstore.feed.max-subscribers:8192}") int maxSubscribers,
+                     @Value("${bookstore.feed.timeout-minutes:30}") long timeoutMinutes) {
+        this.inventoryService = inventoryService;
+        this.objectMapper = objectMapper;
+        this.intervalMillis = intervalMillis;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = TimeUnit.MINUTES.toMillis(timeoutMinutes);
+        this.publishedStock = new int[inventoryService.getCatalog().size()];
+        this.publishedHeld = new int[inventoryService.getCatalog().size()];
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        publisher = new Thread(() -> {
+            while (running) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(intervalMillis));
+                publish();
+            }
+        }, "stock-feed");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(publisher);
+        publisher.join(TimeUnit.SECONDS.toMillis(5));
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        senders.shutdown();
+    }
+
+    // Returns the emitter of a new subscriber, or null if there are already too many
+    public SseEmitter subscribe() {
+        if (subscribers.size() >= maxSubscribers) {
+            return null;
+        }
+        Subscriber subscriber = new Subscriber(newEmitter(timeoutMillis));
+        subscriber.emitter.onCompletion(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onTimeout(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        // The first event is the whole listing
+        schedule(subscriber);
+        return subscriber.emitter;
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    // Tests override this to see what is sent
+    SseEmitter newEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    // Publishes a frame if the stock changed since the last one, the publisher thread calls this every interval
+    void publish() {
+        if (inventoryService.getVersion() == publishedVersion) {
+            return;
+        }
+        StockSnapshot snapshot = inventoryService.snapshot();
+        publishedVersion = snapshot.getVersion();
+
+        Catalog catalog = inventoryService.getCatalog();
+        List<StockChangeDto> changes = new ArrayList<>();
+        for (int book = 0; book < catalog.size(); book++) {
+            int stock = snapshot.getStock(book);
+            int held = snapshot.getHeld(book);
+            if (stock != publishedStock[book] || held != publishedHeld[book] || sequence == 0) {
+                publishedStock[book] = stock;
+                publishedHeld[book] = held;
+                changes.add(new StockChangeDto(catalog.sku(book), stock, held));
+            }
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        long next = sequence + 1;
+        frames.set((int) (next % FRAMES_KEPT), new Frame(next, changes, encode(changes)));
+        sequence = next;
+        for (Subscriber subscriber : subscribers) {
+            schedule(subscriber);
+        }
+    }
+
+    // A subscriber busy sending picks up the new frames when it is done
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.sending.compareAndSet(false, true)) {
+            senders.execute(() -> send(subscriber));
+        }
+    }
+
+    private void send(Subscriber subscriber) {
+        try {
+            while (true) {
+                long latest = sequence;
+                if (subscriber.sentSequence < latest || subscriber.sentSequence < 0) {
+                    subscriber.emitter.send(SseEmitter.event()
+                            .name("stock")
+                            .id(Long.toString(latest))
+                            .data(changesSince(subscriber.sentSequence, latest)));
+                    subscriber.sentSequence = latest;
+                }
+                subscriber.sending.set(false);
+                // A frame published after we looked would otherwise wait for the next one
+                if (sequence == subscriber.sentSequence || !subscriber.sending.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // The client went away
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+        }
+    }
+
+    // JSON of the latest value of every book that changed after frame from, up to frame to
+    private String changesSince(long from, long to) {
+        if (from == to - 1) {
+            Frame frame = frames.get((int) (to % FRAMES_KEPT));
+            if (frame != null && frame.sequence() == to) {
+                return frame.json();
+            }
+        }
+
+        // Newest frame first, so the first value seen for a book is its latest
+        Map<String, StockChangeDto> latest = new LinkedHashMap<>();
+        for (long s = to; s > from && from >= 0; s--) {
+            Frame frame = frames.get((int) (s % FRAMES_KEPT));
+            if (frame == null || frame.sequence() != s) {
+                return snapshot();
+            }
+            for (StockChangeDto change : frame.changes()) {
+                latest.putIfAbsent(change.book(), change);
+            }
+        }
+        if (from < 0) {
+            return snapshot();
+        }
+        return encode(new ArrayList<>(latest.values()));
+    }
+
+    private String snapshot() {
+        Catalog catalog = inventoryService.getCatalog();
+        StockSnapshot snapshot = inventoryService.snapshot();
+        List<StockChangeDto> books = new ArrayList<>(catalog.size());
+        for (int book = 0; book < catalog.size(); book++) {
+            books.add(new StockChangeDto(catalog.sku(book), snapshot.getStock(book), snapshot.getHeld(book)));
+        }
+        return encode(books);
+    }
+
+    private String encode(List<StockChangeDto> changes) {
+        try {
+            return objectMapper.writeValueAsString(changes);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode stock changes", e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.bookstore.service;
+
+/**
+ * The stock and held copies of every book at one inventory version, never changed once taken.
+ * See InventoryService.snapshot().
+ */
+public final class StockSnapshot {
+
+    private final long version;
+    private final int[] stock;
+    private final int[] held;
+    private final boolean stale;
+
+    StockSnapshot(long version, int[] stock, int[] held) {
+        this(version, stock, held, false);
+    }
+
+    private StockSnapshot(long version, int[] stock, int[] held, boolean stale) {
+        this.version = version;
+        this.stock = stock;
+        this.held = held;
+        this.stale = stale;
+    }
+
+    // The same copy, handed out when a newer one couldn't be taken
+    StockSnapshot asStale() {
+        return new StockSnapshot(version, stock, held, true);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getStock(int book) {
+        return stock[book];
+    }
+
+    public int getHeld(int book) {
+        return held[book];
+    }
+
+    // True if the inventory had already moved on when this copy was handed out, see InventoryService.snapshot()
+    public boolean isStale() {
+        return stale;
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.bookstore.service;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The stock of one hot book split into pools, about one per core, so orders on different threads take their copies
+ * from different cache lines instead of all retrying a CAS on the same int.
+ * <p>
+ * Each pool is a lease of copies. A thread takes from its own pool and, when that one runs short, borrows from the
+ * others. Only when no single pool has enough left, near the end of the stock, does it lock, collect every pool into
+ * one exact count, decide on that count and lease what's left out again evenly. Pools are only ever taken from with a
+ * CAS that keeps them at zero or above, so the book is never oversold, and an order is only turned down once the
+ * exact count said no.
+ * <p>
+ * The book's slot in the plain stock array stays one more pool: copies added there by a restock that raced with the
+ * book being striped are still counted and sold.
+ * <p>
+ * While the lock holder has the copies collected every pool reads zero. Reads count the pools between two even
+ * values of exchanges and wait for the lock otherwise, so a book in the middle of that is never read as sold out.
+ */
+final class StripedStock {
+
+    // Pools are 16 ints (64 bytes) apart so no two share a cache line
+    private static final int PADDING = 16;
+
+    private final AtomicIntegerArray base;
+    private final int book;
+    private final AtomicIntegerArray pools;
+    private final int mask;
+    // Only taken near zero and to reset the stock, never by an order that finds enough in a pool
+    private final ReentrantLock lock = new ReentrantLock();
+    // Odd while the lock holder has the copies out of the pools, only written under the lock
+    private volatile int exchanges;
+
+    StripedStock(AtomicIntegerArray base, int book, int stripes) {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Stripes should be a power of two, was " + stripes);
+        }
+        this.base = base;
+        this.book = book;
+        this.pools = new AtomicIntegerArray(stripes * PADDING);
+        this.mask = stripes - 1;
+    }
+
+    // The smallest power of two with at least one pool per core
+    static int stripesFor(int cores) {
+        return Integer.highestOneBit(Math.max(1, cores) * 2 - 1);
+    }
+
+    // Only exact while no take or add is in flight, the inventory's seqlock makes sure of that for snapshots
+    int sum() {
+        int before = exchanges;
+        if ((before & 1) == 0) {
+            long sum = count();
+            if (exchanges == before) {
+                return (int) sum;
+            }
+        }
+        // The copies were being collected, the lock waits until they are back in the pools
+        lock.lock();
+        try {
+            return (int) count();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Restocks and put-backs go to the pool of the thread, a negative quantity (an unchecked order) may take it below zero
+    void add(int quantity) {
+        pools.addAndGet(home() * PADDING, quantity);
+    }
+
+    boolean tryTake(int quantity) {
+        int home = home();
+        for (int i = 0; i <= mask; i++) {
+            int index = ((home + i) & mask) * PADDING;
+            if (tryTake(pools, index, quantity)) {
+                return true;
+            }
+        }
+        return tryTake(base, book, quantity) || takeExact(quantity);
+    }
+
+    // Moves the copies in the plain stock array into the pools, once the book is striped
+    void spreadBase() {
+        lock.lock();
+        try {
+            exchanges++;
+            spread(base.getAndSet(book, 0));
+        } finally {
+            exchanges++;
+            lock.unlock();
+        }
+    }
+
+    // Overwrites the stock, returns what it was
+    int set(int quantity) {
+        lock.lock();
+        try {
+            exchanges++;
+            long previous = drain();
+            spread(quantity);
+            return (int) previous;
+        } finally {
+            exchanges++;
+            lock.unlock();
+        }
+    }
+
+    private boolean takeExact(int quantity) {
+        lock.lock();
+        try {
+            exchanges++;
+            long total = drain();
+            boolean taken = total >= quantity;
+            spread(taken ? total - quantity : total);
+            return taken;
+        } finally {
+            exchanges++;
+            lock.unlock();
+        }
+    }
+
+    // Empties every pool into one count. Orders that find them empty meanwhile queue on the lock for the exact count
+    private long drain() {
+        long total = base.getAndSet(book, 0);
+        for (int stripe = 0; stripe <= mask; stripe++) {
+            total += pools.getAndSet(stripe * PADDING, 0);
+        }
+        return total;
+    }
+
+    private long count() {
+        long sum = base.get(book);
+        for (int stripe = 0; stripe <= mask; stripe++) {
+            sum += pools.get(stripe * PADDING);
+        }
+        return sum;
+    }
+
+    // Leases the copies out evenly, whatever doesn't divide goes to the pool of this thread
+    private void spread(long total) {
+        int stripes = mask + 1;
+        int share = (int) (total / stripes);
+        int home = home();
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            int quantity = stripe == home ? share + (int) (total % stripes) : share;
+            if (quantity != 0) {
+                pools.addAndGet(stripe * PADDING, quantity);
+            }
+        }
+    }
+
+    // Thread ids are handed out in sequence, mixing them spreads neighbouring threads over the pools
+    private int home() {
+        return (int) ((Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private static boolean tryTake(AtomicIntegerArray counts, int index, int quantity) {
+        while (true) {
+            int current = counts.get(index);
+            if (current < quantity) {
+                return false;
+            }
+            if (counts.compareAndSet(index, current, current - quantity)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.bookstore.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A hashed timing wheel: timeouts are put in one of a fixed ring of buckets by their deadline, and a single thread
+ * visits one bucket per tick and expires what is due. Scheduling and cancelling are O(1) whatever the number of
+ * outstanding timeouts, instead of every timeout being a task in a scheduler's priority queue.
+ * <p>
+ * New timeouts go through a queue and only the wheel thread touches the buckets, so they need no locking.
+ * A cancelled timeout stays in its bucket until the wheel passes it, then it's dropped. A callback that throws is
+ * logged and the wheel goes on, so one failed expiry doesn't stop every later one.
+ */
+public final class TimingWheel<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(TimingWheel.class);
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    public static final class Timeout<T> {
+        private final T value;
+        private final long deadlineMillis;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        // Turns of the wheel left before the deadline is in the current turn, and the bucket links
+        private long rounds;
+        private Timeout<T> next;
+        private Timeout<T> previous;
+
+        private Timeout(T value, long deadlineMillis) {
+            this.value = value;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        public long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+
+        // Returns false if the timeout already expired or was cancelled, only one of cancel and expiry ever wins
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+    }
+
+    private static final class Bucket<T> {
+        Timeout<T> head;
+        Timeout<T> tail;
+
+        void add(Timeout<T> timeout) {
+            timeout.previous = tail;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout<T> timeout) {
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.next = null;
+            timeout.previous = null;
+        }
+    }
+
+    private final long tickMillis;
+    private final int mask;
+    private final Bucket<T>[] buckets;
+    private final Consumer<T> onExpiry;
+    private final long startMillis;
+    private final Queue<Timeout<T>> scheduled = new ConcurrentLinkedQueue<>();
+
+    // Next tick to process, only touched by the thread advancing the wheel
+    private long tick;
+    private volatile boolean running;
+    private Thread ticker;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, int wheelSize, long startMillis, Consumer<T> onExpiry) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two, was " + wheelSize);
+        }
+        this.tickMillis = tickMillis;
+        this.mask = wheelSize - 1;
+        this.buckets = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new Bucket<>();
+        }
+        this.startMillis = startMillis;
+        this.onExpiry = onExpiry;
+    }
+
+    public Timeout<T> schedule(T value, long deadlineMillis) {
+        Timeout<T> timeout = new Timeout<>(value, deadlineMillis);
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    // Advances the wheel from a daemon thread, one tick every tickMillis
+    public void start(String threadName) {
+        running = true;
+        ticker = new Thread(() -> {
+            while (running) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(tickMillis));
+                advanceTo(System.currentTimeMillis());
+            }
+        }, threadName);
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    public void stop() throws InterruptedException {
+        running = false;
+        if (ticker != null) {
+            LockSupport.unpark(ticker);
+            ticker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * Expires every timeout with a deadline up to now. Must only be called from one thread at a time, start() does
+     * it on its own thread.
+     */
+    public void advanceTo(long nowMillis) {
+        long lastTick = (nowMillis - startMillis) / tickMillis;
+        while (tick <= lastTick) {
+            placeScheduled();
+            expire(buckets[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void placeScheduled() {
+        Timeout<T> timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.state.get() == CANCELLED) {
+                continue;
+            }
+            // Rounded up so nothing expires early, a deadline that already passed goes in the bucket handled right now
+            long deadlineTick = Math.max(tick, Math.floorDiv(timeout.deadlineMillis - startMillis + tickMillis - 1, tickMillis));
+            timeout.rounds = (deadlineTick - tick) >> Integer.numberOfTrailingZeros(buckets.length);
+            buckets[(int) (deadlineTick & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Bucket<T> bucket) {
+        Timeout<T> timeout = bucket.head;
+        while (timeout != null) {
+            Timeout<T> next = timeout.next;
+            if (timeout.state.get() == CANCELLED) {
+                bucket.remove(timeout);
+            } else if (timeout.rounds <= 0) {
+                bucket.remove(timeout);
+                if (timeout.state.compareAndSet(PENDING, EXPIRED)) {
+                    try {
+                        onExpiry.accept(timeout.value);
+                    } catch (RuntimeException e) {
+                        log.error("Expiring {} failed", timeout.value, e);
+                    }
+                }
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.bookstore;
+
+import com.example.bookstore.service.ShardRing;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs a cluster of bookstore nodes in one JVM, each a full application on its own loopback port, so tests and
+ * benchmarks can send orders to any node and see them split across the shards like on separate machines.
+ */
+public final class LocalCluster implements AutoCloseable {
+
+    public static final String TOKEN = "local-cluster";
+
+    private final List<String> urls;
+    private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+    private final ShardRing ring;
+
+    private LocalCluster(List<String> urls) {
+        this.urls = urls;
+        this.ring = new ShardRing(urls);
+    }
+
+    /**
+     * Starts the nodes one after the other, every node gets the same extra properties (like a catalog file).
+     */
+    public static LocalCluster start(int nodes, String... properties) throws IOException {
+        // Devtools would restart every node in its own class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        int[] ports = freePorts(nodes);
+        List<String> urls = new ArrayList<>(nodes);
+        for (int port : ports) {
+            urls.add("http://127.0.0.1:" + port);
+        }
+        LocalCluster cluster = new LocalCluster(urls);
+        try {
+            for (int node = 0; node < nodes; node++) {
+                List<String> nodeProperties = new ArrayList<>(Arrays.asList(properties));
+                nodeProperties.add("server.port=" + ports[node]);
+                nodeProperties.add("bookstore.cluster.enabled=true");
+                nodeProperties.add("bookstore.cluster.nodes=" + String.join(",", urls));
+                nodeProperties.add("bookstore.cluster.self=" + node);
+                nodeProperties.add("bookstore.cluster.token=" + TOKEN);
+                // As command line arguments, builder properties are only defaults and application.properties wins
+                String[] args = nodeProperties.stream().map(property -> "--" + property).toArray(String[]::new);
+                cluster.contexts.add(new SpringApplicationBuilder(BookstoreApplication.class).run(args));
+            }
+        } catch (RuntimeException e) {
+            cluster.close();
+            throw e;
+        }
+        return cluster;
+    }
+
+    public int size() {
+        return urls.size();
+    }
+
+    public String url(int node) {
+        return urls.get(node);
+    }
+
+    public <T> T bean(int node, Class<T> type) {
+        return contexts.get(node).getBean(type);
+    }
+
+    // Index of the node that owns the book with this SKU
+    public int ownerOf(String sku) {
+        return ring.nodeOf(sku);
+    }
+
+    @Override
+    public void close() {
+        for (ConfigurableApplicationContext context : contexts) {
+            context.close();
+        }
+        contexts.clear();
+    }
+
+    // Ports that were free a moment ago, good enough on loopback
+    private static int[] freePorts(int count) throws IOException {
+        ServerSocket[] sockets = new ServerSocket[count];
+        int[] ports = new int[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                sockets[i] = new ServerSocket(0);
+                ports[i] = sockets[i].getLocalPort();
+            }
+        } finally {
+            for (ServerSocket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+        return ports;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.bookstore.config;
+
+import com.example.bookstore.MutableClock;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CachingPasswordEncoderTest {
+
+    // Stands in for BCrypt and counts how often it really had to check a password
+    private static class CountingEncoder implements PasswordEncoder {
+        final AtomicInteger checks = new AtomicInteger();
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return "hash:" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            checks.incrementAndGet();
+            return encodedPassword.equals(encode(rawPassword));
+        }
+    }
+
+    private final CountingEncoder bcrypt = new CountingEncoder();
+    private final MutableClock clock = new MutableClock();
+    private final CachingPasswordEncoder encoder = new CachingPasswordEncoder(bcrypt, Duration.ofMinutes(5), 2, clock);
+
+    @Test
+    public void testVerifiedPasswordIsOnlyCheckedOnce() {
+        assertTrue(encoder.matches("secret", "hash:secret"));
+        assertTrue(encoder.matches("secret", "hash:secret"));
+        assertEquals(1, bcrypt.checks.get());
+    }
+
+    @Test
+    public void testWrongPasswordIsNeverCached() {
+        assertFalse(encoder.matches("guess", "hash:secret"));
+        assertFalse(encoder.matches("guess", "hash:secret"));
+        assertEquals(2, bcrypt.checks.get());
+    }
+
+    @Test
+    public void testChangedPasswordMisses() {
+        assertTrue(encoder.matches("secret", "hash:secret"));
+        // The stored hash changed, so the old password has to go through the real check and fails
+        assertFalse(encoder.matches("secret", "hash:new-secret"));
+        assertEquals(2, bcrypt.checks.get());
+    }
+
+    @Test
+    public void testEntriesExpire() {
+        assertTrue(encoder.matches("secret", "hash:secret"));
+        clock.advance(Duration.ofMinutes(5));
+        assertTrue(encoder.matches("secret", "hash:secret"));
+        assertEquals(2, bcrypt.checks.get());
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        encoder.matches("a", "hash:a");
+        encoder.matches("b", "hash:b");
+        // Full of live entries, so c is checked but not remembered
+        encoder.matches("c", "hash:c");
+        encoder.matches("c", "hash:c");
+        assertEquals(4, bcrypt.checks.get());
+    }
+}
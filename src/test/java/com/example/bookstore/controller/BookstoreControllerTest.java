@@ -1,28 +1,56 @@
 package com.example.bookstore.controller;
 
+import com.example.bookstore.config.StartupWarmup;
+import com.example.bookstore.dto.BinaryWireFormat;
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.dto.BookResponseDto;
+import com.example.bookstore.dto.OrderResponseDto;
 import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import com.example.bookstore.service.AdmissionControl;
 import com.example.bookstore.service.InventoryService;
+import com.example.bookstore.service.SalesAnalytics;
+import com.example.bookstore.service.StockFeed;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 
 @SpringBootTest // Loads the whole application context
 @AutoConfigureMockMvc
+@AutoConfigureObservability // Tests don't export metrics unless asked to
 public class BookstoreControllerTest {
 
     @Autowired
@@ -31,13 +59,25 @@ public class BookstoreControllerTest {
     @Autowired
     private InventoryService inventoryService;
 
+    @Autowired
+    private SalesAnalytics salesAnalytics;
+
+    @Autowired
+    private BookstoreController bookstoreController;
+
+    @Autowired
+    private StartupWarmup startupWarmup;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @BeforeEach
     void resetStock() {
         // Reset stock before each test to ensure they won't
-        inventoryService.getStock().put(Book.BOOK_A, 20);
-        inventoryService.getStock().put(Book.BOOK_B, 20);
-        inventoryService.getStock().put(Book.BOOK_C, 20);
-        inventoryService.getStock().put(Book.BOOK_D, 10);
+        inventoryService.setStock(Book.BOOK_A.id(), 20);
+        inventoryService.setStock(Book.BOOK_B.id(), 20);
+        inventoryService.setStock(Book.BOOK_C.id(), 20);
+        inventoryService.setStock(Book.BOOK_D.id(), 10);
     }
 
 
@@ -70,6 +110,329 @@ public class BookstoreControllerTest {
                 .andExpect(jsonPath("$[3].stock").value(10));
     }
 
+    @Test
+    public void testBooksNotModifiedUntilStockChanges() throws Exception {
+        String etag = mockMvc.perform(get("/api/books"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        // Same ETag back means the client's copy is still good
+        mockMvc.perform(get("/api/books").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag));
+
+        // An order changes the stock, so the listing is sent again with a new ETag
+        inventoryService.orderBook(Book.BOOK_A.id(), 1);
+        mockMvc.perform(get("/api/books").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].stock").value(19));
+    }
+
+    @Test
+    public void testMetricsAreScraped() throws Exception {
+        mockMvc.perform(post("/api/order")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"book\": \"BOOK_D\", \"quantity\": 2}]"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/actuator/prometheus")
+                        .with(httpBasic("Uncle_Bob_1337", "TomCruiseIsUnder170cm")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("bookstore_stock_sold_out")))
+                .andExpect(content().string(not(containsString("book=\"BOOK_A\""))))
+                .andExpect(content().string(containsString("bookstore_rejections_total{reason=\"over_max_order_value\"}")))
+                .andExpect(content().string(containsString("bookstore_order_reserve_seconds")));
+    }
+
+    @Test
+    public void testWarmupRequestsAreNotMeasured() throws Exception {
+        String token = (String) ReflectionTestUtils.getField(startupWarmup, "token");
+
+        long before = booksRequests();
+        mockMvc.perform(get("/api/books").header(StartupWarmup.HEADER, token))
+                .andExpect(status().isOk());
+        assertEquals(before, booksRequests());
+
+        // Anyone else's requests are, whatever they send
+        mockMvc.perform(get("/api/books").header(StartupWarmup.HEADER, "guess"))
+                .andExpect(status().isOk());
+        assertEquals(before + 1, booksRequests());
+    }
+
+    // One timer per status and outcome
+    private long booksRequests() {
+        return meterRegistry.find("http.server.requests").tag("uri", "/api/books").timers().stream()
+                .mapToLong(Timer::count)
+                .sum();
+    }
+
+    @Test
+    public void testOrderRetriedWithIdempotencyKeyIsPlacedOnce() throws Exception {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            mockMvc.perform(post("/api/order")
+                            .header("Idempotency-Key", "retry-test")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("[{\"book\": \"BOOK_A\", \"quantity\": 3}]"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.totalPrice").value(15));
+        }
+        assertEquals(17, inventoryService.getStock(Book.BOOK_A.id()));
+    }
+
+    @Test
+    public void testOrderInBinaryWireFormat() throws Exception {
+        byte[] buffer = new byte[BinaryWireFormat.BUFFER_SIZE];
+        ByteArrayOutputStream order = new ByteArrayOutputStream();
+        BinaryWireFormat.writeOrder(List.of(new BookRequestDto(Book.BOOK_A, 2)), order, buffer);
+
+        byte[] body = mockMvc.perform(post("/api/order")
+                        .contentType(BinaryWireFormat.MEDIA_TYPE)
+                        .accept(BinaryWireFormat.MEDIA_TYPE)
+                        .content(order.toByteArray()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(BinaryWireFormat.MEDIA_TYPE))
+                .andReturn().getResponse().getContentAsByteArray();
+        OrderResponseDto response = BinaryWireFormat.readOrderResponse(new ByteArrayInputStream(body), buffer);
+        assertEquals(10, response.totalPrice());
+        assertEquals(Book.BOOK_A.getTitle(), response.orderedBooks().get(0).title());
+        assertEquals(18, inventoryService.getStock(Book.BOOK_A.id()));
+
+        // Errors come back as their messages
+        order.reset();
+        BinaryWireFormat.writeOrder(List.of(), order, buffer);
+        body = mockMvc.perform(post("/api/order")
+                        .contentType(BinaryWireFormat.MEDIA_TYPE)
+                        .accept(BinaryWireFormat.MEDIA_TYPE)
+                        .content(order.toByteArray()))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(1, BinaryWireFormat.readErrors(new ByteArrayInputStream(body), buffer).size());
+
+        body = mockMvc.perform(get("/api/books").accept(BinaryWireFormat.MEDIA_TYPE))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getContentAsByteArray();
+        List<BookResponseDto> books = BinaryWireFormat.readBooks(new ByteArrayInputStream(body), buffer);
+        assertEquals(4, books.size());
+        assertEquals(18, books.get(Book.BOOK_A.id()).stock());
+    }
+
+    @Test
+    public void testSalesReportCountsPlacedOrders() throws Exception {
+        long unitsBefore = salesAnalytics.report(SalesAnalytics.Window.DAY, 10).unitsSold();
+        mockMvc.perform(post("/api/order")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"book\": \"BOOK_C\", \"quantity\": 2}]"))
+                .andExpect(status().isOk());
+
+        // Sales figures need the admin
+        mockMvc.perform(get("/api/analytics/sales").param("window", "24h"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/analytics/sales").param("window", "24h")
+                        .with(httpBasic("Uncle_Bob_1337", "TomCruiseIsUnder170cm")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.window").value("24h"))
+                .andExpect(jsonPath("$.unitsSold").value(unitsBefore + 2));
+        mockMvc.perform(get("/api/analytics/sales").param("window", "7d")
+                        .with(httpBasic("Uncle_Bob_1337", "TomCruiseIsUnder170cm")))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testPlacedOrderIsInTheLedger() throws Exception {
+        String orderId = mockMvc.perform(post("/api/order")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"book\": \"BOOK_B\", \"quantity\": 1}, {\"book\": \"BOOK_C\", \"quantity\": 2}]"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(BookstoreController.ORDER_ID_HEADER))
+                .andReturn().getResponse().getHeader(BookstoreController.ORDER_ID_HEADER);
+
+        // Past orders need the admin
+        mockMvc.perform(get("/api/ledger/orders/" + orderId))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/ledger/orders/" + orderId)
+                        .with(httpBasic("Uncle_Bob_1337", "TomCruiseIsUnder170cm")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lines", hasSize(2)))
+                .andExpect(jsonPath("$.lines[1].book").value("BOOK_C"))
+                .andExpect(jsonPath("$.lines[1].quantity").value(2));
+        mockMvc.perform(get("/api/ledger/orders").param("book", "BOOK_C")
+                        .with(httpBasic("Uncle_Bob_1337", "TomCruiseIsUnder170cm")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.orders[0].id").value(Long.parseLong(orderId)));
+        mockMvc.perform(get("/api/ledger/orders").param("book", "BOOK_F")
+                        .with(httpBasic("Uncle_Bob_1337", "TomCruiseIsUnder170cm")))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/ledger/orders/" + Long.MAX_VALUE)
+                        .with(httpBasic("Uncle_Bob_1337", "TomCruiseIsUnder170cm")))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testHoldThenConfirm() throws Exception {
+        String hold = mockMvc.perform(post("/api/holds").param("seconds", "60")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"book\": \"BOOK_D\", \"quantity\": 1}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalPrice").value(75))
+                .andReturn().getResponse().getContentAsString();
+        String holdId = JsonPath.read(hold, "$.holdId");
+
+        // The listing shows the held copy apart from the ones still for sale
+        mockMvc.perform(get("/api/books"))
+                .andExpect(jsonPath("$[3].stock").value(9))
+                .andExpect(jsonPath("$[3].held").value(1));
+
+        mockMvc.perform(post("/api/holds/" + holdId + "/confirm"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.message").value("Order placed successfully!"))
+                .andExpect(jsonPath("$.totalPrice").value(75));
+        mockMvc.perform(delete("/api/holds/" + holdId))
+                .andExpect(status().isNotFound());
+        assertEquals(9, inventoryService.getStock(Book.BOOK_D.id()));
+        assertEquals(0, inventoryService.getHeld(Book.BOOK_D.id()));
+    }
+
+    @Test
+    public void testHoldWithoutCopiesIsRejected() throws Exception {
+        mockMvc.perform(post("/api/holds")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"book\": \"BOOK_A\", \"quantity\": 0}]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("No books placed in the order."));
+    }
+
+    @Test
+    public void testStockFeedSendsListingThenChanges() throws Exception {
+        MvcResult feed = mockMvc.perform(get("/api/books/feed").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        awaitContent(feed, "\"book\":\"BOOK_D\",\"stock\":10");
+
+        inventoryService.orderBook(Book.BOOK_C.id(), 3);
+        awaitContent(feed, "\"book\":\"BOOK_C\",\"stock\":17");
+    }
+
+    @Test
+    public void testStockFeedIsUnavailableAtTheSubscriberLimit() throws Exception {
+        StockFeed stockFeed = (StockFeed) ReflectionTestUtils.getField(bookstoreController, "stockFeed");
+        ReflectionTestUtils.setField(bookstoreController, "stockFeed", new StockFeed(inventoryService, new ObjectMapper(), 100, 0, 30));
+        try {
+            mockMvc.perform(get("/api/books/feed").accept(MediaType.TEXT_EVENT_STREAM))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "30"));
+        } finally {
+            ReflectionTestUtils.setField(bookstoreController, "stockFeed", stockFeed);
+        }
+    }
+
+    private static void awaitContent(MvcResult result, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!result.getResponse().getContentAsString().contains(expected)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Feed never sent " + expected + ", got: " + result.getResponse().getContentAsString());
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void testBatchOrdersAnswerEveryOrderInOrder() throws Exception {
+        inventoryService.setStock(Book.BOOK_D.id(), 1);
+        String orders = """
+                [{"book": "BOOK_A", "quantity": 2}]
+                [{"book": "BOOK_D", "quantity": 1}]
+                [{"book": "BOOK_D", "quantity": 1}]
+                not an order
+                [{"book": "BOOK_A", "quantity": 0}]
+                """;
+
+        MvcResult result = mockMvc.perform(post("/api/orders/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .content(orders))
+                .andReturn();
+        String[] lines = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString().split("\n");
+
+        assertEquals(5, lines.length);
+        assertEquals(10, (int) JsonPath.read(lines[0], "$.totalPrice"));
+        assertEquals(75, (int) JsonPath.read(lines[1], "$.totalPrice"));
+        assertEquals("Limited Collectors Edition is unfortunately sold out and no more copies exist in the world. " +
+                "Please remove Limited Collectors Edition from your order and try again.", JsonPath.read(lines[2], "$.errors[0]"));
+        assertEquals("Order could not be read, it should be a list of books and quantities.", JsonPath.read(lines[3], "$.error"));
+        assertEquals("No books placed in the order.", JsonPath.read(lines[4], "$.error"));
+        assertEquals(18, inventoryService.getStock(Book.BOOK_A.id()));
+        assertEquals(0, inventoryService.getStock(Book.BOOK_D.id()));
+    }
+
+    @Test
+    public void testBatchLineWithoutAnOrderIsAnsweredOnItsLine() throws Exception {
+        String orders = """
+                [null]
+                null
+                [{"book": "BOOK_A", "quantity": 1}, null]
+                [{"book": "BOOK_A", "quantity": 2}]
+                """;
+
+        MvcResult result = mockMvc.perform(post("/api/orders/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .content(orders))
+                .andReturn();
+        String[] lines = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString().split("\n");
+
+        assertEquals(4, lines.length);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Order could not be read, it should be a list of books and quantities.", JsonPath.read(lines[i], "$.error"));
+        }
+        assertEquals(10, (int) JsonPath.read(lines[3], "$.totalPrice"));
+        assertEquals(18, inventoryService.getStock(Book.BOOK_A.id()));
+    }
+
+    @Test
+    public void testBooksPages() throws Exception {
+        String firstPage = mockMvc.perform(get("/api/books").param("limit", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books", hasSize(3)))
+                .andExpect(jsonPath("$.books[0].book").value("BOOK_A"))
+                .andReturn().getResponse().getContentAsString();
+        String cursor = JsonPath.read(firstPage, "$.nextCursor");
+
+        // The second page holds the last book and has no next page
+        mockMvc.perform(get("/api/books").param("limit", "3").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books", hasSize(1)))
+                .andExpect(jsonPath("$.books[0].book").value("BOOK_D"))
+                .andExpect(jsonPath("$.nextCursor").value(nullValue()));
+
+        mockMvc.perform(get("/api/books").param("limit", "3").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Invalid cursor."));
+    }
+
+    @Test
+    public void testBooksAsNdjson() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/books").accept(MediaType.APPLICATION_NDJSON))
+                .andReturn();
+
+        // One book per line
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("""
+                        {"book":"BOOK_A","title":"Fellowship of the book","price":5,"stock":20,"held":0}
+                        {"book":"BOOK_B","title":"Books and the chamber of books","price":10,"stock":20,"held":0}
+                        {"book":"BOOK_C","title":"The Return of the Book","price":15,"stock":20,"held":0}
+                        {"book":"BOOK_D","title":"Limited Collectors Edition","price":75,"stock":10,"held":0}
+                        """));
+    }
+
     @Test
     public void testOrderBooksWorks() throws Exception {
         String requestJson = """
@@ -93,8 +456,8 @@ public class BookstoreControllerTest {
                 .andExpect(jsonPath("$.totalPrice").value(expectedTotalPrice));
 
         // Verify that they stock was reduced
-        assertEquals(15, inventoryService.getStock().get(Book.BOOK_A));
-        assertEquals(15, inventoryService.getStock().get(Book.BOOK_B));
+        assertEquals(15, inventoryService.getStock(Book.BOOK_A.id()));
+        assertEquals(15, inventoryService.getStock(Book.BOOK_B.id()));
     }
 
     @Test
@@ -148,10 +511,42 @@ public class BookstoreControllerTest {
                 .andExpect(jsonPath("$.errors").value("Fellowship of the book is currently sold out. Please try to place the order again without this book."));
     }
 
+    @Test
+    public void testOrderIsCheckedBeforeTheSoldOutShortcut() throws Exception {
+        inventoryService.setStock(Book.BOOK_D.id(), 0);
+
+        // Sold out and over the max order value, the order value answers first like for any other book
+        mockMvc.perform(post("/api/order")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"book\":\"BOOK_D\",\"quantity\":5}]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", containsString("exceeds maximum")));
+    }
+
+    @Test
+    public void testLimitedBookWithoutCopiesIsTurnedDownBeforeAdmission() throws Exception {
+        AdmissionControl unlimited = (AdmissionControl) ReflectionTestUtils.getField(bookstoreController, "admissionControl");
+        ReflectionTestUtils.setField(bookstoreController, "admissionControl",
+                new AdmissionControl(Catalog.defaultCatalog(), "BOOK_D:1", 1, 1, 0));
+        try {
+            inventoryService.setStock(Book.BOOK_D.id(), 0);
+
+            // Held or sold, there is no copy to take right now
+            mockMvc.perform(post("/api/order")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("[{\"book\":\"BOOK_D\",\"quantity\":1}]"))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.errors", hasSize(1)))
+                    .andExpect(jsonPath("$.errors[0]", containsString("No copies of Limited Collectors Edition are available right now")));
+        } finally {
+            ReflectionTestUtils.setField(bookstoreController, "admissionControl", unlimited);
+        }
+    }
+
     @Test
     public void testOrderBookDOutOfStock() throws Exception {
         // Set Book D's stock to 0 to simulate it being sold out
-        inventoryService.getStock().put(Book.BOOK_D, 0);
+        inventoryService.setStock(Book.BOOK_D.id(), 0);
 
         String requestJson = """
                 [
@@ -168,7 +563,7 @@ public class BookstoreControllerTest {
                         "Please remove Limited Collectors Edition from your order and try again."));
 
         // Verify that the stock for book D didn't change
-        assertEquals(0, inventoryService.getStock().get(Book.BOOK_D));
+        assertEquals(0, inventoryService.getStock(Book.BOOK_D.id()));
 
     }
 
@@ -207,7 +602,7 @@ public class BookstoreControllerTest {
                         "Please try to create a new restock order without Limited Collectors Edition"));
 
         // Ensure that the book D stock wasn't changed
-        int bookDStock = inventoryService.getStock().getOrDefault(Book.BOOK_D, 0);
+        int bookDStock = inventoryService.getStock(Book.BOOK_D.id());
         assertEquals(bookDStock, 10);
     }
 
@@ -231,9 +626,9 @@ public class BookstoreControllerTest {
                 .andExpect(jsonPath("$.message").value("Restocked successfully!"));
 
         // Verify that the stock was updated correctly
-        assertEquals(30, inventoryService.getStock().get(Book.BOOK_A));
-        assertEquals(30, inventoryService.getStock().get(Book.BOOK_B));
-        assertEquals(30, inventoryService.getStock().get(Book.BOOK_C));
+        assertEquals(30, inventoryService.getStock(Book.BOOK_A.id()));
+        assertEquals(30, inventoryService.getStock(Book.BOOK_B.id()));
+        assertEquals(30, inventoryService.getStock(Book.BOOK_C.id()));
     }
 
     @Test
@@ -259,9 +654,9 @@ public class BookstoreControllerTest {
                 .andExpect(jsonPath("$.errors[2]").value("Restock quantity for The Return of the Book must be in multiples of 10."));
 
         // Verify that the stock didn't change
-        assertEquals(20, inventoryService.getStock().get(Book.BOOK_A));
-        assertEquals(20, inventoryService.getStock().get(Book.BOOK_B));
-        assertEquals(20, inventoryService.getStock().get(Book.BOOK_C));
+        assertEquals(20, inventoryService.getStock(Book.BOOK_A.id()));
+        assertEquals(20, inventoryService.getStock(Book.BOOK_B.id()));
+        assertEquals(20, inventoryService.getStock(Book.BOOK_C.id()));
 
     }
 
@@ -287,9 +682,37 @@ public class BookstoreControllerTest {
                 .andExpect(jsonPath("$.errors[2]").value("Restock exceeds maximum allowed quantity of 1000 for book The Return of the Book."));
 
         // Verify that the stock didn't change
-        assertEquals(20, inventoryService.getStock().get(Book.BOOK_A));
-        assertEquals(20, inventoryService.getStock().get(Book.BOOK_B));
-        assertEquals(20, inventoryService.getStock().get(Book.BOOK_C));
+        assertEquals(20, inventoryService.getStock(Book.BOOK_A.id()));
+        assertEquals(20, inventoryService.getStock(Book.BOOK_B.id()));
+        assertEquals(20, inventoryService.getStock(Book.BOOK_C.id()));
+
+    }
+
+    @Test
+    public void testImportRestockManifest() throws Exception {
+        String manifest = """
+                sku,quantity
+                BOOK_A,10
+                BOOK_A,20
+                BOOK_C,40
+                """;
+
+        // Restock manifests need the admin too
+        mockMvc.perform(post("/api/restock/import")
+                        .contentType("text/csv")
+                        .content(manifest))
+                .andExpect(status().isUnauthorized());
+
+        mockMvc.perform(post("/api/restock/import")
+                        .contentType("text/csv")
+                        .content(manifest)
+                        .with(httpBasic("Uncle_Bob_1337", "TomCruiseIsUnder170cm")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lines").value(4))
+                .andExpect(jsonPath("$.restockedItems[0].quantity").value(30))
+                .andExpect(jsonPath("$.restockedItems[1].quantity").value(40));
 
+        assertEquals(50, inventoryService.getStock(Book.BOOK_A.id()));
+        assertEquals(60, inventoryService.getStock(Book.BOOK_C.id()));
     }
 }
@@ -0,0 +1,80 @@
+package com.example.bookstore.dto;
+
+import com.example.bookstore.model.Book;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BinaryWireFormatTest {
+
+    // Smaller than the messages, so reading and writing have to go around the buffer
+    private final byte[] buffer = new byte[8];
+
+    @Test
+    public void testOrderRoundTrips() throws IOException {
+        List<BookRequestDto> order = List.of(
+                new BookRequestDto(Book.BOOK_A, 3),
+                new BookRequestDto(Book.BOOK_D, -1),
+                new BookRequestDto(Book.BOOK_C, Integer.MAX_VALUE),
+                new BookRequestDto(Book.BOOK_B, Integer.MIN_VALUE));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryWireFormat.writeOrder(order, out, buffer);
+
+        assertEquals(order, BinaryWireFormat.readOrder(new ByteArrayInputStream(out.toByteArray()), Book.values().length, buffer));
+        // Small ids and quantities take one byte each
+        out.reset();
+        BinaryWireFormat.writeOrder(List.of(new BookRequestDto(Book.BOOK_A, 3)), out, buffer);
+        assertArrayEquals(new byte[]{1, 0, 6}, out.toByteArray());
+    }
+
+    @Test
+    public void testResponsesRoundTrip() throws IOException {
+        OrderResponseDto response = new OrderResponseDto(List.of(
+                new OrderedBookDto(Book.BOOK_A.getTitle(), 2, Book.BOOK_A.getPrice()),
+                new OrderedBookDto("Ünïcödé títlé, longer than the buffer", 1, 75)),
+                2 * Book.BOOK_A.getPrice() + 75, "Order placed successfully!");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryWireFormat.writeOrderResponse(response, out, buffer);
+        assertEquals(response, BinaryWireFormat.readOrderResponse(new ByteArrayInputStream(out.toByteArray()), buffer));
+
+        List<BookResponseDto> books = List.of(
+                new BookResponseDto("BOOK_A", Book.BOOK_A.getTitle(), Book.BOOK_A.getPrice(), 20, 0),
+                new BookResponseDto("BOOK_D", Book.BOOK_D.getTitle(), Book.BOOK_D.getPrice(), 0, 3));
+        out.reset();
+        BinaryWireFormat.writeBooks(books, out, buffer);
+        assertEquals(books, BinaryWireFormat.readBooks(new ByteArrayInputStream(out.toByteArray()), buffer));
+
+        List<String> errors = List.of("Not enough stock", "");
+        out.reset();
+        BinaryWireFormat.writeErrors(errors, out, buffer);
+        assertEquals(errors, BinaryWireFormat.readErrors(new ByteArrayInputStream(out.toByteArray()), buffer));
+    }
+
+    @Test
+    public void testBrokenOrdersAreRejected() {
+        int books = Book.values().length;
+        // Unknown book id
+        assertThrows(IOException.class, () -> read(new byte[]{1, 4, 2}, books));
+        // Ends in the middle of a line
+        assertThrows(EOFException.class, () -> read(new byte[]{2, 0, 2, 1}, books));
+        // Bytes after the last line
+        assertThrows(IOException.class, () -> read(new byte[]{1, 0, 2, 0}, books));
+        // Varint that never ends, and a count that doesn't fit in an int
+        assertThrows(IOException.class, () -> read(new byte[]{1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0}, books));
+        assertThrows(IOException.class, () -> read(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f}, books));
+        // Book 1 with bits past the 32nd set in its 5th byte, dropping them would read a valid id
+        assertThrows(IOException.class, () -> read(new byte[]{1, (byte) 0x81, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x10, 4}, books));
+    }
+
+    private List<BookRequestDto> read(byte[] bytes, int books) throws IOException {
+        return BinaryWireFormat.readOrder(new ByteArrayInputStream(bytes), books, buffer);
+    }
+}
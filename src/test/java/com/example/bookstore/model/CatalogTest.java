@@ -0,0 +1,74 @@
+package com.example.bookstore.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CatalogTest {
+
+    @Test
+    public void testDefaultCatalogMatchesBooks() {
+        Catalog catalog = Catalog.defaultCatalog();
+
+        assertEquals(4, catalog.size());
+        for (Book book : Book.values()) {
+            assertEquals(book.id(), catalog.idOf(book.name()));
+            assertEquals(book.getTitle(), catalog.title(book.id()));
+            assertEquals(book.getPrice(), catalog.price(book.id()));
+        }
+        assertFalse(catalog.isRestockable(Book.BOOK_D.id()));
+        assertEquals(-1, catalog.idOf("BOOK_F"));
+    }
+
+    @Test
+    public void testReadCatalogFile() throws Exception {
+        String file = """
+                # sku,price,stock,restockable,title
+                SKU-1,12,100,true,Dune
+                SKU-2,30,5,false,Signed copy, first print
+
+                SKU-3,8,0,true,Ærø på bøger
+                """;
+
+        Catalog catalog = Catalog.read(new BufferedReader(new StringReader(file)));
+
+        assertEquals(3, catalog.size());
+        int signed = catalog.idOf("SKU-2");
+        assertEquals("Signed copy, first print", catalog.title(signed));
+        assertEquals(30, catalog.price(signed));
+        assertEquals(5, catalog.initialStock(signed));
+        assertFalse(catalog.isRestockable(signed));
+        assertEquals("Ærø på bøger", catalog.title(catalog.idOf("SKU-3")));
+        assertTrue(catalog.isRestockable(catalog.idOf("SKU-3")));
+    }
+
+    @Test
+    public void testLookupOfManySkus() {
+        Catalog.Builder builder = new Catalog.Builder();
+        for (int i = 0; i < 100_000; i++) {
+            builder.add("SKU-" + i, "Title " + i, i % 100, 10, true);
+        }
+        Catalog catalog = builder.build();
+
+        for (int i = 0; i < 100_000; i++) {
+            assertEquals(i, catalog.idOf("SKU-" + i));
+        }
+        assertEquals("SKU-99999", catalog.sku(99_999));
+        assertEquals(-1, catalog.idOf("SKU-100000"));
+    }
+
+    @Test
+    public void testDuplicateSkuIsRejected() {
+        Catalog.Builder builder = new Catalog.Builder()
+                .add("SKU-1", "One", 1, 1, true)
+                .add("SKU-1", "Also one", 1, 1, true);
+
+        assertThrows(IllegalArgumentException.class, builder::build);
+    }
+}
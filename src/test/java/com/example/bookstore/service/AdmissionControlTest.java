@@ -0,0 +1,90 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdmissionControlTest {
+
+    private static final List<BookRequestDto> BOOK_D_ORDER = List.of(new BookRequestDto(Book.BOOK_D, 1));
+
+    @Test
+    public void testOrdersOverTheBurstAreThrottledWithoutWaiting() {
+        AdmissionControl admissionControl = new AdmissionControl(Catalog.defaultCatalog(), "BOOK_D:1", 2, 100, 0);
+
+        assertEquals(AdmissionControl.Decision.ADMITTED, admissionControl.admit(BOOK_D_ORDER));
+        assertEquals(AdmissionControl.Decision.ADMITTED, admissionControl.admit(BOOK_D_ORDER));
+        assertEquals(AdmissionControl.Decision.THROTTLED, admissionControl.admit(BOOK_D_ORDER));
+
+        // Other books and lines without a quantity aren't limited
+        assertEquals(AdmissionControl.Decision.ADMITTED, admissionControl.admit(List.of(new BookRequestDto(Book.BOOK_A, 1))));
+        assertEquals(AdmissionControl.Decision.ADMITTED, admissionControl.admit(List.of(new BookRequestDto(Book.BOOK_D, 0))));
+        assertTrue(admissionControl.isLimited(Book.BOOK_D.id()));
+        assertFalse(admissionControl.isLimited(Book.BOOK_A.id()));
+    }
+
+    @Test
+    public void testOrderOverTheRateWaitsForItsToken() {
+        AdmissionControl admissionControl = new AdmissionControl(Catalog.defaultCatalog(), "BOOK_D:10", 1, 100, 1000);
+
+        assertEquals(AdmissionControl.Decision.ADMITTED, admissionControl.admit(BOOK_D_ORDER));
+        long start = System.nanoTime();
+        assertEquals(AdmissionControl.Decision.ADMITTED, admissionControl.admit(BOOK_D_ORDER));
+        // One order per 100ms, the second one had to wait for most of that
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testOrdersAreTurnedAwayWhenTooManyAreWaiting() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(Catalog.defaultCatalog(), "BOOK_D:2", 1, 1, 5000);
+
+        assertEquals(AdmissionControl.Decision.ADMITTED, admissionControl.admit(BOOK_D_ORDER));
+        // Takes the only waiting spot for the next token, half a second away
+        CompletableFuture<AdmissionControl.Decision> waiting = CompletableFuture.supplyAsync(() -> admissionControl.admit(BOOK_D_ORDER));
+        Thread.sleep(100);
+
+        assertEquals(AdmissionControl.Decision.QUEUE_FULL, admissionControl.admit(BOOK_D_ORDER));
+        assertEquals(AdmissionControl.Decision.ADMITTED, waiting.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testUnknownBookIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionControl(Catalog.defaultCatalog(), "BOOK_X:10", 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionControl(Catalog.defaultCatalog(), "BOOK_D", 1, 1, 1));
+    }
+
+    @Test
+    public void testZeroRateLeavesTheBookUnlimited() {
+        AdmissionControl admissionControl = new AdmissionControl(Catalog.defaultCatalog(), "BOOK_D:0", 1, 1, 0);
+
+        assertFalse(admissionControl.isLimited(Book.BOOK_D.id()));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(AdmissionControl.Decision.ADMITTED, admissionControl.admit(BOOK_D_ORDER));
+        }
+    }
+
+    @Test
+    public void testZeroBurstLetsOneOrderThroughAtATime() {
+        AdmissionControl admissionControl = new AdmissionControl(Catalog.defaultCatalog(), "BOOK_D:1", 0, 100, 0);
+
+        assertEquals(AdmissionControl.Decision.ADMITTED, admissionControl.admit(BOOK_D_ORDER));
+        assertEquals(AdmissionControl.Decision.THROTTLED, admissionControl.admit(BOOK_D_ORDER));
+    }
+
+    @Test
+    public void testInvalidSettingsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionControl(Catalog.defaultCatalog(), "BOOK_D:-1", 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionControl(Catalog.defaultCatalog(), "BOOK_D:fast", 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionControl(Catalog.defaultCatalog(), "BOOK_D:10", -1, 1, 1));
+    }
+}
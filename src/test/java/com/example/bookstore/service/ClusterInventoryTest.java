@@ -0,0 +1,267 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.LocalCluster;
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Three nodes over loopback, orders go to one node and are reserved on the nodes owning the books
+public class ClusterInventoryTest {
+
+    private static final int BOOKS = 20;
+
+    private static Path catalogFile;
+    private static LocalCluster cluster;
+    private static final HttpClient client = HttpClient.newHttpClient();
+
+    // Two books owned by different nodes, and a node owning neither when there is one
+    private static String bookA;
+    private static String bookB;
+    private static int coordinator;
+
+    @BeforeAll
+    static void startCluster() throws Exception {
+        StringBuilder catalog = new StringBuilder();
+        for (int i = 0; i < BOOKS; i++) {
+            catalog.append("BOOK_").append(i).append(",5,10,true,Title of book ").append(i).append('\n');
+        }
+        catalogFile = Files.createTempFile("cluster-catalog", ".csv");
+        Files.writeString(catalogFile, catalog);
+        cluster = LocalCluster.start(3, "bookstore.catalog.file=" + catalogFile);
+
+        bookA = "BOOK_0";
+        for (int i = 1; i < BOOKS && bookB == null; i++) {
+            if (cluster.ownerOf("BOOK_" + i) != cluster.ownerOf(bookA)) {
+                bookB = "BOOK_" + i;
+            }
+        }
+        coordinator = 3 - cluster.ownerOf(bookA) - cluster.ownerOf(bookB);
+    }
+
+    @AfterAll
+    static void stopCluster() throws Exception {
+        cluster.close();
+        Files.delete(catalogFile);
+    }
+
+    @BeforeEach
+    void resetStock() {
+        for (int node = 0; node < cluster.size(); node++) {
+            InventoryService inventoryService = cluster.bean(node, InventoryService.class);
+            for (int book = 0; book < BOOKS; book++) {
+                inventoryService.setStock(book, 10);
+            }
+        }
+    }
+
+    @Test
+    public void testOrderSpanningShardsIsReservedOnEveryOwner() throws Exception {
+        HttpResponse<String> response = post(coordinator, "/api/order",
+                "[{\"book\":\"" + bookA + "\",\"quantity\":2},{\"book\":\"" + bookB + "\",\"quantity\":3}]");
+
+        assertEquals(200, response.statusCode(), response.body());
+        assertEquals(8, stockOnOwner(bookA));
+        assertEquals(7, stockOnOwner(bookB));
+        assertEquals(0, heldOnOwner(bookA));
+        assertEquals(0, heldOnOwner(bookB));
+    }
+
+    @Test
+    public void testOrderSpanningShardsIsAllOrNothing() throws Exception {
+        HttpResponse<String> response = post(coordinator, "/api/order",
+                "[{\"book\":\"" + bookA + "\",\"quantity\":2},{\"book\":\"" + bookB + "\",\"quantity\":11}]");
+
+        assertEquals(400, response.statusCode());
+        assertTrue(response.body().contains("Title of book " + bookB.substring(5) + " is currently sold out"), response.body());
+        // The part that could be held was released
+        assertEquals(10, stockOnOwner(bookA));
+        assertEquals(0, heldOnOwner(bookA));
+        assertEquals(10, stockOnOwner(bookB));
+    }
+
+    @Test
+    public void testOrderIsSentToTheOwnerOfItsBook() throws Exception {
+        int owner = cluster.ownerOf(bookA);
+        int other = (owner + 1) % cluster.size();
+
+        HttpResponse<String> response = post(other, "/api/order", "[{\"book\":\"" + bookA + "\",\"quantity\":4}]");
+
+        assertEquals(200, response.statusCode(), response.body());
+        assertEquals(6, stockOnOwner(bookA));
+        // Held on the owner first like a part of a bigger order, then confirmed
+        assertEquals(0, heldOnOwner(bookA));
+        // The node that took the order doesn't keep stock of books it doesn't own
+        assertEquals(10, cluster.bean(other, InventoryService.class).getStock(bookId(bookA)));
+    }
+
+    @Test
+    public void testRestockIsSentToTheOwner() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(cluster.url(coordinator) + "/api/restock"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Basic " + Base64.getEncoder().encodeToString(
+                        "Uncle_Bob_1337:TomCruiseIsUnder170cm".getBytes(StandardCharsets.UTF_8)))
+                .POST(HttpRequest.BodyPublishers.ofString("[{\"book\":\"" + bookA + "\",\"quantity\":20}]"))
+                .build();
+
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode(), response.body());
+        assertEquals(30, stockOnOwner(bookA));
+    }
+
+    @Test
+    public void testBatchOrdersAreSentToTheOwnerOfTheirBooks() throws Exception {
+        int other = (cluster.ownerOf(bookA) + 1) % cluster.size();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(cluster.url(other) + "/api/orders/batch"))
+                .header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofString("[{\"book\":\"" + bookA + "\",\"quantity\":3}]\n"
+                        + "[{\"book\":\"" + bookA + "\",\"quantity\":2},{\"book\":\"" + bookB + "\",\"quantity\":1}]\n"))
+                .build();
+
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode(), response.body());
+        assertEquals(5, stockOnOwner(bookA));
+        assertEquals(9, stockOnOwner(bookB));
+        assertEquals(10, cluster.bean(other, InventoryService.class).getStock(bookId(bookA)));
+    }
+
+    @Test
+    public void testHoldsAreTurnedDownInACluster() throws Exception {
+        HttpResponse<String> response = post(coordinator, "/api/holds", "[{\"book\":\"" + bookA + "\",\"quantity\":1}]");
+
+        assertEquals(400, response.statusCode());
+        assertTrue(response.body().contains("Holds aren't available"), response.body());
+        assertEquals(10, stockOnOwner(bookA));
+        assertEquals(0, heldOnOwner(bookA));
+    }
+
+    @Test
+    public void testShardEndpointsNeedTheClusterToken() throws Exception {
+        HttpResponse<String> response = post(cluster.ownerOf(bookA), "/internal/shard/prepare",
+                "{\"books\":[" + bookId(bookA) + "],\"quantities\":[1]}");
+        // Turned away by Spring Security before the controller runs
+        assertEquals(401, response.statusCode());
+
+        HttpRequest wrongToken = HttpRequest.newBuilder(URI.create(cluster.url(cluster.ownerOf(bookA)) + "/internal/shard/restock"))
+                .header("Content-Type", "application/json")
+                .header(ClusterInventory.TOKEN_HEADER, "not-the-token")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"books\":[" + bookId(bookA) + "],\"quantities\":[10]}"))
+                .build();
+        assertEquals(401, client.send(wrongToken, HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(10, stockOnOwner(bookA));
+    }
+
+    @Test
+    public void testShardRestockIsCheckedByTheOwner() throws Exception {
+        int owner = cluster.ownerOf(bookA);
+        for (int quantity : new int[]{-10, 15, 1010}) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(cluster.url(owner) + "/internal/shard/restock"))
+                    .header("Content-Type", "application/json")
+                    .header(ClusterInventory.TOKEN_HEADER, LocalCluster.TOKEN)
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"books\":[" + bookId(bookA) + "],\"quantities\":[" + quantity + "]}"))
+                    .build();
+
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(400, response.statusCode(), response.body());
+            assertEquals(10, stockOnOwner(bookA));
+        }
+    }
+
+    @Test
+    public void testClusterWithoutTokenDoesNotStart() {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+
+        assertThrows(IllegalArgumentException.class, () -> new ClusterInventory(inventoryService, Optional.empty(), null, null, null,
+                "http://127.0.0.1:8080", 0, "", 30, 2000));
+        assertThrows(IllegalArgumentException.class, () -> new ClusterInventory(inventoryService, Optional.empty(), null, null, null,
+                "http://127.0.0.1:8080", 0, "  ", 30, 2000));
+    }
+
+    @Test
+    public void testOrderForThisNodeGoesThroughTheSequencer() throws Exception {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        AtomicInteger sequenced = new AtomicInteger();
+        InventorySequencer sequencer = new InventorySequencer(inventoryService, 8, 8) {
+            @Override
+            public CompletableFuture<int[]> reserve(List<BookRequestDto> orderItems) {
+                sequenced.incrementAndGet();
+                return super.reserve(orderItems);
+            }
+        };
+        sequencer.start();
+        try {
+            ClusterInventory clusterInventory = new ClusterInventory(inventoryService, Optional.of(sequencer), null, null, null,
+                    "http://127.0.0.1:8080", 0, LocalCluster.TOKEN, 30, 2000);
+
+            assertEquals(0, clusterInventory.reserve(List.of(new BookRequestDto(Book.BOOK_A.id(), 2))).length);
+            assertEquals(1, sequenced.get());
+            assertEquals(18, inventoryService.getStock(Book.BOOK_A.id()));
+        } finally {
+            sequencer.stop();
+        }
+    }
+
+    @Test
+    public void testRestockWithANodeDownRestocksNothing() {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        // Nothing listens on port 1, the second node can't be reached
+        ClusterInventory clusterInventory = new ClusterInventory(inventoryService, Optional.empty(), null,
+                new RestockValidator(inventoryService.getCatalog()), new ObjectMapper(),
+                "http://127.0.0.1:8080,http://127.0.0.1:1", 0, LocalCluster.TOKEN, 30, 2000);
+        List<BookRequestDto> restockItems = List.of(new BookRequestDto(Book.BOOK_A.id(), 10),
+                new BookRequestDto(Book.BOOK_B.id(), 10), new BookRequestDto(Book.BOOK_C.id(), 10));
+        assertTrue(restockItems.stream().anyMatch(item -> clusterInventory.owns(item.book())));
+        assertTrue(restockItems.stream().anyMatch(item -> !clusterInventory.owns(item.book())));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> clusterInventory.restock(restockItems));
+
+        assertTrue(e.getMessage().contains("nothing was restocked"), e.getMessage());
+        for (BookRequestDto item : restockItems) {
+            assertEquals(Book.values()[item.book()].getInitialStock(), inventoryService.getStock(item.book()));
+        }
+    }
+
+    private static HttpResponse<String> post(int node, String path, String json) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(cluster.url(node) + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static int bookId(String sku) {
+        return cluster.bean(0, Catalog.class).idOf(sku);
+    }
+
+    private static int stockOnOwner(String sku) {
+        return cluster.bean(cluster.ownerOf(sku), InventoryService.class).getStock(bookId(sku));
+    }
+
+    private static int heldOnOwner(String sku) {
+        return cluster.bean(cluster.ownerOf(sku), InventoryService.class).getHeld(bookId(sku));
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HoldServiceTest {
+
+    // The wheel thread isn't started, the tests move time forward themselves
+    private final InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+    private final HoldService holdService = new HoldService(inventoryService, 100, 8);
+
+    private final List<BookRequestDto> twoOfD = List.of(new BookRequestDto(Book.BOOK_D, 2));
+
+    @Test
+    public void testHeldBooksCantBeOrdered() {
+        HoldService.Hold hold = holdService.place(twoOfD, 60).hold();
+
+        assertEquals(8, inventoryService.getStock(Book.BOOK_D.id()));
+        assertEquals(2, inventoryService.getHeld(Book.BOOK_D.id()));
+        assertArrayEquals(new int[]{Book.BOOK_D.id()},
+                inventoryService.tryReserve(List.of(new BookRequestDto(Book.BOOK_D, 9))));
+
+        assertEquals(hold, holdService.confirm(hold.getId()));
+        assertEquals(8, inventoryService.getStock(Book.BOOK_D.id()));
+        assertEquals(0, inventoryService.getHeld(Book.BOOK_D.id()));
+        // Already confirmed
+        assertNull(holdService.confirm(hold.getId()));
+        assertFalse(holdService.release(hold.getId()));
+    }
+
+    @Test
+    public void testReleaseGivesBooksBack() {
+        HoldService.Hold hold = holdService.place(twoOfD, 60).hold();
+        assertTrue(holdService.release(hold.getId()));
+        assertEquals(10, inventoryService.getStock(Book.BOOK_D.id()));
+        assertEquals(0, inventoryService.getHeld(Book.BOOK_D.id()));
+    }
+
+    @Test
+    public void testHoldFailsWithoutEnoughStock() {
+        HoldService.Placement placement = holdService.place(List.of(new BookRequestDto(Book.BOOK_D, 11)), 60);
+        assertNull(placement.hold());
+        assertArrayEquals(new int[]{Book.BOOK_D.id()}, placement.missingBooks());
+        assertEquals(10, inventoryService.getStock(Book.BOOK_D.id()));
+    }
+
+    @Test
+    public void testHoldsExpireAfterTheirTime() {
+        long now = System.currentTimeMillis();
+        // The wheel has 8 buckets of 100ms, so these go around it several times before they expire
+        HoldService.Hold shortHold = holdService.place(List.of(new BookRequestDto(Book.BOOK_A, 1)), 1).hold();
+        HoldService.Hold longHold = holdService.place(List.of(new BookRequestDto(Book.BOOK_A, 2)), 5).hold();
+
+        holdService.advanceTo(now + 500);
+        assertEquals(3, inventoryService.getHeld(Book.BOOK_A.id()));
+
+        holdService.advanceTo(shortHold.getExpiresAt() + 100);
+        assertEquals(2, inventoryService.getHeld(Book.BOOK_A.id()));
+        assertNull(holdService.confirm(shortHold.getId()));
+
+        holdService.advanceTo(longHold.getExpiresAt() - 200);
+        assertEquals(2, inventoryService.getHeld(Book.BOOK_A.id()));
+        holdService.advanceTo(longHold.getExpiresAt() + 100);
+        assertEquals(0, inventoryService.getHeld(Book.BOOK_A.id()));
+        assertEquals(20, inventoryService.getStock(Book.BOOK_A.id()));
+        assertEquals(0, holdService.size());
+    }
+
+    @Test
+    public void testHoldsStillExpireAfterOneFailsTo() {
+        // The first hold given back fails, as a journal write on the way could
+        InventoryService failingOnce = new InventoryService(Catalog.defaultCatalog()) {
+            private boolean failed;
+
+            @Override
+            public void releaseHold(List<BookRequestDto> items) {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException("Journal write failed");
+                }
+                super.releaseHold(items);
+            }
+        };
+        HoldService holds = new HoldService(failingOnce, 100, 8);
+        HoldService.Hold first = holds.place(List.of(new BookRequestDto(Book.BOOK_A, 1)), 1).hold();
+        holds.place(List.of(new BookRequestDto(Book.BOOK_D, 2)), 1);
+        HoldService.Hold later = holds.place(List.of(new BookRequestDto(Book.BOOK_B, 3)), 2).hold();
+
+        // The hold placed right after expires in the same pass and still gives its books back
+        holds.advanceTo(first.getExpiresAt() + 500);
+        assertEquals(1, failingOnce.getHeld(Book.BOOK_A.id()));
+        assertEquals(0, failingOnce.getHeld(Book.BOOK_D.id()));
+        assertEquals(3, failingOnce.getHeld(Book.BOOK_B.id()));
+
+        holds.advanceTo(later.getExpiresAt() + 100);
+        assertEquals(0, failingOnce.getHeld(Book.BOOK_B.id()));
+        assertEquals(0, holds.size());
+    }
+
+    @Test
+    public void testManyHoldsExpireOnce() {
+        inventoryService.setStock(Book.BOOK_A.id(), 10_000);
+        List<HoldService.Hold> holds = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            holds.add(holdService.place(List.of(new BookRequestDto(Book.BOOK_A, 1)), 1 + i % 30).hold());
+        }
+        // Confirm a few, the rest expire
+        for (int i = 0; i < 100; i++) {
+            holdService.confirm(holds.get(i).getId());
+        }
+
+        holdService.advanceTo(System.currentTimeMillis() + 31_000);
+        assertEquals(0, inventoryService.getHeld(Book.BOOK_A.id()));
+        assertEquals(9_900, inventoryService.getStock(Book.BOOK_A.id()));
+        assertEquals(0, holdService.size());
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.MutableClock;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IdempotencyCacheTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final IdempotencyCache cache = new IdempotencyCache(Duration.ofMinutes(10), 2, clock);
+    private final AtomicInteger orders = new AtomicInteger();
+
+    private ResponseEntity<?> order() {
+        return ResponseEntity.ok("order " + orders.incrementAndGet());
+    }
+
+    @Test
+    public void testRetryGetsTheFirstResponse() {
+        assertEquals("order 1", cache.execute("key", 1, this::order).getBody());
+
+        ResponseEntity<?> replayed = cache.execute("key", 1, this::order);
+        assertEquals("order 1", replayed.getBody());
+        assertEquals("true", replayed.getHeaders().getFirst(IdempotencyCache.REPLAYED_HEADER));
+        assertEquals(1, orders.get());
+    }
+
+    @Test
+    public void testKeyCantBeReusedForAnotherOrder() {
+        cache.execute("key", 1, this::order);
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, cache.execute("key", 2, this::order).getStatusCode());
+        assertEquals(1, orders.get());
+    }
+
+    @Test
+    public void testKeysExpireAndCacheIsBounded() {
+        cache.execute("a", 1, this::order);
+        clock.advance(Duration.ofMinutes(10));
+        assertEquals("order 2", cache.execute("a", 1, this::order).getBody());
+
+        cache.execute("b", 1, this::order);
+        cache.execute("c", 1, this::order);
+        // a was the oldest key, so it made room for c
+        assertEquals(2, cache.size());
+        assertEquals("order 5", cache.execute("a", 1, this::order).getBody());
+    }
+
+    @Test
+    public void testFailedOrderIsNotRemembered() {
+        assertThrows(IllegalStateException.class, () -> cache.execute("key", 1, () -> {
+            throw new IllegalStateException("boom");
+        }));
+        assertEquals("order 1", cache.execute("key", 1, this::order).getBody());
+    }
+
+    @Test
+    public void testOrderTurnedAwayByAdmissionIsRunAgain() {
+        ResponseEntity<?> throttled = cache.execute("key", 1, () -> ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(IdempotencyCache.RETRYABLE_HEADER, "true")
+                .build());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, throttled.getStatusCode());
+
+        assertEquals("order 1", cache.execute("key", 1, this::order).getBody());
+    }
+
+    @Test
+    public void testOrderPartlyPlacedByTheClusterIsReplayed() {
+        ResponseEntity<?> failed = cache.execute("key", 1, () -> {
+            orders.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("error", "A shard didn't confirm its part of the order, it may have been placed in part or in full."));
+        });
+
+        ResponseEntity<?> retried = cache.execute("key", 1, this::order);
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, retried.getStatusCode());
+        assertEquals(failed.getBody(), retried.getBody());
+        assertEquals("true", retried.getHeaders().getFirst(IdempotencyCache.REPLAYED_HEADER));
+        assertEquals(1, orders.get());
+    }
+
+    @Test
+    public void testConcurrentDuplicatesWaitForTheFirstOrder() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<ResponseEntity<?>> first = executor.submit(() -> cache.execute("key", 1, () -> {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return order();
+            }));
+            running.await();
+
+            List<Future<ResponseEntity<?>>> duplicates = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                duplicates.add(executor.submit(() -> cache.execute("key", 1, this::order)));
+            }
+            awaitWaiting("key", 7);
+            release.countDown();
+
+            assertEquals("order 1", first.get().getBody());
+            for (Future<ResponseEntity<?>> duplicate : duplicates) {
+                assertEquals("order 1", duplicate.get().getBody());
+            }
+            assertEquals(1, orders.get());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(cache.size() <= 2);
+    }
+
+    @Test
+    public void testOrderStillRunningIsNeverEvicted() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ResponseEntity<?>> slow = executor.submit(() -> cache.execute("slow", 1, () -> {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return order();
+            }));
+            running.await();
+
+            // Two more keys fill the cache while the slow order runs, it stays in
+            cache.execute("b", 1, this::order);
+            cache.execute("c", 1, this::order);
+            assertEquals(3, cache.size());
+
+            Future<ResponseEntity<?>> retry = executor.submit(() -> cache.execute("slow", 1, this::order));
+            awaitWaiting("slow", 1);
+            release.countDown();
+
+            assertEquals("order 3", slow.get().getBody());
+            assertEquals("order 3", retry.get().getBody());
+            assertEquals(3, orders.get());
+        } finally {
+            executor.shutdownNow();
+        }
+        // Evicted once it was done
+        assertEquals(2, cache.size());
+    }
+
+    private void awaitWaiting(String key, int requests) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.waiting(key) < requests) {
+            assertTrue(System.nanoTime() < deadline, "Requests never waited for " + key);
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class InventoryJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private InventoryJournal openJournal(InventoryService inventoryService, long snapshotEvery) throws Exception {
+        InventoryJournal journal = new InventoryJournal(inventoryService, directory.toString(), "none", 10, 1, snapshotEvery);
+        journal.open();
+        return journal;
+    }
+
+    @Test
+    public void testStockSurvivesRestart() throws Exception {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        InventoryJournal journal = openJournal(inventoryService, 1_000_000);
+
+        inventoryService.tryReserve(List.of(
+                new BookRequestDto(Book.BOOK_A, 5),
+                new BookRequestDto(Book.BOOK_D, 10)));
+        inventoryService.restockBook(Book.BOOK_B.id(), 30);
+        journal.close();
+
+        // A new service starts at the defaults and gets the journaled stock back
+        InventoryService restarted = new InventoryService(Catalog.defaultCatalog());
+        openJournal(restarted, 1_000_000).close();
+        assertEquals(15, restarted.getStock(Book.BOOK_A.id()));
+        assertEquals(50, restarted.getStock(Book.BOOK_B.id()));
+        assertEquals(20, restarted.getStock(Book.BOOK_C.id()));
+        assertEquals(0, restarted.getStock(Book.BOOK_D.id()));
+    }
+
+    @Test
+    public void testSnapshotReplacesOlderLogs() throws Exception {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        InventoryJournal journal = openJournal(inventoryService, 70_000);
+
+        // One snapshot along the way, the 60 000 records after it don't fit in one 1 MB segment
+        for (int i = 0; i < 130_000; i++) {
+            inventoryService.restockBook(Book.BOOK_C.id(), 1);
+        }
+        journal.close();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count()); // One snapshot and the current log
+        }
+
+        InventoryService restarted = new InventoryService(Catalog.defaultCatalog());
+        openJournal(restarted, 70_000).close();
+        assertEquals(130_020, restarted.getStock(Book.BOOK_C.id()));
+    }
+
+    @Test
+    public void testTornRecordAtEndOfLogIsIgnored() throws Exception {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        InventoryJournal journal = openJournal(inventoryService, 1_000_000);
+        inventoryService.restockBook(Book.BOOK_A.id(), 10);
+        inventoryService.restockBook(Book.BOOK_A.id(), 10);
+        journal.close();
+
+        // Break the payload of the second record, as if the app died halfway through writing it
+        Path log;
+        try (Stream<Path> files = Files.list(directory)) {
+            log = files.filter(file -> file.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            file.seek(20 + 8 + 8);
+            file.writeInt(99);
+        }
+
+        InventoryService restarted = new InventoryService(Catalog.defaultCatalog());
+        openJournal(restarted, 1_000_000).close();
+        assertEquals(30, restarted.getStock(Book.BOOK_A.id()));
+    }
+}
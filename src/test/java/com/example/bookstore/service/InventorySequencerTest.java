@@ -0,0 +1,126 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class InventorySequencerTest {
+
+    private InventoryService inventoryService;
+    private InventorySequencer inventorySequencer;
+
+    @BeforeEach
+    void startSequencer() {
+        inventoryService = new InventoryService(Catalog.defaultCatalog());
+        // Small buffer so the test also runs into a full ring
+        inventorySequencer = new InventorySequencer(inventoryService, 8, 4);
+        inventorySequencer.start();
+    }
+
+    @AfterEach
+    void stopSequencer() throws InterruptedException {
+        inventorySequencer.stop();
+    }
+
+    @Test
+    public void testSequencedReserveKeepsWholeOrderRejection() {
+        inventoryService.setStock(Book.BOOK_D.id(), 1);
+
+        int[] missing = inventorySequencer.reserve(List.of(
+                new BookRequestDto(Book.BOOK_A, 5),
+                new BookRequestDto(Book.BOOK_D, 2))).join();
+
+        assertArrayEquals(new int[]{Book.BOOK_D.id()}, missing);
+        assertEquals(20, inventoryService.getStock(Book.BOOK_A.id()));
+        assertEquals(1, inventoryService.getStock(Book.BOOK_D.id()));
+    }
+
+    @Test
+    public void testSequencedOrdersAndRestocksAreAllApplied() {
+        List<CompletableFuture<int[]>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(inventorySequencer.restock(List.of(new BookRequestDto(Book.BOOK_A, 10))));
+            results.add(inventorySequencer.reserve(List.of(new BookRequestDto(Book.BOOK_A, 10))));
+        }
+
+        // Restocks run before their order in the ring, so every order finds stock
+        results.forEach(result -> assertEquals(0, result.join().length));
+        assertEquals(20, inventoryService.getStock(Book.BOOK_A.id()));
+    }
+
+    @Test
+    public void testHoldsGoThroughTheSequencer() {
+        inventoryService.setStock(Book.BOOK_D.id(), 3);
+        HoldService holdService = new HoldService(inventoryService, Optional.of(inventorySequencer), 100, 8);
+
+        HoldService.Hold confirmed = holdService.place(List.of(new BookRequestDto(Book.BOOK_D, 2)), 60).hold();
+        HoldService.Hold released = holdService.place(List.of(new BookRequestDto(Book.BOOK_D, 1)), 60).hold();
+        assertArrayEquals(new int[]{Book.BOOK_D.id()},
+                holdService.place(List.of(new BookRequestDto(Book.BOOK_D, 1)), 60).missingBooks());
+        assertEquals(0, inventoryService.getStock(Book.BOOK_D.id()));
+        assertEquals(3, inventoryService.getHeld(Book.BOOK_D.id()));
+
+        holdService.confirm(confirmed.getId());
+        holdService.release(released.getId());
+        assertEquals(1, inventoryService.getStock(Book.BOOK_D.id()));
+        assertEquals(0, inventoryService.getHeld(Book.BOOK_D.id()));
+
+        // An expired hold is given back by the writer too, without the wheel waiting for it
+        HoldService.Hold expired = holdService.place(List.of(new BookRequestDto(Book.BOOK_D, 1)), 1).hold();
+        holdService.advanceTo(expired.getExpiresAt() + 1_000);
+        // An empty order published after the release is only done once the release is
+        inventorySequencer.reserve(List.of()).join();
+        assertEquals(1, inventoryService.getStock(Book.BOOK_D.id()));
+        assertEquals(0, inventoryService.getHeld(Book.BOOK_D.id()));
+    }
+
+    @Test
+    public void testCommandsAfterStopFailInsteadOfWaiting() throws Exception {
+        inventorySequencer.stop();
+
+        CompletableFuture<int[]> late = inventorySequencer.reserve(List.of(new BookRequestDto(Book.BOOK_A, 1)));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> late.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        assertEquals(20, inventoryService.getStock(Book.BOOK_A.id()));
+    }
+
+    @Test
+    public void testCommandsLeftWhenTheWriterDiesFail() throws Exception {
+        // The writer dies on the first order, whatever it hadn't completed yet must not be left waiting
+        InventoryService failing = new InventoryService(Catalog.defaultCatalog()) {
+            @Override
+            public int[] tryReserve(List<BookRequestDto> orderItems) {
+                throw new OutOfMemoryError("Out of memory applying the order");
+            }
+        };
+        InventorySequencer dying = new InventorySequencer(failing, 8, 4);
+        dying.start();
+        try {
+            List<CompletableFuture<int[]>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                results.add(dying.reserve(List.of(new BookRequestDto(Book.BOOK_A, 1))));
+            }
+            for (CompletableFuture<int[]> result : results) {
+                ExecutionException failure = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+                assertInstanceOf(IllegalStateException.class, failure.getCause());
+            }
+        } finally {
+            dying.stop();
+        }
+    }
+}
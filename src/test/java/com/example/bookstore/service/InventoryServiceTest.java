@@ -1,35 +1,390 @@
 package com.example.bookstore.service;
 
+import com.example.bookstore.dto.BookRequestDto;
 import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class InventoryServiceTest {
     @Test
     public void testInventoryServiceHasBookInStock() {
-        InventoryService inventoryService = new InventoryService();
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
 
-        assertTrue(inventoryService.hasBookInStock(Book.BOOK_A, 1));
-        assertTrue(inventoryService.hasBookInStock(Book.BOOK_B, 1));
-        assertTrue(inventoryService.hasBookInStock(Book.BOOK_C, 1));
-        assertTrue(inventoryService.hasBookInStock(Book.BOOK_D, 1));
+        assertTrue(inventoryService.hasBookInStock(Book.BOOK_A.id(), 1));
+        assertTrue(inventoryService.hasBookInStock(Book.BOOK_B.id(), 1));
+        assertTrue(inventoryService.hasBookInStock(Book.BOOK_C.id(), 1));
+        assertTrue(inventoryService.hasBookInStock(Book.BOOK_D.id(), 1));
     }
 
     @Test
     public void testInventoryServiceRestock() {
         // Initialize inventory with 0 of BOOK_A
-        InventoryService inventoryService = new InventoryService();
-        inventoryService.getStock().put(Book.BOOK_A, 0);
-        assertFalse(inventoryService.hasBookInStock(Book.BOOK_A, 10));
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        inventoryService.setStock(Book.BOOK_A.id(), 0);
+        assertFalse(inventoryService.hasBookInStock(Book.BOOK_A.id(), 10));
 
         // Restock 10 of BOOK_A and assert that it was restocked
-        inventoryService.restockBook(Book.BOOK_A, 10);
-        assertTrue(inventoryService.hasBookInStock(Book.BOOK_A, 10));
+        inventoryService.restockBook(Book.BOOK_A.id(), 10);
+        assertTrue(inventoryService.hasBookInStock(Book.BOOK_A.id(), 10));
 
         // Order 10 of BOOK_A and ensure it was removed
-        inventoryService.orderBook(Book.BOOK_A, 10);
-        assertFalse(inventoryService.hasBookInStock(Book.BOOK_A, 10));
+        inventoryService.orderBook(Book.BOOK_A.id(), 10);
+        assertFalse(inventoryService.hasBookInStock(Book.BOOK_A.id(), 10));
+    }
+
+    @Test
+    public void testTryReserveIsAllOrNothing() {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        inventoryService.setStock(Book.BOOK_D.id(), 1);
+
+        // BOOK_D is short, so BOOK_A must not be taken either
+        int[] missing = inventoryService.tryReserve(List.of(
+                new BookRequestDto(Book.BOOK_A, 5),
+                new BookRequestDto(Book.BOOK_D, 2)));
+        assertArrayEquals(new int[]{Book.BOOK_D.id()}, missing);
+        assertEquals(20, inventoryService.getStock(Book.BOOK_A.id()));
+        assertEquals(1, inventoryService.getStock(Book.BOOK_D.id()));
+
+        // Lines for the same book are added together before checking the stock
+        missing = inventoryService.tryReserve(List.of(
+                new BookRequestDto(Book.BOOK_A, 15),
+                new BookRequestDto(Book.BOOK_A, 15)));
+        assertArrayEquals(new int[]{Book.BOOK_A.id()}, missing);
+        assertEquals(20, inventoryService.getStock(Book.BOOK_A.id()));
+    }
+
+    @Test
+    public void testLargeOrderIsMergedPerBook() {
+        Catalog.Builder builder = new Catalog.Builder();
+        for (int i = 0; i < 500; i++) {
+            builder.add("BOOK_" + i, "Title of book " + i, 5, 10, true);
+        }
+        InventoryService inventoryService = new InventoryService(builder.build());
+        AtomicInteger merged = new AtomicInteger();
+        inventoryService.addListener((books, deltas, count) -> merged.set(count));
+
+        // Four lines per book, newest books first
+        List<BookRequestDto> order = new ArrayList<>();
+        for (int line = 0; line < 2000; line++) {
+            order.add(new BookRequestDto(499 - line % 500, 1 + line / 500));
+        }
+
+        assertArrayEquals(new int[0], inventoryService.tryReserve(order));
+        assertEquals(500, merged.get());
+        for (int book = 0; book < 500; book++) {
+            assertEquals(0, inventoryService.getStock(book));
+        }
+    }
+
+    @Test
+    public void testTryReserveBatchTellsListenersOnce() {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        inventoryService.setStock(Book.BOOK_D.id(), 1);
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger total = new AtomicInteger();
+        inventoryService.addListener((books, deltas, count) -> {
+            calls.incrementAndGet();
+            for (int i = 0; i < count; i++) {
+                total.addAndGet(deltas[i]);
+            }
+        });
+        long version = inventoryService.getVersion();
+
+        int[][] missing = inventoryService.tryReserveBatch(List.of(
+                List.of(new BookRequestDto(Book.BOOK_A, 2), new BookRequestDto(Book.BOOK_D, 1)),
+                List.of(new BookRequestDto(Book.BOOK_D, 1)),
+                List.of(new BookRequestDto(Book.BOOK_A, 3))));
+
+        assertArrayEquals(new int[0], missing[0]);
+        assertArrayEquals(new int[]{Book.BOOK_D.id()}, missing[1]);
+        assertArrayEquals(new int[0], missing[2]);
+        assertEquals(15, inventoryService.getStock(Book.BOOK_A.id()));
+        assertEquals(0, inventoryService.getStock(Book.BOOK_D.id()));
+        assertEquals(1, calls.get());
+        assertEquals(-6, total.get());
+        assertEquals(version + 1, inventoryService.getVersion());
+    }
+
+    @Test
+    public void testBatchWithAnOverflowingOrderLeavesNoWriteOpen() {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        long version = inventoryService.getVersion();
+
+        // Two lines for the same book add up to more than an int, found before anything is taken
+        assertThrows(ArithmeticException.class, () -> inventoryService.tryReserveBatch(List.of(
+                List.of(new BookRequestDto(Book.BOOK_A, 1)),
+                List.of(new BookRequestDto(Book.BOOK_B, Integer.MAX_VALUE), new BookRequestDto(Book.BOOK_B, 1)))));
+
+        assertEquals(20, inventoryService.getStock(Book.BOOK_A.id()));
+        assertEquals(version, inventoryService.getVersion());
+        inventoryService.restockBook(Book.BOOK_A.id(), 10);
+        StockSnapshot snapshot = inventoryService.snapshot();
+        assertFalse(snapshot.isStale());
+        assertEquals(30, snapshot.getStock(Book.BOOK_A.id()));
+    }
+
+    @Test
+    public void testTryReserveNeverOversellsUnderContention() throws Exception {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        inventoryService.setStock(Book.BOOK_A.id(), 100_000);
+        inventoryService.setStock(Book.BOOK_D.id(), 10_000);
+
+        // Every order takes one BOOK_A and one BOOK_D, so BOOK_D runs out first
+        List<BookRequestDto> order = List.of(
+                new BookRequestDto(Book.BOOK_A, 1),
+                new BookRequestDto(Book.BOOK_D, 1));
+
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            tasks.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 5_000; i++) {
+                    if (inventoryService.tryReserve(order).length == 0) {
+                        accepted.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        // Rethrows what failed inside a task, an assertion there would otherwise only end its own thread
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+
+        // There were more attempts than copies, so BOOK_D is sold out with exactly 10 000 orders accepted
+        assertEquals(10_000, accepted.get());
+        assertEquals(0, inventoryService.getStock(Book.BOOK_D.id()));
+        assertEquals(90_000, inventoryService.getStock(Book.BOOK_A.id()));
+    }
+
+    @Test
+    public void testStripedBookNeverOversells() throws Exception {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        inventoryService.setStock(Book.BOOK_A.id(), 10_000);
+        inventoryService.stripe(Book.BOOK_A.id());
+        assertTrue(inventoryService.isStriped(Book.BOOK_A.id()));
+        assertEquals(10_000, inventoryService.getStock(Book.BOOK_A.id()));
+
+        // Holds released right away put copies back in other pools than they were taken from
+        List<BookRequestDto> order = List.of(new BookRequestDto(Book.BOOK_A, 1));
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            tasks.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 5_000; i++) {
+                    if (i % 10 == 0 && inventoryService.tryHold(order).length == 0) {
+                        inventoryService.releaseHold(order);
+                    }
+                    if (inventoryService.tryReserve(order).length == 0) {
+                        accepted.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+
+        assertEquals(10_000, accepted.get());
+        assertEquals(0, inventoryService.getStock(Book.BOOK_A.id()));
+        assertEquals(0, inventoryService.getHeld(Book.BOOK_A.id()));
+    }
+
+    @Test
+    public void testStripedBookSellsItsLastCopiesFromEveryPool() {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        inventoryService.stripe(Book.BOOK_A.id());
+        // Spread over every pool, so no single one has 7 copies
+        inventoryService.setStock(Book.BOOK_A.id(), 7);
+
+        assertEquals(0, inventoryService.tryReserve(List.of(new BookRequestDto(Book.BOOK_A, 7))).length);
+        assertArrayEquals(new int[]{Book.BOOK_A.id()}, inventoryService.tryReserve(List.of(new BookRequestDto(Book.BOOK_A, 1))));
+        assertTrue(inventoryService.isSoldOut(Book.BOOK_A.id()));
+
+        inventoryService.restockBook(Book.BOOK_A.id(), 10);
+        inventoryService.setStock(Book.BOOK_A.id(), 3);
+        assertEquals(3, inventoryService.getStock(Book.BOOK_A.id()));
+        assertArrayEquals(new int[]{Book.BOOK_A.id()}, inventoryService.tryReserve(List.of(new BookRequestDto(Book.BOOK_A, 4))));
+        assertEquals(3, inventoryService.snapshot().getStock(Book.BOOK_A.id()));
+    }
+
+    @Test
+    public void testStripedBookIsNeverReadAsSoldOutWhileCopiesAreLeft() throws Exception {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        inventoryService.stripe(Book.BOOK_A.id());
+        inventoryService.setStock(Book.BOOK_A.id(), 1_000);
+
+        // Orders too big for the stock collect every pool under the lock, small ones sell all but the last 10 copies
+        List<BookRequestDto> bigOrder = List.of(new BookRequestDto(Book.BOOK_A, 5_000));
+        List<BookRequestDto> order = List.of(new BookRequestDto(Book.BOOK_A, 1));
+        AtomicInteger left = new AtomicInteger(990);
+        AtomicInteger readAsSoldOut = new AtomicInteger();
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            boolean reader = t % 2 == 0;
+            tasks.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 20_000; i++) {
+                    if (reader) {
+                        if (inventoryService.soldOutBooks(order).length > 0 || inventoryService.isSoldOut(Book.BOOK_A.id())
+                                || !inventoryService.hasBookInStock(Book.BOOK_A.id(), 1)) {
+                            readAsSoldOut.incrementAndGet();
+                        }
+                    } else {
+                        inventoryService.tryReserve(bigOrder);
+                        if (left.getAndDecrement() > 0) {
+                            assertEquals(0, inventoryService.tryReserve(order).length);
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+
+        assertEquals(0, readAsSoldOut.get());
+        assertEquals(10, inventoryService.getStock(Book.BOOK_A.id()));
+    }
+
+    @Test
+    public void testBookIsStripedOnceContendedWithinASecond() {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog(), 3);
+        long second = TimeUnit.SECONDS.toNanos(1);
+
+        // Three lost compare-and-sets spread over more than a second don't count as contention
+        inventoryService.contended(Book.BOOK_A.id(), 0);
+        inventoryService.contended(Book.BOOK_A.id(), second / 2);
+        inventoryService.contended(Book.BOOK_A.id(), second + 1);
+        assertFalse(inventoryService.isStriped(Book.BOOK_A.id()));
+
+        // The count starts over, three within a second stripe the book and keep its stock
+        inventoryService.contended(Book.BOOK_A.id(), 2 * second);
+        inventoryService.contended(Book.BOOK_A.id(), 2 * second + 10);
+        assertFalse(inventoryService.isStriped(Book.BOOK_A.id()));
+        inventoryService.contended(Book.BOOK_A.id(), 2 * second + 20);
+        assertTrue(inventoryService.isStriped(Book.BOOK_A.id()));
+        assertEquals(20, inventoryService.getStock(Book.BOOK_A.id()));
+
+        // A threshold of 0 never stripes
+        InventoryService neverStriped = new InventoryService(Catalog.defaultCatalog(), 0);
+        for (int i = 0; i < 10; i++) {
+            neverStriped.contended(Book.BOOK_B.id(), i);
+        }
+        assertFalse(neverStriped.isStriped(Book.BOOK_B.id()));
+    }
+
+    @Test
+    public void testSoldOutBooksOnlyNamesBooksWithNoStockLeft() {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        inventoryService.setStock(Book.BOOK_D.id(), 0);
+        inventoryService.setStock(Book.BOOK_B.id(), 0);
+
+        // Lines with no quantity don't count, a book ordered twice is only named once
+        int[] soldOut = inventoryService.soldOutBooks(List.of(
+                new BookRequestDto(Book.BOOK_D, 1),
+                new BookRequestDto(Book.BOOK_A, 5),
+                new BookRequestDto(Book.BOOK_B, 0),
+                new BookRequestDto(Book.BOOK_D, 2)));
+        assertArrayEquals(new int[]{Book.BOOK_D.id()}, soldOut);
+
+        assertEquals(0, inventoryService.soldOutBooks(List.of(new BookRequestDto(Book.BOOK_A, 5))).length);
+        assertTrue(inventoryService.isSoldOut(Book.BOOK_D.id()));
+        assertFalse(inventoryService.isSoldOut(Book.BOOK_A.id()));
+    }
+
+    @Test
+    public void testSnapshotNeverShowsHalfAnOrder() throws Exception {
+        InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+        inventoryService.setStock(Book.BOOK_A.id(), 1_000);
+        inventoryService.setStock(Book.BOOK_D.id(), 1_000);
+        // The copy a reader falls back to if it can't get a newer one
+        assertFalse(inventoryService.snapshot().isStale());
+
+        // Writers hold and release BOOK_A and BOOK_D together, so a consistent snapshot always has the same stock of both
+        List<BookRequestDto> items = List.of(
+                new BookRequestDto(Book.BOOK_A, 1),
+                new BookRequestDto(Book.BOOK_D, 1));
+        int writers = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger torn = new AtomicInteger();
+        AtomicInteger snapshots = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < writers; t++) {
+            tasks.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 20_000; i++) {
+                    if (inventoryService.tryHold(items).length == 0) {
+                        inventoryService.releaseHold(items);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (int t = 0; t < 2; t++) {
+            tasks.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 20_000; i++) {
+                    StockSnapshot snapshot = inventoryService.snapshot();
+                    int stockA = snapshot.getStock(Book.BOOK_A.id());
+                    if (stockA != snapshot.getStock(Book.BOOK_D.id()) || stockA + snapshot.getHeld(Book.BOOK_A.id()) != 1_000) {
+                        torn.incrementAndGet();
+                    }
+                    snapshots.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+
+        assertEquals(40_000, snapshots.get());
+        assertEquals(0, torn.get());
+        StockSnapshot snapshot = inventoryService.snapshot();
+        assertEquals(inventoryService.getVersion(), snapshot.getVersion());
+        assertEquals(1_000, snapshot.getStock(Book.BOOK_A.id()));
+        assertEquals(0, snapshot.getHeld(Book.BOOK_D.id()));
     }
 }
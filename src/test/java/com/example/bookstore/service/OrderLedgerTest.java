@@ -0,0 +1,166 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.MutableClock;
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.dto.LedgerLineDto;
+import com.example.bookstore.dto.LedgerOrderDto;
+import com.example.bookstore.dto.LedgerQueryDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OrderLedgerTest {
+
+    private final MutableClock clock = new MutableClock();
+    private OrderLedger ledger;
+
+    @AfterEach
+    void stopLedger() throws InterruptedException {
+        ledger.stop();
+    }
+
+    private void startLedger(Catalog catalog, long maxOrders) {
+        ledger = new OrderLedger(catalog, maxOrders, clock);
+        ledger.start();
+    }
+
+    @Test
+    public void testOrdersAreFoundByTimeAndBook() {
+        startLedger(Catalog.defaultCatalog(), 1_000_000);
+        // One order a minute for a day, every tenth one with BOOK_D as well
+        for (int minute = 0; minute < 1440; minute++) {
+            clock.set(Instant.EPOCH.plus(Duration.ofMinutes(minute)));
+            List<BookRequestDto> order = minute % 10 == 0
+                    ? List.of(new BookRequestDto(Book.BOOK_A, 1), new BookRequestDto(Book.BOOK_D, 2))
+                    : List.of(new BookRequestDto(Book.BOOK_A, 1));
+            assertEquals(minute, ledger.record(order, minute % 10 == 0 ? 175 : 25));
+        }
+
+        // The last hour: minutes 1380 to 1439, BOOK_D at 1380, 1390 ... 1430
+        Instant to = Instant.EPOCH.plus(Duration.ofMinutes(1440));
+        Instant from = to.minus(Duration.ofHours(1));
+        LedgerQueryDto bookD = ledger.find(Book.BOOK_D.id(), from, to, 4);
+        assertEquals(6, bookD.matching());
+        assertEquals(List.of(1430L, 1420L, 1410L, 1400L), bookD.orders().stream().map(LedgerOrderDto::id).toList());
+        LedgerOrderDto newest = bookD.orders().get(0);
+        assertEquals(Instant.EPOCH.plus(Duration.ofMinutes(1430)), newest.time());
+        assertEquals(List.of(new LedgerLineDto("BOOK_A", 1), new LedgerLineDto("BOOK_D", 2)), newest.lines());
+        assertEquals(175, newest.totalPrice());
+
+        LedgerQueryDto any = ledger.find(-1, from, to, 1000);
+        assertEquals(60, any.matching());
+        assertEquals(1439, any.orders().get(0).id());
+        assertEquals(1380, any.orders().get(59).id());
+        assertEquals(0, ledger.find(Book.BOOK_B.id(), from, to, 10).matching());
+        assertEquals(0, ledger.find(-1, to, to.plusSeconds(60), 10).matching());
+    }
+
+    @Test
+    public void testOldestOrdersAreDroppedPastMaxOrders() {
+        startLedger(Catalog.defaultCatalog(), 10_000);
+        for (int i = 0; i < 100_000; i++) {
+            clock.set(Instant.EPOCH.plusSeconds(i));
+            ledger.record(List.of(new BookRequestDto(i % 2 == 0 ? Book.BOOK_A : Book.BOOK_D, 1)), 25);
+        }
+
+        assertEquals(10_000, ledger.getOrderCount());
+        assertNull(ledger.get(89_999));
+        assertEquals("BOOK_A", ledger.get(90_000).lines().get(0).book());
+        // Searching all of time only finds the orders that are kept
+        LedgerQueryDto bookD = ledger.find(Book.BOOK_D.id(), Instant.EPOCH, Instant.EPOCH.plusSeconds(100_000), 10);
+        assertEquals(5_000, bookD.matching());
+        assertEquals(99_999, bookD.orders().get(0).id());
+    }
+
+    @Test
+    public void testBooksThatStopSellingGiveTheirMemoryBack() {
+        Catalog.Builder builder = new Catalog.Builder();
+        for (int book = 0; book < 10_000; book++) {
+            builder.add("BOOK_" + book, "Title " + book, 25, 10, true);
+        }
+        Catalog catalog = builder.build();
+        startLedger(catalog, 1_000);
+        // Every book sells once, then only book 0 for long enough to drop the others' orders twice over
+        for (int book = 0; book < 10_000; book++) {
+            ledger.record(List.of(new BookRequestDto(book, 1)), 25);
+        }
+        for (int i = 0; i < 20_000; i++) {
+            ledger.record(List.of(new BookRequestDto(0, 1)), 25);
+        }
+
+        // The order columns and the ids of book 0 take 1MB, the ids of the other books would add 1.25MB more
+        assertTrue(ledger.getBytes() < 1_250_000, "Ledger takes " + ledger.getBytes() + " bytes");
+        assertEquals(0, ledger.find(9_999, Instant.EPOCH, Instant.EPOCH.plusSeconds(1), 10).matching());
+        assertEquals(1_000, ledger.find(0, Instant.EPOCH, Instant.EPOCH.plusSeconds(1), 10).matching());
+    }
+
+    @Test
+    public void testOrdersRecordedAtOnceAreAllKept() throws Exception {
+        startLedger(Catalog.defaultCatalog(), 1_000_000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Set<Long>>> ids = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < 8; thread++) {
+                ids.add(executor.submit(() -> {
+                    Set<Long> recorded = new HashSet<>();
+                    for (int i = 0; i < 10_000; i++) {
+                        recorded.add(ledger.record(List.of(new BookRequestDto(Book.BOOK_A, 1)), 25));
+                    }
+                    return recorded;
+                }));
+            }
+            Set<Long> all = new HashSet<>();
+            for (Future<Set<Long>> recorded : ids) {
+                all.addAll(recorded.get());
+            }
+
+            // Every order got its own id and can be looked up by it
+            assertEquals(80_000, all.size());
+            assertEquals(80_000, ledger.getOrderCount());
+            for (long id : all) {
+                assertEquals(id, ledger.get(id).id());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOrdersRecordedAfterStopAreNotKept() throws Exception {
+        startLedger(Catalog.defaultCatalog(), 100);
+        ledger.record(List.of(new BookRequestDto(Book.BOOK_A, 1)), 25);
+        ledger.stop();
+
+        assertEquals(-1, ledger.record(List.of(new BookRequestDto(Book.BOOK_A, 1)), 25));
+        assertEquals(1, ledger.getOrderCount());
+        assertEquals(1, ledger.getFailedRecords());
+    }
+
+    @Test
+    public void testTimesNeverGoBackwards() {
+        startLedger(Catalog.defaultCatalog(), 100);
+        clock.set(Instant.EPOCH.plusSeconds(60));
+        ledger.record(List.of(new BookRequestDto(Book.BOOK_A, 1)), 25);
+        // The clock was set back, the order still counts as placed after the one before it
+        clock.set(Instant.EPOCH);
+        long id = ledger.record(List.of(new BookRequestDto(Book.BOOK_A, 1)), 25);
+
+        assertEquals(Instant.EPOCH.plusSeconds(60), ledger.get(id).time());
+        assertEquals(2, ledger.find(Book.BOOK_A.id(), Instant.EPOCH, Instant.EPOCH.plusSeconds(61), 10).matching());
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class OrderValidatorTest {
+
+    private final OrderValidator orderValidator = new OrderValidator(Catalog.defaultCatalog());
+
+    @Test
+    public void testValidOrderReturnsTotalPrice() {
+        assertEquals(5 * 2 + 75, orderValidator.validate(List.of(
+                new BookRequestDto(Book.BOOK_A, 2),
+                new BookRequestDto(Book.BOOK_D, 1))));
+    }
+
+    @Test
+    public void testRejections() {
+        List<BookRequestDto> empty = List.of(new BookRequestDto(Book.BOOK_A, 0));
+        assertEquals(OrderValidator.EMPTY_ORDER, orderValidator.validate(empty));
+        assertEquals(OrderValidator.EMPTY_ORDER, orderValidator.validate(List.of()));
+
+        // A negative line must not lower the price of the rest of the order
+        List<BookRequestDto> negative = List.of(
+                new BookRequestDto(Book.BOOK_D, 2),
+                new BookRequestDto(Book.BOOK_D, -1));
+        assertEquals(OrderValidator.NEGATIVE_QUANTITY, orderValidator.validate(negative));
+
+        // 75 * 2^30 overflows an int into a small number
+        List<BookRequestDto> huge = List.of(new BookRequestDto(Book.BOOK_D, 1 << 30));
+        assertEquals(OrderValidator.OVER_MAX_VALUE, orderValidator.validate(huge));
+        assertEquals("Order of $80530636800 exceeds maximum allowed value of $120.",
+                orderValidator.rejectionMessage(OrderValidator.OVER_MAX_VALUE, huge));
+    }
+
+    @Test
+    public void testSoldOutMessagesAreBuiltOnce() {
+        List<String> first = orderValidator.stockErrors(new int[]{Book.BOOK_A.id(), Book.BOOK_D.id()});
+        List<String> second = orderValidator.stockErrors(new int[]{Book.BOOK_A.id()});
+
+        assertEquals("Fellowship of the book is currently sold out. Please try to place the order again without this book.", first.get(0));
+        assertEquals(2, first.size());
+        assertSame(first.get(0), second.get(0));
+    }
+}
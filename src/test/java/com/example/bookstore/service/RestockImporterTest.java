@@ -0,0 +1,119 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.dto.RestockImportResponseDto;
+import com.example.bookstore.dto.RestockedBookDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RestockImporterTest {
+
+    private final Catalog catalog = Catalog.defaultCatalog();
+    private final InventoryService inventoryService = new InventoryService(catalog);
+    private final RestockImporter restockImporter = new RestockImporter(inventoryService, Optional.empty(), Optional.empty(),
+            new RestockValidator(catalog),
+            new BookstoreMetrics(new SimpleMeterRegistry(), inventoryService, new OrderLedger(catalog, 1), Optional.empty(), Optional.empty(), 5));
+
+    private RestockImportResponseDto importCsv(String manifest) throws IOException {
+        return restockImporter.importCsv(Channels.newChannel(new ByteArrayInputStream(manifest.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void testQuantitiesAreAddedUpPerBook() throws IOException {
+        long versionBefore = inventoryService.getVersion();
+
+        RestockImportResponseDto response = importCsv("""
+                sku,quantity
+                BOOK_A,10
+                # a comment
+                
+                BOOK_B, 20\r
+                BOOK_A,30""");
+
+        assertEquals("Restocked successfully!", response.message());
+        assertEquals(6, response.lines());
+        assertEquals(List.of(new RestockedBookDto("Fellowship of the book", 40), new RestockedBookDto("Books and the chamber of books", 20)),
+                response.restockedItems());
+        assertEquals(Book.BOOK_A.getInitialStock() + 40, inventoryService.getStock(Book.BOOK_A.id()));
+        assertEquals(Book.BOOK_B.getInitialStock() + 20, inventoryService.getStock(Book.BOOK_B.id()));
+        // Applied in one go
+        assertEquals(versionBefore + 1, inventoryService.getVersion());
+    }
+
+    @Test
+    public void testRejectedLinesAreReportedAndNothingIsRestocked() throws IOException {
+        RestockImportResponseDto response = importCsv("""
+                BOOK_A,10
+                BOOK_A,15
+                BOOK_B,2000
+                BOOK_D,10
+                BOOK_X,10
+                BOOK_C,ten
+                BOOK_C
+                """);
+
+        assertEquals(7, response.lines());
+        assertEquals(6, response.rejectedLines());
+        assertEquals(List.of(
+                "Line 2: Restock quantity for Fellowship of the book must be in multiples of 10.",
+                "Line 3: Restock exceeds maximum allowed quantity of 1000 for book Books and the chamber of books.",
+                "Line 4: Cannot restock Limited Collectors Edition. as no more exists in the world. Please try to create a new restock order without Limited Collectors Edition",
+                "Line 5: unknown book BOOK_X.",
+                "Line 6: should be sku,quantity with a whole number quantity.",
+                "Line 7: should be sku,quantity with a whole number quantity."), response.errors());
+        assertEquals(List.of(), response.restockedItems());
+        assertEquals(Book.BOOK_A.getInitialStock(), inventoryService.getStock(Book.BOOK_A.id()));
+    }
+
+    @Test
+    public void testOnlyTheFirstErrorsAreReported() throws IOException {
+        RestockImportResponseDto response = importCsv("BOOK_A,1\n".repeat(RestockImporter.MAX_REPORTED_ERRORS + 50));
+
+        assertEquals(RestockImporter.MAX_REPORTED_ERRORS + 50, response.rejectedLines());
+        assertEquals(RestockImporter.MAX_REPORTED_ERRORS, response.errors().size());
+    }
+
+    @Test
+    public void testBlanksAreOnlyTrimmedFromTheEnds() throws IOException {
+        RestockImportResponseDto response = importCsv(" BOOK_A\t, 10 \nBOOK A,10\nBOOK_B,1 0\n");
+
+        assertEquals(2, response.rejectedLines());
+        assertEquals(List.of(
+                "Line 2: unknown book BOOK A.",
+                "Line 3: should be sku,quantity with a whole number quantity."), response.errors());
+
+        assertEquals("Restocked successfully!", importCsv(" BOOK_A\t, 10 \n").message());
+        assertEquals(Book.BOOK_A.getInitialStock() + 10, inventoryService.getStock(Book.BOOK_A.id()));
+    }
+
+    @Test
+    public void testOverflowErrorsCountAgainstTheReportedErrors() throws IOException {
+        inventoryService.setStock(Book.BOOK_B.id(), Integer.MAX_VALUE - 100);
+
+        RestockImportResponseDto response = importCsv("BOOK_A,1\n".repeat(RestockImporter.MAX_REPORTED_ERRORS) + "BOOK_B,1000\n");
+
+        assertEquals(RestockImporter.MAX_REPORTED_ERRORS, response.errors().size());
+        assertEquals(List.of(), response.restockedItems());
+        assertEquals(Integer.MAX_VALUE - 100, inventoryService.getStock(Book.BOOK_B.id()));
+    }
+
+    @Test
+    public void testTotalThatWouldOverflowTheStockIsRejected() throws IOException {
+        inventoryService.setStock(Book.BOOK_A.id(), Integer.MAX_VALUE - 100);
+
+        RestockImportResponseDto response = importCsv("BOOK_A,1000\n");
+
+        assertEquals(List.of("Restocking 1000 copies of Fellowship of the book would overflow its stock."), response.errors());
+        assertEquals(Integer.MAX_VALUE - 100, inventoryService.getStock(Book.BOOK_A.id()));
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.MutableClock;
+import com.example.bookstore.dto.BookRequestDto;
+import com.example.bookstore.dto.SalesReportDto;
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class SalesAnalyticsTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final SalesAnalytics analytics = new SalesAnalytics(Catalog.defaultCatalog(), clock);
+
+    private void advance(Duration duration) {
+        clock.advance(duration);
+        analytics.tick();
+    }
+
+    @Test
+    public void testReportRanksBooksByCopiesSold() {
+        analytics.record(List.of(new BookRequestDto(Book.BOOK_A, 2), new BookRequestDto(Book.BOOK_D, 1)));
+        advance(Duration.ofSeconds(1));
+        analytics.record(List.of(new BookRequestDto(Book.BOOK_D, 3), new BookRequestDto(Book.BOOK_B, 0)));
+
+        SalesReportDto report = analytics.report(SalesAnalytics.Window.FIVE_MINUTES, 10);
+        assertEquals("5m", report.window());
+        assertEquals(6, report.unitsSold());
+        assertEquals(2 * Book.BOOK_A.getPrice() + 4 * Book.BOOK_D.getPrice(), report.revenue());
+        // BOOK_B had no copies in its line, so it didn't sell
+        assertEquals(2, report.topSellers().size());
+        assertEquals("BOOK_D", report.topSellers().get(0).sku());
+        assertEquals(4, report.topSellers().get(0).unitsSold());
+        assertEquals("BOOK_A", report.topSellers().get(1).sku());
+
+        assertEquals(1, analytics.report(SalesAnalytics.Window.FIVE_MINUTES, 1).topSellers().size());
+    }
+
+    @Test
+    public void testSalesLeaveEachWindowWhenItEnds() {
+        analytics.record(List.of(new BookRequestDto(Book.BOOK_A, 5)));
+
+        advance(Duration.ofSeconds(299));
+        assertEquals(5, analytics.report(SalesAnalytics.Window.FIVE_MINUTES, 10).unitsSold());
+        advance(Duration.ofSeconds(1));
+        assertEquals(0, analytics.report(SalesAnalytics.Window.FIVE_MINUTES, 10).unitsSold());
+        assertEquals(5, analytics.report(SalesAnalytics.Window.HOUR, 10).unitsSold());
+
+        advance(Duration.ofMinutes(60));
+        assertEquals(0, analytics.report(SalesAnalytics.Window.HOUR, 10).unitsSold());
+        assertEquals(5, analytics.report(SalesAnalytics.Window.DAY, 10).unitsSold());
+
+        // Buckets are reused once the ring comes around, what they held must not count again
+        advance(Duration.ofHours(23));
+        assertEquals(0, analytics.report(SalesAnalytics.Window.DAY, 10).unitsSold());
+        analytics.record(List.of(new BookRequestDto(Book.BOOK_A, 1)));
+        assertEquals(1, analytics.report(SalesAnalytics.Window.FIVE_MINUTES, 10).unitsSold());
+        assertEquals(1, analytics.report(SalesAnalytics.Window.DAY, 10).unitsSold());
+    }
+
+    @Test
+    public void testBooksThatStopSellingGiveTheirRingsBack() {
+        analytics.record(List.of(new BookRequestDto(Book.BOOK_A, 1), new BookRequestDto(Book.BOOK_D, 1)));
+        assertEquals(2, analytics.seriesCount());
+
+        // BOOK_A keeps selling once an hour, BOOK_D never again
+        for (int hour = 1; hour <= 25; hour++) {
+            for (int minute = 0; minute < 60; minute++) {
+                advance(Duration.ofMinutes(1));
+            }
+            analytics.record(List.of(new BookRequestDto(Book.BOOK_A, 1)));
+        }
+        assertEquals(1, analytics.seriesCount());
+        SalesReportDto day = analytics.report(SalesAnalytics.Window.DAY, 10);
+        assertEquals(24, day.unitsSold());
+        assertEquals("BOOK_A", day.topSellers().get(0).sku());
+
+        // A book that sells again gets new rings
+        analytics.record(List.of(new BookRequestDto(Book.BOOK_D, 2)));
+        assertEquals(2, analytics.seriesCount());
+        assertEquals(2, analytics.report(SalesAnalytics.Window.FIVE_MINUTES, 10).topSellers().stream()
+                .filter(book -> book.sku().equals("BOOK_D")).findFirst().orElseThrow().unitsSold());
+    }
+
+    @Test
+    public void testWindowsAreNamedLikeTheQueryParameter() {
+        assertEquals(SalesAnalytics.Window.HOUR, SalesAnalytics.Window.of("1h"));
+        assertEquals(SalesAnalytics.Window.DAY, SalesAnalytics.Window.of("24h"));
+        assertNull(SalesAnalytics.Window.of("7d"));
+    }
+}
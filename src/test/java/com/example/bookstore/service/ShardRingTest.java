@@ -0,0 +1,61 @@
+package com.example.bookstore.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardRingTest {
+
+    private static final int BOOKS = 10_000;
+
+    private static List<String> nodes(int count) {
+        List<String> nodes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            nodes.add("http://10.0.0." + (i + 1) + ":8080");
+        }
+        return nodes;
+    }
+
+    @Test
+    public void testBooksAreSpreadEvenly() {
+        ShardRing ring = new ShardRing(nodes(4));
+        int[] owned = new int[4];
+        for (int book = 0; book < BOOKS; book++) {
+            owned[ring.nodeOf("BOOK_" + book)]++;
+        }
+        for (int count : owned) {
+            assertTrue(count > BOOKS / 4 * 0.75 && count < BOOKS / 4 * 1.25, "Uneven shards: " + count);
+        }
+    }
+
+    @Test
+    public void testAddingANodeOnlyMovesBooksToIt() {
+        ShardRing four = new ShardRing(nodes(4));
+        ShardRing five = new ShardRing(nodes(5));
+        int moved = 0;
+        for (int book = 0; book < BOOKS; book++) {
+            int before = four.nodeOf("BOOK_" + book);
+            int after = five.nodeOf("BOOK_" + book);
+            if (before != after) {
+                // Books only ever move to the new node
+                assertEquals(4, after);
+                moved++;
+            }
+        }
+        // About a fifth of the books, not nearly all of them like hash % N
+        assertTrue(moved > BOOKS / 5 * 0.6 && moved < BOOKS / 5 * 1.4, "Moved " + moved);
+    }
+
+    @Test
+    public void testSameNodesGiveTheSameOwners() {
+        ShardRing ring = new ShardRing(nodes(3));
+        ShardRing again = new ShardRing(nodes(3));
+        for (int book = 0; book < 100; book++) {
+            assertEquals(ring.nodeOf("BOOK_" + book), again.nodeOf("BOOK_" + book));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.bookstore.service;
+
+import com.example.bookstore.model.Book;
+import com.example.bookstore.model.Catalog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StockFeedTest {
+
+    private final InventoryService inventoryService = new InventoryService(Catalog.defaultCatalog());
+    // Events as the client would get them
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    // Holds the first send back, like a client too slow to read the listing
+    private final CountDownLatch listingRead = new CountDownLatch(1);
+
+    // Not started, the tests publish themselves
+    private final StockFeed stockFeed = new StockFeed(inventoryService, new ObjectMapper(), 100, 1, 30) {
+        @Override
+        SseEmitter newEmitter(long timeoutMillis) {
+            return new SseEmitter(timeoutMillis) {
+                @Override
+                public void send(SseEventBuilder builder) {
+                    StringBuilder event = new StringBuilder();
+                    for (ResponseBodyEmitter.DataWithMediaType part : builder.build()) {
+                        event.append(part.getData());
+                    }
+                    events.add(event.toString());
+                    try {
+                        listingRead.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+        }
+    };
+
+    @AfterEach
+    void releaseSenders() {
+        listingRead.countDown();
+    }
+
+    @Test
+    public void testSlowSubscriberGetsTheLatestValueOfEachBook() throws Exception {
+        stockFeed.publish();
+        assertNotNull(stockFeed.subscribe());
+        assertTrue(next().contains("\"book\":\"BOOK_C\""));
+
+        // Three frames go out while the listing is still being read
+        inventoryService.setStock(Book.BOOK_A.id(), 19);
+        stockFeed.publish();
+        inventoryService.setStock(Book.BOOK_A.id(), 18);
+        inventoryService.setStock(Book.BOOK_B.id(), 5);
+        stockFeed.publish();
+        inventoryService.setStock(Book.BOOK_A.id(), 17);
+        stockFeed.publish();
+        listingRead.countDown();
+
+        String merged = next();
+        assertTrue(merged.contains("\"book\":\"BOOK_A\",\"stock\":17"), merged);
+        assertTrue(merged.contains("\"book\":\"BOOK_B\",\"stock\":5"), merged);
+        assertFalse(merged.contains("\"stock\":18") || merged.contains("\"stock\":19"), merged);
+        assertFalse(merged.contains("BOOK_C"), merged);
+        assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testSubscriberTooFarBehindGetsTheWholeListingAgain() throws Exception {
+        stockFeed.publish();
+        assertNotNull(stockFeed.subscribe());
+        next();
+
+        // More frames than are kept, the first one it missed is gone
+        for (int i = 0; i < 70; i++) {
+            inventoryService.setStock(Book.BOOK_A.id(), i);
+            stockFeed.publish();
+        }
+        listingRead.countDown();
+
+        String listing = next();
+        assertTrue(listing.contains("\"book\":\"BOOK_A\",\"stock\":69"), listing);
+        // Books that didn't change are in it too
+        assertTrue(listing.contains("\"book\":\"BOOK_C\""), listing);
+        assertTrue(listing.contains("\"book\":\"BOOK_D\""), listing);
+    }
+
+    @Test
+    public void testSubscribersOverTheLimitAreTurnedAway() {
+        assertNotNull(stockFeed.subscribe());
+        assertNull(stockFeed.subscribe());
+    }
+
+    private String next() throws InterruptedException {
+        String event = events.poll(5, TimeUnit.SECONDS);
+        assertNotNull(event, "No event was sent");
+        return event;
+    }
+}